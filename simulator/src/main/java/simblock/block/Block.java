@@ -17,12 +17,15 @@
 package simblock.block;
 
 import simblock.node.Node;
+import java.io.Serializable;
 import java.util.HashSet;
 
 /**
  * The representation of a block.
  */
-public class Block {
+public class Block implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   /**
    * The current height of the block.
    */
@@ -48,11 +51,6 @@ public class Block {
    */
   private final int id;
 
-  /**
-   * Latest known block id.
-   */
-  private static int latestId = 0;
-
   protected final HashSet <Transaction> transactionPool;
 
   /**
@@ -67,9 +65,8 @@ public class Block {
     this.parent = parent;
     this.minter = minter;
     this.time = time;
-    this.id = latestId;
+    this.id = minter.getContext().nextBlockId();
     this.transactionPool =transactions;
-    latestId++;
   }
 
   /**
@@ -16,13 +16,16 @@
 
 package simblock.block;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
 /**
  * The type Coinage tracks the age of coins.
  */
-public class Coinage implements Cloneable {
+public class Coinage implements Cloneable, Serializable {
+  private static final long serialVersionUID = 1L;
+
   private BigInteger coins;
   private long age;
 
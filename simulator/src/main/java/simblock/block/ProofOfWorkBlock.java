@@ -16,27 +16,25 @@
 
 package simblock.block;
 
-import static simblock.simulator.Simulator.getSimulatedNodes;
-import static simblock.simulator.Simulator.getTargetInterval;
-import static simblock.simulator.Timer.putTask;
-import static simblock.settings.SimulationConfiguration.INITIAL_TRANSACTIONS;
-import static simblock.settings.SimulationConfiguration.INTERVAL;
-
 import java.math.BigInteger;
 
 import simblock.node.Node;
+import simblock.simulator.SimulationContext;
 import simblock.task.TransactionTask;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Random;
 
 /**
  * The type Proof of work block.
  */
 public class ProofOfWorkBlock extends Block {
+  private static final long serialVersionUID = 1L;
+
   private final BigInteger difficulty;
   private final BigInteger totalDifficulty;
   private final BigInteger nextDifficulty;
-  private static BigInteger genesisNextDifficulty;
 
   /**
    * Instantiates a new Proof of work block.
@@ -47,15 +45,30 @@ public class ProofOfWorkBlock extends Block {
    * @param difficulty the difficulty
    */
   public ProofOfWorkBlock(ProofOfWorkBlock parent, Node minter, long time, BigInteger difficulty, HashSet<Transaction> transactions) {
+    this(parent, minter, time, difficulty, transactions,
+        parent == null ? null : parent.getNextDifficulty());
+  }
+
+  /**
+   * Instantiates a new Proof of work block with the provided next difficulty.
+   *
+   * @param parent         the parent or null for the genesis block
+   * @param minter         the minter
+   * @param time           the time
+   * @param difficulty     the difficulty
+   * @param transactions   the transactions
+   * @param nextDifficulty the difficulty of the next block
+   */
+  private ProofOfWorkBlock(ProofOfWorkBlock parent, Node minter, long time, BigInteger difficulty,
+      HashSet<Transaction> transactions, BigInteger nextDifficulty) {
     super(parent, minter, time, transactions);
     this.difficulty = difficulty;
+    this.nextDifficulty = nextDifficulty;
 
     if (parent == null) {
       this.totalDifficulty = BigInteger.ZERO.add(difficulty);
-      this.nextDifficulty = ProofOfWorkBlock.genesisNextDifficulty;
     } else {
       this.totalDifficulty = parent.getTotalDifficulty().add(difficulty);
-      this.nextDifficulty = parent.getNextDifficulty();
     }
   }
 
@@ -95,18 +108,23 @@ public class ProofOfWorkBlock extends Block {
    * @return the genesis block
    */
   public static ProofOfWorkBlock genesisBlock(Node minter) {
+    SimulationContext context = minter.getContext();
+    ArrayList<Node> simulatedNodes = context.getSimulator().getSimulatedNodes();
     long totalMiningPower = 0;
-    for (Node node : getSimulatedNodes()) {
+    for (Node node : simulatedNodes) {
       totalMiningPower += node.getMiningPower();
     }
     if (minter.getPropagationProtocol().useTransactions()) {
-      for (int i = 0; i <= INITIAL_TRANSACTIONS; i++) {
-        Transaction t = new Transaction();
-        TransactionTask task = new TransactionTask(null, getSimulatedNodes().get((int) (Math.random() * getSimulatedNodes().size())), t, (long) (Math.random() * INTERVAL));
-        putTask(task);
+      Random random = context.getRandom();
+      for (int i = 0; i <= context.getConfig().INITIAL_TRANSACTIONS; i++) {
+        Transaction t = new Transaction(context.nextTransactionId());
+        TransactionTask task = new TransactionTask(null, simulatedNodes.get((int) (random.nextDouble() * simulatedNodes.size())), t, (long) (random.nextDouble() * context.getConfig().INTERVAL));
+        context.getTimer().putTask(task);
       }
     }
-    genesisNextDifficulty = BigInteger.valueOf(totalMiningPower * getTargetInterval());
-    return new ProofOfWorkBlock(null, minter, 0, BigInteger.ZERO, new HashSet<Transaction>());
+    BigInteger nextDifficulty = BigInteger.valueOf(
+        totalMiningPower * context.getSimulator().getTargetInterval());
+    return new ProofOfWorkBlock(
+        null, minter, 0, BigInteger.ZERO, new HashSet<Transaction>(), nextDifficulty);
   }
 }
\ No newline at end of file
@@ -1,8 +1,31 @@
 package simblock.block;
+
+import java.io.Serializable;
+
 /*
  * empty transaction class
  */
-public class Transaction {
-    public Transaction(){
+public class Transaction implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Transaction unique id.
+     */
+    private final int id;
+
+    public Transaction(int id){
+        this.id = id;
+    }
+
+    public int getId(){
+        return this.id;
+    }
+
+    /**
+     * the id keeps the iteration order of transaction sets independent of the memory layout
+     */
+    @Override
+    public int hashCode(){
+        return this.id;
     }
 }
@@ -1,26 +1,25 @@
 package simblock.node;
 
-import static simblock.simulator.Timer.putTask;
-import static simblock.settings.NetworkConfiguration.M;
-import static simblock.settings.NetworkConfiguration.Q;
-import static simblock.simulator.Main.random;
-
 import simblock.block.Block;
 
 import java.util.HashSet;
 import java.util.List;
 
+import simblock.simulator.SimulationContext;
 import simblock.task.*;
 
 public class AdversarialNode extends Node {
+  private static final long serialVersionUID = 1L;
+
   private HashSet<Node> delayedLinks = new HashSet<>();
 
   /**
    * creates a adversarial node
    */
-  public AdversarialNode(int nodeID, int numConnection, int region, long miningPower, String routingTableName,
-                         String consensusAlgoName, String propagationProtocol, boolean isChurnNode) {
-    super(nodeID, numConnection, region, miningPower, routingTableName,
+  public AdversarialNode(SimulationContext context, int nodeID, int numConnection, int region,
+                         long miningPower, String routingTableName, String consensusAlgoName,
+                         String propagationProtocol, boolean isChurnNode) {
+    super(context, nodeID, numConnection, region, miningPower, routingTableName,
         consensusAlgoName, propagationProtocol, isChurnNode);
   }
 
@@ -36,8 +35,10 @@ public class AdversarialNode extends Node {
     this.delayedLinks.clear();
     if (this.IsAdversarial()) {
       this.delayedLinks = new HashSet<>();
-      for (Node n : this.getNeighbors()) {
-        if (random.nextDouble() < Q && !(n.IsAdversarial())) {
+      double q = this.getContext().getNetworkConfig().Q;
+      for (int i = 0, count = this.getNeighborCount(); i < count; i++) {
+        Node n = this.getNeighbor(i);
+        if (this.getContext().getRandom().nextDouble() < q && !(n.IsAdversarial())) {
           delayedLinks.add(n);
         }
       }
@@ -62,14 +63,15 @@ public class AdversarialNode extends Node {
    */
   public void delayMessage(AbstractMessageTask message) {
     if (this.getDelayedLinks().contains(message.getFrom())) {
-      if (M == -1) {
+      long m = this.getContext().getNetworkConfig().M;
+      if (m == -1) {
         return;
       }
-      DelayTask delay = new DelayTask(this, M, message);
-      putTask(delay);
+      DelayTask delay = new DelayTask(this, m, message);
+      this.getContext().getTimer().putTask(delay);
     } else {
       if (message instanceof TransactionTask) {
-        putTask(message);
+        this.getContext().getTimer().putTask(message);
       } else {
         this.propagationProtocol.blockSendingMechanism(message);
       }
@@ -94,7 +96,7 @@ public class AdversarialNode extends Node {
    */
   public void callbackDelay(AbstractMessageTask message) {
     if (message instanceof TransactionTask) {
-      putTask(message);
+      this.getContext().getTimer().putTask(message);
     } else {
       this.propagationProtocol.blockSendingMechanism(message);
     }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.node;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import simblock.block.Block;
+
+/**
+ * The type Known inventory remembers which neighbors are known to have a block, like the
+ * per-peer known inventory of Bitcoin Core. A neighbor that announced or sent a block to the node
+ * has it, so the node does not announce the block back to that neighbor.
+ *
+ * <p>Only the last {@link #BLOCKS} blocks are remembered, a block is forgotten when it is
+ * replaced by a newer one. Once the node has announced a block its neighbors are dropped, but
+ * the slot stays taken as a tombstone until it is replaced in turn, so neighbors that announce
+ * or send the block later take no slot from a block still to be announced. For every block the
+ * ids of the neighbors are kept in an open addressing hash set of ints, so recording and looking
+ * up a neighbor takes constant time.
+ */
+public class KnownInventory implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The number of blocks the neighbors are remembered for.
+   */
+  private static final int BLOCKS = 4;
+
+  /**
+   * The ids of the remembered blocks, -1 for a free slot.
+   */
+  private final int[] blockIds = new int[BLOCKS];
+
+  /**
+   * Per slot the node ids of the neighbors that have the block, 0 for a free entry.
+   */
+  private final int[][] peers = new int[BLOCKS][];
+
+  /**
+   * Per slot the number of neighbors.
+   */
+  private final int[] counts = new int[BLOCKS];
+
+  /**
+   * Per slot whether the node has announced the block, the slot is then a tombstone.
+   */
+  private final boolean[] announced = new boolean[BLOCKS];
+
+  /**
+   * The slot replaced next if a new block does not find a free slot.
+   */
+  private int next = 0;
+
+  /**
+   * The number of announcements not sent because the neighbor had the block.
+   */
+  private long suppressed = 0;
+
+  /**
+   * Instantiates a new Known inventory.
+   */
+  public KnownInventory() {
+    Arrays.fill(this.blockIds, -1);
+  }
+
+  /**
+   * Records that a neighbor has a block.
+   *
+   * @param block the block
+   * @param peer  the neighbor
+   */
+  public void add(Block block, Node peer) {
+    int slot = find(block.getId());
+    if (slot < 0) {
+      slot = allocate(block.getId());
+    } else if (this.announced[slot]) {
+      return;
+    }
+    int[] set = this.peers[slot];
+    if (2 * (this.counts[slot] + 1) > set.length) {
+      set = grow(set);
+      this.peers[slot] = set;
+    }
+    if (insert(set, peer.getNodeID())) {
+      this.counts[slot]++;
+    }
+  }
+
+  /**
+   * Whether a neighbor is known to have a block.
+   *
+   * @param block the block
+   * @param peer  the neighbor
+   * @return true if the neighbor announced or sent the block
+   */
+  public boolean contains(Block block, Node peer) {
+    int slot = find(block.getId());
+    if (slot < 0) {
+      return false;
+    }
+    int[] set = this.peers[slot];
+    int mask = set.length - 1;
+    int id = peer.getNodeID();
+    for (int i = hash(id) & mask; set[i] != 0; i = (i + 1) & mask) {
+      if (set[i] == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets the neighbors of a block the node has announced, the block keeps its slot as a
+   * tombstone.
+   *
+   * @param block the block
+   */
+  public void remove(Block block) {
+    int slot = find(block.getId());
+    if (slot >= 0) {
+      this.announced[slot] = true;
+      this.counts[slot] = 0;
+      Arrays.fill(this.peers[slot], 0);
+    }
+  }
+
+  /**
+   * Counts an announcement that was not sent.
+   */
+  public void suppress() {
+    this.suppressed++;
+  }
+
+  /**
+   * Gets the number of announcements not sent because the neighbor had the block.
+   *
+   * @return the number of suppressed announcements
+   */
+  public long getSuppressed() {
+    return this.suppressed;
+  }
+
+  /**
+   * Forgets all blocks and resets the counter.
+   */
+  public void clear() {
+    Arrays.fill(this.blockIds, -1);
+    Arrays.fill(this.counts, 0);
+    Arrays.fill(this.announced, false);
+    Arrays.fill(this.peers, null);
+    this.next = 0;
+    this.suppressed = 0;
+  }
+
+  private int find(int blockId) {
+    for (int slot = 0; slot < BLOCKS; slot++) {
+      if (this.blockIds[slot] == blockId) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Takes a free slot or replaces the slots in turn.
+   *
+   * @param blockId the id of the new block
+   * @return the slot
+   */
+  private int allocate(int blockId) {
+    int slot = find(-1);
+    if (slot < 0) {
+      slot = this.next;
+      this.next = (this.next + 1) % BLOCKS;
+    }
+    this.blockIds[slot] = blockId;
+    this.counts[slot] = 0;
+    this.announced[slot] = false;
+    if (this.peers[slot] == null) {
+      this.peers[slot] = new int[8];
+    } else {
+      Arrays.fill(this.peers[slot], 0);
+    }
+    return slot;
+  }
+
+  private static int[] grow(int[] set) {
+    int[] grown = new int[2 * set.length];
+    for (int id : set) {
+      if (id != 0) {
+        insert(grown, id);
+      }
+    }
+    return grown;
+  }
+
+  /**
+   * Adds a node id to a hash set.
+   *
+   * @param set the hash set with at least one free entry
+   * @param id  the node id
+   * @return false if the id was already in the set
+   */
+  private static boolean insert(int[] set, int id) {
+    int mask = set.length - 1;
+    int i = hash(id) & mask;
+    while (set[i] != 0) {
+      if (set[i] == id) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    set[i] = id;
+    return true;
+  }
+
+  private static int hash(int id) {
+    return id * 0x9e3779b9 >>> 16;
+  }
+}
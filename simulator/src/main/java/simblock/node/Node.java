@@ -16,11 +16,8 @@
 
 package simblock.node;
 
-import static simblock.settings.SimulationConfiguration.DEBUG_MODE;
-import static simblock.simulator.Main.OUT_JSON_FILE;
-import static simblock.simulator.Simulator.arriveBlock;
-import static simblock.simulator.Timer.*;
-
+import java.io.PrintWriter;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,11 +29,12 @@ import simblock.block.Transaction;
 import simblock.node.consensus.AbstractConsensusAlgo;
 import simblock.node.propagation.AbstractPropagationProtocol;
 import simblock.node.routing.AbstractRoutingTable;
+import simblock.simulator.SimulationContext;
+import simblock.simulator.Timer;
 import simblock.task.AbstractMessageTask;
 import simblock.task.AbstractMintingTask;
 import simblock.task.BlockMessageTask;
 import simblock.task.CmpctBlockMessageTask;
-import simblock.task.GetBlockTxnMessageTask;
 import simblock.task.InvMessageTask;
 import simblock.task.RecMessageTask;
 import simblock.task.TimeoutTask;
@@ -45,7 +43,13 @@ import simblock.task.TransactionTask;
 /**
  * A class representing a node in the network.
  */
-public class Node {
+public class Node implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the node belongs to.
+   */
+  private final SimulationContext context;
 
   /**
    * Unique node ID.
@@ -119,9 +123,28 @@ public class Node {
 
   public boolean isMiningPool = false;
 
+  /**
+   * Whether the node is online, churn nodes leave and rejoin the network during a run if
+   * {@link simblock.settings.SimulationConfiguration#CHURN_SESSION} is set.
+   */
+  private boolean online = true;
+
+  /**
+   * The neighbors known to have the recent blocks, null unless
+   * {@link simblock.settings.SimulationConfiguration#INV_FILTER} is set.
+   */
+  private final KnownInventory knownInventory;
+
+  /**
+   * The list a received block is relayed with, refilled from the routing table for every relay
+   * instead of copying the neighbors, see {@link #getRelayNeighbors()}.
+   */
+  private final ArrayList<Node> relayNeighbors = new ArrayList<>();
+
   /**
    * Instantiates a new Node.
    *
+   * @param context           the simulation the node belongs to
    * @param nodeID            the node id
    * @param numConnection     the number of connections a node can have
    * @param region            the region
@@ -132,12 +155,15 @@ public class Node {
    * @param isChurnNode       whether the node causes churn
    */
   public Node(
-      int nodeID, int numConnection, int region, long miningPower, String routingTableName,
-      String consensusAlgoName, String propagationProtocol, boolean isChurnNode) {
+      SimulationContext context, int nodeID, int numConnection, int region, long miningPower,
+      String routingTableName, String consensusAlgoName, String propagationProtocol,
+      boolean isChurnNode) {
+    this.context = context;
     this.nodeID = nodeID;
     this.region = region;
     this.miningPower = miningPower;
     this.isChurnNode = isChurnNode;
+    this.knownInventory = context.getConfig().INV_FILTER ? new KnownInventory() : null;
     try {
       this.routingTable = (AbstractRoutingTable) Class.forName(routingTableName).getConstructor(
           Node.class).newInstance(this);
@@ -167,6 +193,15 @@ public class Node {
     return (this.propagationProtocol.useCBR());
   }
 
+  /**
+   * Gets the simulation the node belongs to.
+   *
+   * @return the simulation context
+   */
+  public SimulationContext getContext() {
+    return this.context;
+  }
+
   /**
    * Gets the node id.
    *
@@ -271,6 +306,40 @@ public class Node {
     return this.routingTable.getNeighbors();
   }
 
+  /**
+   * Gets the number of neighbors, see {@link AbstractRoutingTable#getNeighborCount()}.
+   *
+   * @return the number of neighbors
+   */
+  public int getNeighborCount() {
+    return this.routingTable.getNeighborCount();
+  }
+
+  /**
+   * Gets a neighbor without copying the neighbors like {@link #getNeighbors()}.
+   *
+   * @param index the index of the neighbor, less than {@link #getNeighborCount()}
+   * @return the neighbor
+   */
+  public Node getNeighbor(int index) {
+    return this.routingTable.getNeighbor(index);
+  }
+
+  /**
+   * Fills the relay list with the neighbors in the order of {@link #getNeighbors()}. The list is
+   * only valid until the next relay.
+   *
+   * @return the neighbors
+   */
+  private ArrayList<Node> getRelayNeighbors() {
+    this.relayNeighbors.clear();
+    int count = getNeighborCount();
+    for (int i = 0; i < count; i++) {
+      this.relayNeighbors.add(getNeighbor(i));
+    }
+    return this.relayNeighbors;
+  }
+
   /**
    * Adds the node as a neighbor.
    *
@@ -326,6 +395,41 @@ public class Node {
     return (this.downloadingBlocks.contains(block));
   }
 
+  /**
+   * Whether the node is online.
+   *
+   * @return false while the node has left the network
+   */
+  public boolean isOnline() {
+    return this.online;
+  }
+
+  /**
+   * Takes the node offline. Its minting task is cancelled and its queued block messages and
+   * pending downloads are dropped, the messages still on their way to or from it are discarded
+   * when they arrive. The connections are closed by {@link simblock.simulator.ChurnModel}.
+   */
+  public void goOffline() {
+    this.online = false;
+    if (this.mintingTask != null) {
+      this.context.getTimer().removeTask(this.mintingTask);
+      this.mintingTask = null;
+    }
+    this.downloadingBlocks.clear();
+    this.recievedInvs.clear();
+    this.propagationProtocol.clear();
+  }
+
+  /**
+   * Brings the node back online, it resumes mining on the block it knew when it left.
+   */
+  public void goOnline() {
+    this.online = true;
+    if (this.block != null) {
+      this.minting();
+    }
+  }
+
   public void resetNode() {
     this.block = null;
     this.orphans.clear();
@@ -333,6 +437,19 @@ public class Node {
     this.mempool.clear();
     this.knownTransactions.clear();
     this.propagationProtocol.clear();
+    if (this.knownInventory != null) {
+      this.knownInventory.clear();
+    }
+  }
+
+  /**
+   * Gets the number of invs the node did not send because the neighbor had the block.
+   *
+   * @return the number of suppressed invs, 0 unless
+   *     {@link simblock.settings.SimulationConfiguration#INV_FILTER} is set
+   */
+  public long getSuppressedInvs() {
+    return this.knownInventory == null ? 0 : this.knownInventory.getSuppressed();
   }
 
   /**
@@ -345,16 +462,16 @@ public class Node {
   public void addToChain(Block newBlock) {
     // If the node has been minting
     if (this.mintingTask != null) {
-      removeTask(this.mintingTask);
+      this.context.getTimer().removeTask(this.mintingTask);
       this.mintingTask = null;
     }
     // Update the current block
     this.block = newBlock;
-    if (DEBUG_MODE) {
+    if (this.context.getConfig().DEBUG_MODE) {
       printAddBlock(newBlock);
     }
     // Observe and handle new block arrival
-    arriveBlock(newBlock, this);
+    this.context.getSimulator().arriveBlock(newBlock, this);
   }
 
   /**
@@ -363,15 +480,16 @@ public class Node {
    * @param newBlock the block to be logged
    */
   private void printAddBlock(Block newBlock) {
-    OUT_JSON_FILE.print("{");
-    OUT_JSON_FILE.print("\"kind\":\"add-block\",");
-    OUT_JSON_FILE.print("\"content\":{");
-    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
-    OUT_JSON_FILE.print("\"node-id\":" + this.getNodeID() + ",");
-    OUT_JSON_FILE.print("\"block-id\":" + newBlock.getId());
-    OUT_JSON_FILE.print("}");
-    OUT_JSON_FILE.print("},");
-    OUT_JSON_FILE.flush();
+    PrintWriter outJsonFile = this.context.getOutJsonFile();
+    outJsonFile.print("{");
+    outJsonFile.print("\"kind\":\"add-block\",");
+    outJsonFile.print("\"content\":{");
+    outJsonFile.print("\"timestamp\":" + this.context.getTimer().getCurrentTime() + ",");
+    outJsonFile.print("\"node-id\":" + this.getNodeID() + ",");
+    outJsonFile.print("\"block-id\":" + newBlock.getId());
+    outJsonFile.print("}");
+    outJsonFile.print("},");
+    outJsonFile.flush();
   }
 
   /**
@@ -398,12 +516,18 @@ public class Node {
    * Generates a new minting task and registers it
    */
   public void minting() {
+    if (this.context.getConfig().AGGREGATED_MINING) {
+      // A single network wide mining task replaces the minting tasks of the nodes
+      this.context.getAggregatedMiningScheduler().start(this);
+      return;
+    }
     AbstractMintingTask task = this.consensusAlgo.minting();
     this.mintingTask = task;
 
     if (task != null) {
-      if(checkMiningTask(task.getParent(), getCurrentTime() + task.getInterval())){
-        addRemovableTask(task);
+      Timer timer = this.context.getTimer();
+      if(timer.checkMiningTask(task.getParent(), timer.getCurrentTime() + task.getInterval())){
+        timer.addRemovableTask(task);
       }else{
         task=null;
       }
@@ -411,28 +535,45 @@ public class Node {
   }
 
   /**
-   * Send inv.
+   * Send inv. Neighbors that announced or sent the block to the node are skipped if
+   * {@link simblock.settings.SimulationConfiguration#INV_FILTER} is set.
    *
    * @param block the block
    */
   public void sendInv(Block block, List<Node> subList) {
     for (Node to : subList) {
-      AbstractMessageTask task = new InvMessageTask(this, to, block);
-      putTask(task);
+      if (this.knownInventory != null && this.knownInventory.contains(block, to)) {
+        this.knownInventory.suppress();
+        continue;
+      }
+      sendMessageRecord(AbstractMessageTask.INV, to, block);
+    }
+    if (this.knownInventory != null) {
+      // The node announces a block once
+      this.knownInventory.remove(block);
     }
   }
 
+  /**
+   * Sends an inv or rec message as a record instead of a message object, see
+   * {@link Timer#putMessage(int, Node, Node, Block, long)}.
+   *
+   * @param type  the message type
+   * @param to    the receiving node
+   * @param block the block
+   */
+  private void sendMessageRecord(int type, Node to, Block block) {
+    long latency = this.context.getNetwork().getLatency(this, to);
+    this.context.getTimer().putMessage(type, this, to, block, latency);
+  }
+
   /**
    * @param block   the block to send
    * @param subList the subgroup of neigbors to send the block to
    */
   public void sendBlock(Block block, List<Node> subList) {
     for (Node to : subList) {
-      AbstractMessageTask message = new RecMessageTask(to, this, block);
-      this.propagationProtocol.messageQue.add(message);
-      if (!this.propagationProtocol.sendingBlock) {
-        this.propagationProtocol.sendNextBlockMessage();
-      }
+      this.propagationProtocol.blockSendingMechanism(AbstractMessageTask.REC, to, block);
     }
   }
 
@@ -456,12 +597,31 @@ public class Node {
         knownTransactions.add(t);
       }
       // Advertise received block
-      this.propagationProtocol.propagate(getNeighbors(), block);
+      this.propagationProtocol.propagate(getRelayNeighbors(), block);
     } else if (!this.orphans.contains(block) && !block.isOnSameChainAs(this.block)) {
       // If the block was not valid but was an unknown orphan and is not on the same
       // chain as the current block
       this.addOrphans(block, this.block);
-      arriveBlock(block, this);
+      this.context.getSimulator().arriveBlock(block, this);
+    }
+  }
+
+  /**
+   * Receive a block delivered by a neighbor. The propagation protocol is told if it is the first
+   * delivery of a block the node accepts.
+   *
+   * @param block the block
+   * @param from  the neighbor that sent the block
+   */
+  public void receiveBlock(Block block, Node from) {
+    if (this.knownInventory != null) {
+      this.knownInventory.add(block, from);
+    }
+    Block previous = this.block;
+    this.receiveBlock(block);
+    // An accepted block becomes the tip of the chain
+    if (this.block == block && previous != block) {
+      this.propagationProtocol.blockDelivered(from, block);
     }
   }
 
@@ -477,8 +637,7 @@ public class Node {
     if (this.recievedInvs.containsKey(block)) {
       ArrayList<Node> temp = this.recievedInvs.get(block);
       if (!temp.isEmpty()) {
-        AbstractMessageTask task = new RecMessageTask(this, temp.get(0), block);
-        putTask(task);
+        sendMessageRecord(AbstractMessageTask.REC, temp.get(0), block);
         temp.remove(0);
       } else {
         downloadingBlocks.remove(block);
@@ -491,43 +650,57 @@ public class Node {
    * first check id the advertised block is needed send RecMessage if it is the case
    * next set a TimeoutTask if the message sender is adversarial
    * and save follwing InvMessage for the repeating blocks
-   * @param message the InvMessage
+   * @param from  the sender of the InvMessage
+   * @param block the advertised block
    */
-  protected void handleInvMessage(AbstractMessageTask message) {
-    Block block = ((InvMessageTask) message).getBlock();
+  protected void handleInvMessage(Node from, Block block) {
+    if (this.knownInventory != null) {
+      this.knownInventory.add(block, from);
+    }
     if (!this.orphans.contains(block)) {
       if (!this.checkDownloadingBlocks(block)) {
         if (this.consensusAlgo.isReceivedBlockValid(block, this.block)) {
-          AbstractMessageTask task = new RecMessageTask(this, message.getFrom(), block);
-          putTask(task);
+          sendMessageRecord(AbstractMessageTask.REC, from, block);
           this.addBlockToDownloading(block);
         } else if (!block.isOnSameChainAs(this.block)) {
           // get new orphan block
-          AbstractMessageTask task = new RecMessageTask(this, message.getFrom(), block);
-          putTask(task);
+          sendMessageRecord(AbstractMessageTask.REC, from, block);
           this.addBlockToDownloading(block);
         }
 
         // add a timeout task if the message sender is adversarial
         // We skip adding a task when the message sender is honest to optimize the simulation
-        if (message.getFrom().IsAdversarial()) {
+        if (from.IsAdversarial()) {
           recievedInvs.put(block, new ArrayList<Node>());
           TimeoutTask t = new TimeoutTask(this, block);
-          putTask(t);
+          this.context.getTimer().putTask(t);
         }
       } else {
         if (recievedInvs.containsKey(block)) {
           ArrayList<Node> temp = recievedInvs.get(block);
-          temp.add(message.getFrom());
+          temp.add(from);
         }
       }
     }
   }
 
-  protected void handleBlockMessage(AbstractMessageTask message) {
-    Block block = ((BlockMessageTask) message).getBlock();
+  protected void handleBlockMessage(Node from, Block block) {
     downloadingBlocks.remove(block);
-    this.receiveBlock(block);
+    this.receiveBlock(block, from);
+  }
+
+  /**
+   * Whether a message is discarded because the node or the sender has left the network.
+   *
+   * @param from the sender or null if the message has none
+   * @return true if the message is dropped
+   */
+  private boolean isDropped(Node from) {
+    if (this.online && (from == null || from.online)) {
+      return false;
+    }
+    this.context.getChurnModel().dropMessage();
+    return true;
   }
 
   /**
@@ -536,23 +709,77 @@ public class Node {
    * @param message the message
    */
   public void receiveMessage(AbstractMessageTask message) {
-    if (message instanceof InvMessageTask) {
-      handleInvMessage(message);
-    }
-    if (message instanceof RecMessageTask) {
-      this.getPropagationProtocol().handleRecMessage(message);
+    if (isDropped(message.getFrom())) {
+      return;
     }
-    if (message instanceof GetBlockTxnMessageTask) {
-      this.getPropagationProtocol().handleGetBlockTxnMessage(message);
+    switch (message.getType()) {
+      case AbstractMessageTask.INV:
+        handleInvMessage(message.getFrom(), ((InvMessageTask) message).getBlock());
+        break;
+      case AbstractMessageTask.REC:
+        this.getPropagationProtocol().handleRecMessage(message.getFrom(),
+            ((RecMessageTask) message).getBlock());
+        break;
+      case AbstractMessageTask.GET_BLOCK_TXN:
+        this.getPropagationProtocol().handleGetBlockTxnMessage(message);
+        break;
+      case AbstractMessageTask.CMPCT_BLOCK:
+        propagationProtocol.handleCompactBlockMessage(message.getFrom(),
+            ((CmpctBlockMessageTask) message).getBlock());
+        break;
+      case AbstractMessageTask.BLOCK:
+        handleBlockMessage(message.getFrom(), ((BlockMessageTask) message).getBlock());
+        break;
+      case AbstractMessageTask.TRANSACTION:
+        propagationProtocol.handleTransaction(((TransactionTask) message).getTransaction());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown message type " + message.getType());
     }
-    if (message instanceof CmpctBlockMessageTask) {
-      propagationProtocol.handleCompactBlockMessage(message);
+  }
+
+  /**
+   * Receive a message scheduled as {@link simblock.simulator.fel.MessageRecords record}, no
+   * message object is created for it.
+   *
+   * @param type  the message type
+   * @param from  the sending node
+   * @param block the block
+   */
+  public void receiveMessage(int type, Node from, Block block) {
+    if (isDropped(from)) {
+      return;
     }
-    if (message instanceof BlockMessageTask) {
-      handleBlockMessage(message);
+    switch (type) {
+      case AbstractMessageTask.INV:
+        handleInvMessage(from, block);
+        break;
+      case AbstractMessageTask.REC:
+        this.getPropagationProtocol().handleRecMessage(from, block);
+        break;
+      case AbstractMessageTask.CMPCT_BLOCK:
+        propagationProtocol.handleCompactBlockMessage(from, block);
+        break;
+      case AbstractMessageTask.BLOCK:
+        handleBlockMessage(from, block);
+        break;
+      default:
+        throw new IllegalArgumentException("Message type " + type + " is not scheduled as record");
     }
-    if (message instanceof TransactionTask) {
-      propagationProtocol.handleTransaction(message);
+  }
+
+  /**
+   * Receive a transaction message scheduled as
+   * {@link simblock.simulator.fel.MessageRecords record}.
+   *
+   * @param from        the sending node
+   * @param transaction the transaction
+   */
+  public void receiveTransaction(Node from, Transaction transaction) {
+    if (isDropped(from)) {
+      return;
     }
+    propagationProtocol.handleTransaction(transaction);
   }
+
 }
\ No newline at end of file
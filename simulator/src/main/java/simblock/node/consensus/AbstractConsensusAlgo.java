@@ -16,6 +16,8 @@
 
 package simblock.node.consensus;
 
+import java.io.Serializable;
+
 import simblock.block.Block;
 import simblock.node.Node;
 import simblock.task.AbstractMintingTask;
@@ -23,7 +25,9 @@ import simblock.task.AbstractMintingTask;
 /**
  * The type Abstract consensus algorithm.
  */
-public abstract class AbstractConsensusAlgo {
+public abstract class AbstractConsensusAlgo implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   private final Node selfNode;
 
   /**
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node.consensus;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import simblock.block.ProofOfWorkBlock;
+import simblock.node.Node;
+import simblock.simulator.SimulationContext;
+import simblock.task.AggregatedMiningTask;
+
+/**
+ * Schedules Proof of Work mining for the whole network with a single task, instead of one
+ * {@link simblock.task.MiningTask} per miner that is rescheduled after every block.
+ *
+ * <p>The mining times of the miners are independent exponentials, so the earliest of them is
+ * exponential with the summed mining power, and the winner is a miner drawn proportionally to
+ * its mining power. As the rate of a miner does not depend on the block it mines on, tip changes
+ * require no rescheduling. The winner extends the block it knows at the time the task is
+ * executed. Draws of miners that do not know any block yet, or whose block has a higher
+ * difficulty than the one the network wide rate was computed with, are rejected (thinning), so
+ * the result has the same distribution as the per miner tasks. Draws of miners that are offline
+ * are rejected as well, so only the mining power of the online miners counts.
+ */
+public class AggregatedMiningScheduler implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the scheduler belongs to.
+   */
+  private final SimulationContext context;
+
+  /**
+   * Nodes with mining power and the cumulative mining power up to and including each of them.
+   */
+  private Node[] miners = new Node[0];
+  private long[] cumulativePower = new long[0];
+  private long totalPower = 0;
+
+  /**
+   * The difficulty the network wide mining rate is computed with.
+   */
+  private BigInteger difficulty = null;
+
+  private long minedBlocks = 0;
+  private long rejectedDraws = 0;
+
+  /**
+   * Instantiates a new Aggregated mining scheduler.
+   *
+   * @param context the simulation the scheduler belongs to
+   */
+  public AggregatedMiningScheduler(SimulationContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Stops the mining and forgets the miners of the previous simulation.
+   */
+  public void reset() {
+    miners = new Node[0];
+    cumulativePower = new long[0];
+    totalPower = 0;
+    difficulty = null;
+    minedBlocks = 0;
+    rejectedDraws = 0;
+  }
+
+  /**
+   * Starts mining once the first block is known, subsequent calls have no effect.
+   *
+   * @param node the node that received a block
+   */
+  public void start(Node node) {
+    if (difficulty != null || node.getBlock() == null) {
+      return;
+    }
+    ArrayList<Node> powered = new ArrayList<>();
+    for (Node simulatedNode : this.context.getSimulator().getSimulatedNodes()) {
+      if (simulatedNode.getMiningPower() > 0) {
+        powered.add(simulatedNode);
+      }
+    }
+    miners = powered.toArray(new Node[0]);
+    cumulativePower = new long[miners.length];
+    totalPower = 0;
+    for (int i = 0; i < miners.length; i++) {
+      totalPower += miners[i].getMiningPower();
+      cumulativePower[i] = totalPower;
+    }
+    difficulty = ((ProofOfWorkBlock) node.getBlock()).getNextDifficulty();
+    if (totalPower > 0) {
+      scheduleNext();
+    }
+  }
+
+  /**
+   * Schedules the next network wide mining task.
+   */
+  private void scheduleNext() {
+    double p = 1.0 / difficulty.doubleValue();
+    if (p <= Math.pow(2, -53)) {
+      return;
+    }
+    double u = this.context.getRandom().nextDouble();
+    long interval = (long) (Math.log(u) / Math.log(1.0 - p) / totalPower);
+    this.context.getTimer().putTask(new AggregatedMiningTask(drawMiner(), interval));
+  }
+
+  /**
+   * Draws a miner with a probability proportional to its mining power.
+   *
+   * @return the miner
+   */
+  private Node drawMiner() {
+    long target = (long) (this.context.getRandom().nextDouble() * totalPower);
+    int index = Arrays.binarySearch(cumulativePower, target + 1);
+    return miners[index >= 0 ? index : -index - 1];
+  }
+
+  /**
+   * Called when a network wide mining task is executed. Decides whether the drawn miner finds a
+   * block and schedules the next task.
+   *
+   * @param task the executed task
+   * @return the difficulty of the block to be mined or null if the draw is rejected
+   */
+  public BigInteger mine(AggregatedMiningTask task) {
+    ProofOfWorkBlock parent = (ProofOfWorkBlock) task.getParent();
+    BigInteger blockDifficulty = null;
+    if (parent != null && task.getMinter().isOnline()) {
+      BigInteger nextDifficulty = parent.getNextDifficulty();
+      if (nextDifficulty.compareTo(difficulty) <= 0 || this.context.getRandom().nextDouble()
+          < difficulty.doubleValue() / nextDifficulty.doubleValue()) {
+        blockDifficulty = nextDifficulty;
+      }
+    }
+    if (blockDifficulty != null) {
+      minedBlocks++;
+    } else {
+      rejectedDraws++;
+    }
+    scheduleNext();
+    return blockDifficulty;
+  }
+
+  /**
+   * Gets the number of blocks mined by the network wide mining tasks.
+   *
+   * @return the number of mined blocks
+   */
+  public long getMinedBlocks() {
+    return minedBlocks;
+  }
+
+  /**
+   * Gets the number of network wide mining tasks that did not result in a block.
+   *
+   * @return the number of rejected draws
+   */
+  public long getRejectedDraws() {
+    return rejectedDraws;
+  }
+}
@@ -16,8 +16,6 @@
 
 package simblock.node.consensus;
 
-import static simblock.simulator.Main.random;
-
 import java.math.BigInteger;
 import simblock.block.Block;
 import simblock.block.ProofOfWorkBlock;
@@ -29,6 +27,8 @@ import simblock.task.MiningTask;
  */
 @SuppressWarnings("unused")
 public class ProofOfWork extends AbstractConsensusAlgo {
+  private static final long serialVersionUID = 1L;
+
   /**
    * Instantiates a new Proof of work consensus algorithm.
    *
@@ -50,7 +50,7 @@ public class ProofOfWork extends AbstractConsensusAlgo {
     ProofOfWorkBlock parent = (ProofOfWorkBlock) selfNode.getBlock();
     BigInteger difficulty = parent.getNextDifficulty();
     double p = 1.0 / difficulty.doubleValue();
-    double u = random.nextDouble();
+    double u = selfNode.getContext().getRandom().nextDouble();
     return p <= Math.pow(2, -53) ? null : new MiningTask(selfNode, (long) (Math.log(u) / Math.log(
         1.0 - p) / selfNode.getMiningPower()), difficulty);
   }
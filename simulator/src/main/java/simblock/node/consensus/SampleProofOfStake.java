@@ -16,8 +16,6 @@
 
 package simblock.node.consensus;
 
-import static simblock.simulator.Main.random;
-
 import java.math.BigInteger;
 import simblock.block.Block;
 import simblock.block.SamplePoSBlock;
@@ -29,6 +27,8 @@ import simblock.task.SampleStakingTask;
  */
 @SuppressWarnings("unused")
 public class SampleProofOfStake extends AbstractConsensusAlgo {
+  private static final long serialVersionUID = 1L;
+
   /**
    * Instantiates a new Sample proof of stake.
    *
@@ -44,7 +44,7 @@ public class SampleProofOfStake extends AbstractConsensusAlgo {
     SamplePoSBlock parent = (SamplePoSBlock) selfNode.getBlock();
     BigInteger difficulty = parent.getNextDifficulty();
     double p = parent.getCoinage(selfNode).getCoinage().doubleValue() / difficulty.doubleValue();
-    double u = random.nextDouble();
+    double u = selfNode.getContext().getRandom().nextDouble();
     return p <= Math.pow(2, -53) ? null : new SampleStakingTask(selfNode,
                                                                 (long) (Math.log(u) / Math.log(
                                                                     1.0 - p) * 1000), difficulty
@@ -1,27 +1,38 @@
 package simblock.node.propagation;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Random;
 
 import simblock.node.AdversarialNode;
 import simblock.node.Node;
 import simblock.block.Block;
 import simblock.block.Transaction;
+import simblock.settings.SimulationConfiguration;
+import simblock.simulator.SimulationContext;
 import simblock.task.*;
 
 import static simblock.settings.SimulationConfiguration.*;
 
-import static simblock.simulator.Timer.putTask;
-import static simblock.simulator.Network.getBandwidth;
-
 /**
  * Abstact propagation protocl class, that implements all basic propagation behavior
  */
-abstract public class AbstractPropagationProtocol {
+abstract public class AbstractPropagationProtocol implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   protected final Node selfNode;
-  public final ArrayList<AbstractMessageTask> messageQue = new ArrayList<>();
-  public boolean sendingBlock;
+  /**
+   * the simulation the node belongs to
+   */
+  protected final SimulationContext context;
+  /**
+   * the parameters of the simulation
+   */
+  protected final SimulationConfiguration config;
+  /**
+   * the queued and running block uploads
+   */
+  protected final UploadScheduler uploadScheduler;
 
   /**
    * Processing time of tasks expressed in milliseconds.
@@ -30,6 +41,10 @@ abstract public class AbstractPropagationProtocol {
 
   public AbstractPropagationProtocol(Node node) {
     this.selfNode = node;
+    this.context = node.getContext();
+    this.config = this.context.getConfig();
+    this.uploadScheduler = new UploadScheduler(this.config.MAX_CONCURRENT_UPLOADS,
+        this.config.UPLOAD_PRIORITIES);
   }
 
   /**
@@ -43,7 +58,8 @@ abstract public class AbstractPropagationProtocol {
 
   /**
    *Abstarct propagation function starts the creation of Inv,Block,CmpctBlock -message tasks
-   * based on the used propagtion protocol
+   * based on the used propagtion protocol. The list of neighbors is reused for the next block,
+   * it may be reordered but not kept.
    * @param neigbors list of all neigboring nodes
    * @param block the block to propagte
    */
@@ -54,7 +70,7 @@ abstract public class AbstractPropagationProtocol {
    * @return Flag to signal the usage of Transactions
    */
   public boolean useTransactions(){
-    return USE_TRANSACTIONS;
+    return this.config.USE_TRANSACTIONS;
   }
 
   /**
@@ -70,27 +86,27 @@ abstract public class AbstractPropagationProtocol {
    * Gets block size when the node fails compact block relay.
    */
   protected long getFailedBlockSize() {
-    Random random = new Random();
     if (this.selfNode.isChurnNode) {
-      int index = random.nextInt(CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CHURN_NODE.length);
-      return (long) (BLOCK_SIZE * CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CHURN_NODE[index]);
+      int index = this.context.getRandom().nextInt(CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CHURN_NODE.length);
+      return (long) (this.config.BLOCK_SIZE * CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CHURN_NODE[index]);
     } else {
-      int index = random.nextInt(CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CONTROL_NODE.length);
-      return (long) (BLOCK_SIZE * CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CONTROL_NODE[index]);
+      int index = this.context.getRandom().nextInt(CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CONTROL_NODE.length);
+      return (long) (this.config.BLOCK_SIZE * CBR_FAILURE_BLOCK_SIZE_DISTRIBUTION_FOR_CONTROL_NODE[index]);
     }
   }
   /**
    * individual functions to handle the receptions of specific messages
-   * @param message the recieved message
    * called if the recieved message is a RecMessage
    * the the reciving node is adversarial call it's  delayMessage function
-   * otherwise forward it to blocksending
+   * otherwise forward it to blocksending, without creating a message object
+   * @param from the node requesting the block
+   * @param block the requested block
    */
-  public void handleRecMessage(AbstractMessageTask message) {
+  public void handleRecMessage(Node from, Block block) {
     if(this.selfNode.IsAdversarial()){
-      ((AdversarialNode) this.selfNode).delayMessage(message);
+      ((AdversarialNode) this.selfNode).delayMessage(new RecMessageTask(from, this.selfNode, block));
     }else{
-      blockSendingMechanism(message);
+      blockSendingMechanism(AbstractMessageTask.REC, from, block);
     }
   }
 
@@ -113,9 +129,10 @@ abstract public class AbstractPropagationProtocol {
    *
    *on success handle block arrival
    *on failure send a getBlockTxnMessage
+   * @param from the node that sent the compact block
+   * @param block the block
    */
-  public void handleCompactBlockMessage(AbstractMessageTask message) {
-    Block block = ((CmpctBlockMessageTask) message).getBlock();
+  public void handleCompactBlockMessage(Node from, Block block) {
     if (!this.selfNode.getConsensusAlgo().isReceivedBlockValid(block, this.selfNode.getBlock())){
       return;
     }
@@ -129,16 +146,15 @@ abstract public class AbstractPropagationProtocol {
         }
       }
     }else{
-      Random random = new Random();
       float CBRfailureRate = this.selfNode.isChurnNode ? CBR_FAILURE_RATE_FOR_CHURN_NODE : CBR_FAILURE_RATE_FOR_CONTROL_NODE;
-      success = random.nextDouble() > CBRfailureRate;
+      success = this.context.getRandom().nextDouble() > CBRfailureRate;
     }
     if (success) {
       this.selfNode.getDownloadingBlocks().remove(block);
-      this.selfNode.receiveBlock(block);
+      this.selfNode.receiveBlock(block, from);
     } else {
-      AbstractMessageTask task = new GetBlockTxnMessageTask(this.selfNode, message.getFrom(), block);
-      putTask(task);
+      AbstractMessageTask task = new GetBlockTxnMessageTask(this.selfNode, from, block);
+      this.context.getTimer().putTask(task);
     }
   }
 
@@ -149,78 +165,201 @@ abstract public class AbstractPropagationProtocol {
    *
    * (the check if the transaction is known by neighbors is used to reduce the number of transaction tasks in the taskqueue
    *  as network congestion is not modeled a transaction message the is send and refused is the same as a message that is not send)
+   * @param t the received transaction
    */
-  public void handleTransaction(AbstractMessageTask message) {
-    Transaction t = ((TransactionTask) message).getTransaction();
+  public void handleTransaction(Transaction t) {
     if ((this.selfNode.mempool.size() < 600) && !this.selfNode.knownTransactions.contains(t)) {
       this.selfNode.mempool.add(t);
       this.selfNode.knownTransactions.add(t);
     }
-    for (Node n : this.selfNode.getNeighbors()) {
+    for (int i = 0, count = this.selfNode.getNeighborCount(); i < count; i++) {
+      Node n = this.selfNode.getNeighbor(i);
       if (!n.knownTransactions.contains(t)) {
-        TransactionTask task = new TransactionTask(this.selfNode, n, t);
         if (this.selfNode.IsAdversarial()) {
-          ((AdversarialNode) this.selfNode).delayMessage(task);
+          ((AdversarialNode) this.selfNode).delayMessage(new TransactionTask(this.selfNode, n, t));
         }else{
-          putTask(task);
+          sendTransaction(n, t);
         }
       }
     }
   }
 
+  /**
+   * Sends a transaction to a neighbor as a message record instead of a message object
+   * @param to the receiving neighbor
+   * @param t the transaction
+   */
+  protected void sendTransaction(Node to, Transaction t) {
+    long transmission = TransactionTask.getTransmissionTime(this.selfNode, to);
+    long latency = this.context.getNetwork().getLatency(this.selfNode, to);
+    this.context.getTimer().putTransaction(this.selfNode, to, t, latency + transmission);
+  }
+
   /**
    * Queue a blockmessage of any type for sending
+   * @param request the RecMessage or GetBlockTxnMessage, the node that sent it receives the block
+   */
+  public void blockSendingMechanism(AbstractMessageTask request){
+    blockSendingMechanism(request.getType(), request.getFrom(), getRequestedBlock(request));
+  }
+
+  /**
+   * Queue a blockmessage of any type for sending, the request is queued as its type, node and
+   * block, so no message object is needed
+   * if bandwidth sharing is enabled the block is sent at once and shares the bandwidth with the other transmissions
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   * @param block the requested block
    */
-  public void blockSendingMechanism(AbstractMessageTask message){
-    this.messageQue.add(message);
-    if (!sendingBlock) {
-      this.sendNextBlockMessage();
+  public void blockSendingMechanism(int type, Node to, Block block){
+    if (this.context.getNetworkConfig().BANDWIDTH_SHARING) {
+      this.sendBlockFlow(type, to, block);
+      return;
+    }
+    int priority = this.config.UPLOAD_PRIORITIES ? getUploadPriority(type, to) : UploadScheduler.BLOCK;
+    this.uploadScheduler.add(type, to, block, priority);
+    this.sendNextBlockMessage();
+  }
+
+  /**
+   * Gets the block a RecMessage or GetBlockTxnMessage requests
+   * @param request the request
+   */
+  private static Block getRequestedBlock(AbstractMessageTask request) {
+    if (request instanceof RecMessageTask) {
+      return ((RecMessageTask) request).getBlock();
+    } else if (request instanceof GetBlockTxnMessageTask) {
+      return ((GetBlockTxnMessageTask) request).getBlock();
+    } else {
+      throw new UnsupportedOperationException();
     }
   }
 
   /**
-   * Send next queued block message.
+   * the priority class of a block request if SimulationConfiguration.UPLOAD_PRIORITIES is set
+   * default: missing transactions before all other blocks
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   */
+  protected int getUploadPriority(int type, Node to) {
+    return type == AbstractMessageTask.GET_BLOCK_TXN ? UploadScheduler.MISSING_TRANSACTIONS : UploadScheduler.BLOCK;
+  }
+
+  /**
+   * Send the next queued block messages while less than MAX_CONCURRENT_UPLOADS uploads run,
+   * parallel uploads share the bandwidth of the node as it is when they start
    */
   public void sendNextBlockMessage() {
-    if (this.messageQue.size() > 0) {
-      Node to = this.messageQue.get(0).getFrom();
-      long bandwidth = getBandwidth(this.selfNode.getRegion(), to.getRegion());
-      AbstractMessageTask messageTask;
-      if (this.messageQue.get(0) instanceof RecMessageTask) {
-        Block block = ((RecMessageTask) this.messageQue.get(0)).getBlock();
-        // send compact block if accepted by both nodes (sending and recieving)
-        if (this.messageQue.get(0).getFrom().getPropagationProtocol().useCBR() && this.useCBR()) {
-          long delay = COMPACT_BLOCK_SIZE / (bandwidth / 1000) + processingTime;
-          messageTask = new CmpctBlockMessageTask(this.selfNode, to, block, delay);
-        } else {
-          long delay = BLOCK_SIZE  / (bandwidth / 1000) + processingTime;
-          messageTask = new BlockMessageTask(this.selfNode, to, block, delay);
-        }
-      } else if (this.messageQue.get(0) instanceof GetBlockTxnMessageTask) {
-        // Else from requests missing transactions.
-        Block block = ((GetBlockTxnMessageTask) this.messageQue.get(0)).getBlock();
-        long delay = getFailedBlockSize()  / (bandwidth / 1000) + processingTime;
-        messageTask = new BlockMessageTask(this.selfNode, to, block, delay);
-      } else {
-        throw new UnsupportedOperationException();
+    while (this.uploadScheduler.hasNext()) {
+      Node to = this.uploadScheduler.next();
+      int type = this.uploadScheduler.getType();
+      long bandwidth = this.context.getNetwork().getBandwidth(this.selfNode.getRegion(), to.getRegion());
+      long delay = getTransmissionSize(type, to) * this.uploadScheduler.getUploads() / (bandwidth / 1000) + processingTime;
+      long latency = this.context.getNetwork().getLatency(this.selfNode, to);
+      this.context.getTimer().putMessage(getBlockMessageType(type, to), this.selfNode, to,
+          this.uploadScheduler.getBlock(), latency + delay);
+    }
+  }
+
+  /**
+   * Sends the answer to a block request as a flow of the {@link simblock.simulator.FlowNetwork},
+   * the message is scheduled once the flow has transmitted the block
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   * @param block the requested block
+   */
+  public void sendBlockFlow(int type, Node to, Block block) {
+    long size = getTransmissionSize(type, to);
+    AbstractMessageTask messageTask = createBlockMessage(type, to, block, processingTime);
+    this.context.getFlowNetwork().startFlow(this.selfNode, to, size, messageTask);
+  }
+
+  /**
+   * whether a block requested by a node is sent as compact block
+   * default: if accepted by both nodes (sending and recieving)
+   * @param to the requesting node
+   */
+  protected boolean sendCompactBlock(Node to) {
+    return to.getPropagationProtocol().useCBR() && this.useCBR();
+  }
+
+  /**
+   * Gets the number of bytes to transmit to answer a block request
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   */
+  protected long getTransmissionSize(int type, Node to) {
+    if (type == AbstractMessageTask.REC) {
+      return sendCompactBlock(to) ? this.config.COMPACT_BLOCK_SIZE : this.config.BLOCK_SIZE;
+    } else if (type == AbstractMessageTask.GET_BLOCK_TXN) {
+      // Else from requests missing transactions.
+      return getFailedBlockSize();
+    } else {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Gets the type of the message answering a block request
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   * @return AbstractMessageTask.CMPCT_BLOCK or AbstractMessageTask.BLOCK
+   */
+  protected int getBlockMessageType(int type, Node to) {
+    if (type == AbstractMessageTask.REC) {
+      return sendCompactBlock(to) ? AbstractMessageTask.CMPCT_BLOCK : AbstractMessageTask.BLOCK;
+    } else if (type == AbstractMessageTask.GET_BLOCK_TXN) {
+      return AbstractMessageTask.BLOCK;
+    } else {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Creates the message answering a block request
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param to the requesting node
+   * @param block the requested block
+   * @param delay the time to transmit and process the block
+   */
+  protected AbstractMessageTask createBlockMessage(int type, Node to, Block block, long delay) {
+    if (type == AbstractMessageTask.REC) {
+      if (sendCompactBlock(to)) {
+        return new CmpctBlockMessageTask(this.selfNode, to, block, delay);
       }
-      sendingBlock = true;
-      this.messageQue.remove(0);
-      putTask(messageTask);
+      return new BlockMessageTask(this.selfNode, to, block, delay);
+    } else if (type == AbstractMessageTask.GET_BLOCK_TXN) {
+      return new BlockMessageTask(this.selfNode, to, block, delay);
     } else {
-      sendingBlock = false;
+      throw new UnsupportedOperationException();
     }
   }
   /**
    * starts the next block transmission when the current transmission ends
    */
   public void endBlockTransmission(){
+    this.uploadScheduler.finish();
     this.sendNextBlockMessage();
   }
+  /**
+   * called when a neighbor delivered a new block first, after the block was added to the chain
+   * @param from the neighbor that sent the block
+   * @param block the block
+   */
+  public void blockDelivered(Node from, Block block){
+  }
+
+  /**
+   * called when connections of the node are closed or opened during a run, see
+   * simblock.simulator.ChurnModel
+   */
+  public void neighborsChanged(){
+  }
+
   /**
    * clears message queue for reusing nodes in multiple simulations
    */
   public void clear(){
-    this.messageQue.clear();
+    this.uploadScheduler.clear();
   }
 }
\ No newline at end of file
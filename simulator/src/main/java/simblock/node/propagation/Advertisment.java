@@ -10,6 +10,8 @@ import simblock.block.Block;
  * Propagation protocol for advertisment based propagtion
  */
 public class Advertisment extends AbstractPropagationProtocol {
+  private static final long serialVersionUID = 1L;
+
   public Advertisment(Node node) {
     super(node);
   }
@@ -18,7 +20,7 @@ public class Advertisment extends AbstractPropagationProtocol {
    * sinds InvMessages to all neighbors to advertise the block
    */
   public void propagate(ArrayList<Node> neigbors, Block block) {
-    Collections.shuffle(neigbors);
+    Collections.shuffle(neigbors, this.context.getRandom());
     this.selfNode.sendInv(block, neigbors);
   }
 }
\ No newline at end of file
@@ -4,16 +4,14 @@ import java.util.ArrayList;
 import simblock.node.Node;
 import simblock.task.*;
 import simblock.block.Block;
-import static simblock.simulator.Timer.putTask;
-import static simblock.simulator.Network.getBandwidth;
-
-import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
 
 /**
  * class to implement a propagation protocol based on the ouroboros network of the  cardano blockchain
  * https://ouroboros-network.cardano.intersectmbo.org/pdfs/network-spec/network-spec.pdf
  */
 public class Cardano extends AbstractPropagationProtocol{
+    private static final long serialVersionUID = 1L;
+
     //number of blocks currently send at the same time;
     int currentlySending;
     public Cardano(Node node){
@@ -31,29 +29,36 @@ public class Cardano extends AbstractPropagationProtocol{
     }
 
     @Override
-    public void blockSendingMechanism(AbstractMessageTask message){
-        this.sendParallelBlocks(message);
+    public void blockSendingMechanism(int type, Node to, Block block){
+        if (this.context.getNetworkConfig().BANDWIDTH_SHARING) {
+            // the flow network shares the bandwidth between the parallel transmissions
+            this.sendBlockFlow(type, to, block);
+        } else {
+            this.sendParallelBlocks(to, block);
+        }
     }
 
     /**
      * simplified parrallel sending of blocks to all neighbors
      * as accurate dynamic adaption of propagation times would
-     * create to much overhead by recreating and rescheduling of the same tasks
-     * @param message the blockmessage
+     * create to much overhead by recreating and rescheduling of the same tasks,
+     * NetworkConfiguration.BANDWIDTH_SHARING enables the accurate flow model instead
+     * @param to the requesting node
+     * @param block the requested block
      */
-    public void sendParallelBlocks(AbstractMessageTask message){
+    public void sendParallelBlocks(Node to, Block block){
         this.currentlySending++;
-        Node to = message.getFrom();
-        long bandwidth = getBandwidth(this.selfNode.getRegion(), to.getRegion());
-        Block block = ((RecMessageTask) message).getBlock();
-        long delay = BLOCK_SIZE  / ((bandwidth / 1000)/Math.min(1,currentlySending)) + processingTime;
-        BlockMessageTask task = new BlockMessageTask(this.selfNode, to, block, delay);
-        putTask(task);
+        long bandwidth = this.context.getNetwork().getBandwidth(this.selfNode.getRegion(), to.getRegion());
+        long delay = this.config.BLOCK_SIZE  / ((bandwidth / 1000)/Math.min(1,currentlySending)) + processingTime;
+        long latency = this.context.getNetwork().getLatency(this.selfNode, to);
+        this.context.getTimer().putMessage(AbstractMessageTask.BLOCK, this.selfNode, to, block, latency + delay);
     }
 
     //gets called when the Blockmessage arrives
     @Override
     public void endBlockTransmission(){
-        this.currentlySending --;
+        if (this.currentlySending > 0) {
+            this.currentlySending --;
+        }
     }
 }
\ No newline at end of file
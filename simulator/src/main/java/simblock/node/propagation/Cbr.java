@@ -1,26 +1,55 @@
 package simblock.node.propagation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 
 import simblock.block.Block;
 import simblock.node.Node;
 
-import static simblock.settings.NetworkConfiguration.LATENCY;
-import static simblock.settings.SimulationConfiguration.CBR_HIGH_BW_CONNECTIONS;
-import static simblock.settings.SimulationConfiguration.COMPACT_BLOCK_SIZE;
-import static simblock.simulator.Network.getBandwidth;
+import simblock.simulator.Network;
+import simblock.task.AbstractMessageTask;
 
 /**
  * Class to implement Bitcoin Compact-Block propagation
  */
 public class Cbr extends AbstractPropagationProtocol {
-  public ArrayList<Node> highBandwidthModeConnections = new ArrayList<>();
-  public ArrayList<Node> lowBandwidthModeConnections = new ArrayList<>();
-  public boolean setLBWM = false;
+  private static final long serialVersionUID = 1L;
+
+  /*
+   * the neighbors that asked selfnode to push new blocks in high bandwidth mode and the other
+   * neighbors, which get invs. The low bandwidth list is built from the shuffled neighbors on the
+   * first propagation after the neighbors changed, then neighbors that switch modes are moved
+   * between the lists
+   */
+  private final ArrayList<Node> highBandwidthModeConnections = new ArrayList<>();
+  private final ArrayList<Node> lowBandwidthModeConnections = new ArrayList<>();
+  private boolean setLBWM = false;
+
+  /*
+   * the index of every neighbor in the routing table and per index whether the neighbor is in
+   * high bandwidth mode and its position in the list of its mode. Built again once the routing
+   * table counts another change of its neighbors
+   */
+  private final HashMap<Node, Integer> slots = new HashMap<>();
+  private boolean[] highBandwidthMode = new boolean[0];
+  private int[] modePosition = new int[0];
+  private int slotsModifications = -1;
+
+  /*
+   * the peers this node asked to send new blocks in high bandwidth mode, the node is in their
+   * highBandwidthModeConnections. A ring buffer of CBR_HIGH_BW_CONNECTIONS entries from the least
+   * to the most recently selected peer
+   */
+  private final Node[] highBandwidthPeers;
+  private int highBandwidthPeersStart = 0;
+  private int highBandwidthPeersCount = 0;
+
   public Cbr(Node node) {
     super(node);
+    this.highBandwidthPeers = new Node[this.config.CBR_HIGH_BW_CONNECTIONS];
   }
 
   /*
@@ -29,20 +58,220 @@ public class Cbr extends AbstractPropagationProtocol {
    * (with simple checking for the conenctions with the best expected propagation times )
    */
   public void chooseHighBandwidthModeConenctions(){
-    ArrayList<Node> sortedNeigbors = (ArrayList<Node>)this.selfNode.getNeighbors().clone();
-    Collections.sort(sortedNeigbors,new Comparator<Node>() {
-      @Override
-      public int compare(Node node1,Node node2){
-        Long bw2 = (Long)getBandwidth(node2.getRegion(), selfNode.getRegion());
-        Long bw1 = (Long)getBandwidth(node1.getRegion(), selfNode.getRegion());
-        Long delay1 = LATENCY[node1.getRegion()][selfNode.getRegion()]+(COMPACT_BLOCK_SIZE/bw1);
-        Long delay2 = LATENCY[node2.getRegion()][selfNode.getRegion()]+(COMPACT_BLOCK_SIZE/bw2);
-        return delay2.compareTo(delay1);
+    setHighBandwidthModePeers(getHighBandwidthModeCandidates());
+  }
+
+  /*
+   * the neighbors chooseHighBandwidthModeConenctions selects, only reads the network so it can be
+   * called for several nodes at the same time. The expected delays are computed once per neighbor
+   * and the first CBR_HIGH_BW_CONNECTIONS neighbors of the stable sort by descending delay are
+   * selected one after another
+   */
+  public List<Node> getHighBandwidthModeCandidates(){
+    Network network = this.context.getNetwork();
+    long compactBlockSize = this.config.COMPACT_BLOCK_SIZE;
+    int count = this.selfNode.getNeighborCount();
+    long[] delays = new long[count];
+    for (int i = 0; i < count; i++) {
+      Node node = this.selfNode.getNeighbor(i);
+      long bandwidth = network.getBandwidth(node.getRegion(), selfNode.getRegion());
+      delays[i] = network.getMeanLatency(node, selfNode) + (compactBlockSize / bandwidth);
+    }
+    boolean[] selected = new boolean[count];
+    List<Node> candidates = new ArrayList<>();
+    while (candidates.size() < Math.min(this.config.CBR_HIGH_BW_CONNECTIONS, count)) {
+      int best = -1;
+      for (int i = 0; i < count; i++) {
+        if (!selected[i] && (best < 0 || delays[i] > delays[best])) {
+          best = i;
+        }
       }
-    });
-    for(int i =0; i<CBR_HIGH_BW_CONNECTIONS && i < this.selfNode.getNeighbors().size();i++){
-        ((Cbr)sortedNeigbors.get(i).getPropagationProtocol()).highBandwidthModeConnections.add(selfNode);
+      selected[best] = true;
+      candidates.add(this.selfNode.getNeighbor(best));
     }
+    return candidates;
+  }
+
+  /*
+   * asks the peers to send new blocks to selfnode in high bandwidth mode
+   */
+  public void setHighBandwidthModePeers(List<Node> peers){
+    for (Node peer : peers) {
+      addHighBandwidthPeer(peer);
+    }
+  }
+
+  /*
+   * whether selfnode asked the node to send new blocks in high bandwidth mode, scans at most
+   * CBR_HIGH_BW_CONNECTIONS entries
+   */
+  public boolean isHighBandwidthPeer(Node node){
+    return indexOfHighBandwidthPeer(node) >= 0;
+  }
+
+  private int indexOfHighBandwidthPeer(Node node){
+    for (int i = 0; i < this.highBandwidthPeersCount; i++) {
+      if (this.highBandwidthPeers[(this.highBandwidthPeersStart + i) % this.highBandwidthPeers.length] == node) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /*
+   * appends a peer as most recent entry, the least recent peer is told to switch selfnode to low
+   * bandwidth mode if all entries are taken
+   */
+  private void addHighBandwidthPeer(Node peer){
+    int capacity = this.highBandwidthPeers.length;
+    if (capacity == 0 || !(peer.getPropagationProtocol() instanceof Cbr) || isHighBandwidthPeer(peer)) {
+      return;
+    }
+    if (this.highBandwidthPeersCount == capacity) {
+      Cbr oldest = (Cbr) this.highBandwidthPeers[this.highBandwidthPeersStart].getPropagationProtocol();
+      removeHighBandwidthPeer(0);
+      oldest.setHighBandwidthMode(this.selfNode, false);
+    }
+    this.highBandwidthPeers[(this.highBandwidthPeersStart + this.highBandwidthPeersCount) % capacity] = peer;
+    this.highBandwidthPeersCount++;
+    ((Cbr) peer.getPropagationProtocol()).setHighBandwidthMode(this.selfNode, true);
+  }
+
+  /*
+   * removes the entry at a position of the ring, counted from the least recent peer, without
+   * telling the peer. Dropping the least recent peer only moves the start of the ring
+   */
+  private void removeHighBandwidthPeer(int position){
+    int capacity = this.highBandwidthPeers.length;
+    if (position == 0) {
+      this.highBandwidthPeers[this.highBandwidthPeersStart] = null;
+      this.highBandwidthPeersStart = (this.highBandwidthPeersStart + 1) % capacity;
+      this.highBandwidthPeersCount--;
+      return;
+    }
+    for (int i = position; i < this.highBandwidthPeersCount - 1; i++) {
+      this.highBandwidthPeers[(this.highBandwidthPeersStart + i) % capacity] =
+          this.highBandwidthPeers[(this.highBandwidthPeersStart + i + 1) % capacity];
+    }
+    this.highBandwidthPeersCount--;
+    this.highBandwidthPeers[(this.highBandwidthPeersStart + this.highBandwidthPeersCount) % capacity] = null;
+  }
+
+  /*
+   * like Bitcoin Core (net_processing.cpp MaybeSetPeerAsAnnouncingHeaderAndIDs) the peer that
+   * delivered a new block first becomes the most recent high bandwidth peer if
+   * CBR_DYNAMIC_HIGH_BW is set, which takes at most CBR_HIGH_BW_CONNECTIONS steps. Blocks only
+   * arrive from neighbors, as messages from departed nodes are dropped
+   */
+  @Override
+  public void blockDelivered(Node from, Block block){
+    if (!this.config.CBR_DYNAMIC_HIGH_BW) {
+      return;
+    }
+    int position = indexOfHighBandwidthPeer(from);
+    if (position >= 0) {
+      removeHighBandwidthPeer(position);
+      this.highBandwidthPeers[(this.highBandwidthPeersStart + this.highBandwidthPeersCount) % this.highBandwidthPeers.length] = from;
+      this.highBandwidthPeersCount++;
+      // the peer lost selfnode if it was reset after selfnode had chosen it
+      ((Cbr) from.getPropagationProtocol()).setHighBandwidthMode(this.selfNode, true);
+    } else {
+      addHighBandwidthPeer(from);
+    }
+  }
+
+  /*
+   * switches a neighbor to high or low bandwidth mode on the side of selfnode, which takes
+   * constant time. Nodes that are no neighbors are ignored
+   */
+  private void setHighBandwidthMode(Node node, boolean highBandwidth){
+    updateSlots();
+    Integer slot = this.slots.get(node);
+    if (slot == null || this.highBandwidthMode[slot] == highBandwidth) {
+      return;
+    }
+    this.highBandwidthMode[slot] = highBandwidth;
+    if (highBandwidth) {
+      if (setLBWM) {
+        removeConnection(lowBandwidthModeConnections, slot);
+      }
+      addConnection(highBandwidthModeConnections, node, slot);
+    } else {
+      removeConnection(highBandwidthModeConnections, slot);
+      if (setLBWM) {
+        addConnection(lowBandwidthModeConnections, node, slot);
+      }
+    }
+  }
+
+  /*
+   * whether a neighbor asked selfnode to push new blocks in high bandwidth mode
+   */
+  private boolean isHighBandwidthMode(Node node){
+    updateSlots();
+    Integer slot = this.slots.get(node);
+    return slot != null && this.highBandwidthMode[slot];
+  }
+
+  private void addConnection(ArrayList<Node> connections, Node node, int slot){
+    this.modePosition[slot] = connections.size();
+    connections.add(node);
+  }
+
+  /*
+   * removes the neighbor at a slot from the list of its mode by moving the last entry into its
+   * position
+   */
+  private void removeConnection(ArrayList<Node> connections, int slot){
+    int position = this.modePosition[slot];
+    Node last = connections.remove(connections.size() - 1);
+    if (position < connections.size()) {
+      connections.set(position, last);
+      this.modePosition[this.slots.get(last)] = position;
+    }
+  }
+
+  /*
+   * indexes the neighbors again if they changed since the last call, the high bandwidth
+   * connections that are still neighbors keep their order and the low bandwidth list is built
+   * again on the next propagation
+   */
+  private void updateSlots(){
+    int modifications = this.selfNode.getRoutingTable().getModifications();
+    if (modifications == this.slotsModifications) {
+      return;
+    }
+    this.slotsModifications = modifications;
+    int count = this.selfNode.getNeighborCount();
+    this.slots.clear();
+    for (int i = 0; i < count; i++) {
+      this.slots.put(this.selfNode.getNeighbor(i), i);
+    }
+    this.highBandwidthMode = new boolean[count];
+    this.modePosition = new int[count];
+    int kept = 0;
+    for (Node node : highBandwidthModeConnections) {
+      Integer slot = this.slots.get(node);
+      if (slot != null && !this.highBandwidthMode[slot]) {
+        this.highBandwidthMode[slot] = true;
+        this.modePosition[slot] = kept;
+        highBandwidthModeConnections.set(kept++, node);
+      }
+    }
+    highBandwidthModeConnections.subList(kept, highBandwidthModeConnections.size()).clear();
+    this.setLBWM = false;
+  }
+
+  /*
+   * compact blocks pushed to high bandwidth peers come first, the peers that requested a block
+   * after an inv wait behind the missing transactions
+   */
+  @Override
+  protected int getUploadPriority(int type, Node to){
+    if (type == AbstractMessageTask.REC && sendCompactBlock(to) && isHighBandwidthMode(to)) {
+      return UploadScheduler.HIGH_BANDWIDTH;
+    }
+    return super.getUploadPriority(type, to);
   }
 
   @Override
@@ -56,10 +285,16 @@ public class Cbr extends AbstractPropagationProtocol {
    */
   @Override
   public void propagate(ArrayList<Node> neighbors, Block block) {
-    Collections.shuffle(neighbors);
+    Collections.shuffle(neighbors, this.context.getRandom());
+    updateSlots();
     if(!setLBWM){
-      lowBandwidthModeConnections=(ArrayList<Node>)neighbors.clone();
-      lowBandwidthModeConnections.removeIf(n->(highBandwidthModeConnections.contains(n)));
+      lowBandwidthModeConnections.clear();
+      for (Node n : neighbors) {
+        int slot = this.slots.get(n);
+        if (!this.highBandwidthMode[slot]) {
+          addConnection(lowBandwidthModeConnections, n, slot);
+        }
+      }
       setLBWM=true;
     }
 
@@ -71,10 +306,32 @@ public class Cbr extends AbstractPropagationProtocol {
     }
   }
 
+  /*
+   * stop pushing blocks to nodes that are no longer neighbors, forget high bandwidth peers that
+   * are no longer neighbors and split the neighbors into high and low bandwidth mode again on the
+   * next propagation
+   */
+  @Override
+  public void neighborsChanged(){
+    updateSlots();
+    for (int i = this.highBandwidthPeersCount - 1; i >= 0; i--) {
+      Node peer = this.highBandwidthPeers[(this.highBandwidthPeersStart + i) % this.highBandwidthPeers.length];
+      if (!this.selfNode.getRoutingTable().isNeighbor(peer)) {
+        removeHighBandwidthPeer(i);
+      }
+    }
+    this.setLBWM=false;
+  }
+
   @Override
   public void clear(){
-    this.messageQue.clear();
+    super.clear();
     this.highBandwidthModeConnections.clear();
+    this.lowBandwidthModeConnections.clear();
+    this.slotsModifications = -1;
+    Arrays.fill(this.highBandwidthPeers, null);
+    this.highBandwidthPeersStart = 0;
+    this.highBandwidthPeersCount = 0;
     this.setLBWM=false;
   }
-}
\ No newline at end of file
+}
@@ -8,21 +8,20 @@ import simblock.block.Transaction;
 import simblock.node.AdversarialNode;
 import simblock.node.Node;
 import simblock.task.AbstractMessageTask;
-import simblock.task.CmpctBlockMessageTask;
 import simblock.task.DelayTask;
 import simblock.task.GetBlockTxnMessageTask;
 import simblock.task.TransactionTask;
-import static simblock.simulator.Timer.putTask;
-import static simblock.settings.NetworkConfiguration.M;
 
 public class CompactBlockRelay extends AbstractPropagationProtocol {
+  private static final long serialVersionUID = 1L;
+
   public CompactBlockRelay(Node node) {
     super(node);
   }
 
   @Override
   public void propagate(ArrayList<Node> neigbors, Block block) {
-    Collections.shuffle(neigbors);
+    Collections.shuffle(neigbors, this.context.getRandom());
     this.selfNode.sendBlock(block, neigbors);
   }
 
@@ -32,8 +31,7 @@ public class CompactBlockRelay extends AbstractPropagationProtocol {
     }
   }
 
-  public void handleCompactBlockMessage(AbstractMessageTask message) {
-    Block block = ((CmpctBlockMessageTask) message).getBlock();
+  public void handleCompactBlockMessage(Node from, Block block) {
     boolean success = true;
     for (Transaction t : block.getTransactions()) {
       if (!this.selfNode.mempool.contains(t)) {
@@ -42,26 +40,26 @@ public class CompactBlockRelay extends AbstractPropagationProtocol {
     }
     if (success) {
       this.selfNode.getDownloadingBlocks().remove(block);
-      this.selfNode.receiveBlock(block);
+      this.selfNode.receiveBlock(block, from);
     } else {
-      AbstractMessageTask task = new GetBlockTxnMessageTask(this.selfNode, message.getFrom(), block);
-      putTask(task);
+      AbstractMessageTask task = new GetBlockTxnMessageTask(this.selfNode, from, block);
+      this.context.getTimer().putTask(task);
     }
   }
 
-  public void handleTransaction(AbstractMessageTask message) {
-    Transaction t = ((TransactionTask) message).getTransaction();
+  public void handleTransaction(Transaction t) {
     if (this.selfNode.mempool.size() < 600) {
       this.selfNode.mempool.add(t);
     }
-    for (Node n : this.selfNode.getNeighbors()) {
+    for (int i = 0, count = this.selfNode.getNeighborCount(); i < count; i++) {
+      Node n = this.selfNode.getNeighbor(i);
       if (!n.mempool.contains(t)) {
-        TransactionTask task = new TransactionTask(this.selfNode, n, t);
         if (this.selfNode.IsAdversarial() && ((AdversarialNode) this.selfNode).getDelayedLinks().contains(n)) {
-          DelayTask delay = new DelayTask((AdversarialNode) this.selfNode, M, (AbstractMessageTask) task);
-          putTask(delay);
+          TransactionTask task = new TransactionTask(this.selfNode, n, t);
+          DelayTask delay = new DelayTask((AdversarialNode) this.selfNode, this.context.getNetworkConfig().M, (AbstractMessageTask) task);
+          this.context.getTimer().putTask(delay);
         } else {
-          putTask(task);
+          sendTransaction(n, t);
         }
       }
     }
@@ -9,6 +9,8 @@ import simblock.node.Node;
  * class to implement ethereum style square-root propagtion
  */
 public class Hybrid extends AbstractPropagationProtocol {
+  private static final long serialVersionUID = 1L;
+
   public Hybrid(Node node) {
     super(node);
   }
@@ -20,7 +22,7 @@ public class Hybrid extends AbstractPropagationProtocol {
   @Override
   public void propagate(ArrayList<Node> neigbors, Block block) {
     int border = this.calculatePropagation(neigbors);
-    Collections.shuffle(neigbors);
+    Collections.shuffle(neigbors, this.context.getRandom());
     this.selfNode.sendBlock(block, neigbors.subList(0, border));
     this.selfNode.sendInv(block, neigbors.subList(border, neigbors.size()));
   }
@@ -1,23 +1,16 @@
 package simblock.node.propagation;
 import java.util.ArrayList;
-import java.util.Random;
 import simblock.block.Block;
 import simblock.node.Node;
-import simblock.task.AbstractMessageTask;
-import simblock.task.CmpctBlockMessageTask;
-import simblock.task.GetBlockTxnMessageTask;
-import static simblock.simulator.Timer.putTask;
-import simblock.task.*;
 
-import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
 import static simblock.settings.SimulationConfiguration.MONERO_FLUFFY_BLOCK_USAGE;
-import static simblock.settings.SimulationConfiguration.COMPACT_BLOCK_SIZE;
-import static simblock.simulator.Network.getBandwidth;
 
 /**
  * class that implements a propagation protocol based on the Monero blockchain
  */
 public class Monero extends AbstractPropagationProtocol {
+  private static final long serialVersionUID = 1L;
+
   private boolean useCBR;
 
   /**
@@ -26,8 +19,7 @@ public class Monero extends AbstractPropagationProtocol {
    */
   public Monero(Node node){
     super(node);
-    Random random = new Random();
-    if(random.nextDouble() < MONERO_FLUFFY_BLOCK_USAGE){
+    if(this.context.getRandom().nextDouble() < MONERO_FLUFFY_BLOCK_USAGE){
       this.useCBR=true;
     }else{
       this.useCBR=false;
@@ -61,36 +53,7 @@ public class Monero extends AbstractPropagationProtocol {
    * only checks whether the recieving node expects compact block or not
    */
   @Override
-  public void sendNextBlockMessage() {
-    if (this.messageQue.size() > 0) {
-      Node to = this.messageQue.get(0).getFrom();
-      long bandwidth = getBandwidth(this.selfNode.getRegion(), to.getRegion());
-      AbstractMessageTask messageTask;
-      if (this.messageQue.get(0) instanceof RecMessageTask) {
-        Block block = ((RecMessageTask) this.messageQue.get(0)).getBlock();
-        // If use compact block relay.
-        if (this.messageQue.get(0).getFrom().getPropagationProtocol().useCBR()){
-          long delay = COMPACT_BLOCK_SIZE  / (bandwidth / 1000) + processingTime;
-          // Send compact block message.
-          messageTask = new CmpctBlockMessageTask(this.selfNode, to, block, delay);
-        } else {
-          // Else use lagacy protocol.
-          long delay = BLOCK_SIZE / (bandwidth / 1000) + processingTime;
-          messageTask = new BlockMessageTask(this.selfNode, to, block, delay);
-        }
-      }else if (this.messageQue.get(0) instanceof GetBlockTxnMessageTask) {
-        // Else from requests missing transactions.
-        Block block = ((GetBlockTxnMessageTask) this.messageQue.get(0)).getBlock();
-        long delay = getFailedBlockSize() / (bandwidth / 1000) + processingTime;
-        messageTask = new BlockMessageTask(this.selfNode, to, block, delay);
-      } else {
-        throw new UnsupportedOperationException();
-      }
-      sendingBlock = true;
-      this.messageQue.remove(0);
-      putTask(messageTask);
-    } else {
-      sendingBlock = false;
-    }
+  protected boolean sendCompactBlock(Node to) {
+    return to.getPropagationProtocol().useCBR();
   }
 }
\ No newline at end of file
@@ -9,13 +9,15 @@ import simblock.node.Node;
  * propagation protocol that directly forwards every block to all neighbors
  */
 public class Push extends AbstractPropagationProtocol {
+  private static final long serialVersionUID = 1L;
+
   public Push(Node node) {
     super(node);
   }
 
   @Override
   public void propagate(ArrayList<Node> neigbors, Block block) {
-    Collections.shuffle(neigbors);
+    Collections.shuffle(neigbors, this.context.getRandom());
     this.selfNode.sendBlock(block, neigbors);
   }
 }
\ No newline at end of file
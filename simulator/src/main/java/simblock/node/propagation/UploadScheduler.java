@@ -0,0 +1,234 @@
+package simblock.node.propagation;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import simblock.block.Block;
+import simblock.node.Node;
+
+/**
+ * Schedules the block uploads of a node.
+ * The requests (RecMessage or GetBlockTxnMessage) are kept in a queue per requesting peer and
+ * priority class and a class is only served while all classes with a higher priority are empty.
+ * Within a class the peers are either served round robin or the requests in the order they were
+ * queued. At most maxUploads uploads run at the same time. A request is stored as its type and
+ * block in a ring buffer of the peer, so no message object is kept. All queues are array deques or
+ * ring buffers, so adding and taking a request takes constant time.
+ */
+public class UploadScheduler implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * compact blocks pushed to high bandwidth peers
+   */
+  public static final int HIGH_BANDWIDTH = 0;
+  /**
+   * missing transactions of a failed compact block (GetBlockTxnMessage)
+   */
+  public static final int MISSING_TRANSACTIONS = 1;
+  /**
+   * all other blocks, the answers to inv messages
+   */
+  public static final int BLOCK = 2;
+  private static final int CLASSES = 3;
+
+  private final int maxUploads;
+  private final boolean roundRobin;
+  /*
+   * per class the peers with queued requests of the class in the order they are served, once per
+   * peer if served round robin, else once per request
+   */
+  private final ArrayDeque<Node>[] rounds = newArray(CLASSES);
+  /*
+   * per peer the queued requests of each class, the queues of a peer are kept for its next
+   * requests when they are empty
+   */
+  private final HashMap<Node, RequestQueue[]> queues = new HashMap<>();
+  private int queued = 0;
+  private int uploads = 0;
+  /*
+   * the type and block of the request taken by the last call of next
+   */
+  private int type;
+  private Block block;
+
+  /**
+   * @param maxUploads the number of uploads running at the same time
+   * @param roundRobin whether the peers of a class are served round robin, otherwise in the order
+   *                   of the requests
+   */
+  public UploadScheduler(int maxUploads, boolean roundRobin) {
+    this.maxUploads = Math.max(1, maxUploads);
+    this.roundRobin = roundRobin;
+    for (int i = 0; i < CLASSES; i++) {
+      this.rounds[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * queues a block request
+   * @param type AbstractMessageTask.REC or AbstractMessageTask.GET_BLOCK_TXN
+   * @param peer the requesting peer
+   * @param block the requested block
+   * @param priority the priority class, HIGH_BANDWIDTH, MISSING_TRANSACTIONS or BLOCK
+   */
+  public void add(int type, Node peer, Block block, int priority) {
+    RequestQueue[] peerQueues = this.queues.get(peer);
+    if (peerQueues == null) {
+      peerQueues = new RequestQueue[CLASSES];
+      this.queues.put(peer, peerQueues);
+    }
+    if (peerQueues[priority] == null) {
+      peerQueues[priority] = new RequestQueue();
+    }
+    if (!this.roundRobin || peerQueues[priority].isEmpty()) {
+      this.rounds[priority].add(peer);
+    }
+    peerQueues[priority].add(type, block);
+    this.queued++;
+  }
+
+  /**
+   * @return whether a queued request can be uploaded now
+   */
+  public boolean hasNext() {
+    return this.queued > 0 && this.uploads < this.maxUploads;
+  }
+
+  /**
+   * takes the next request to upload and counts it as running upload until finish is called,
+   * its type and block are read with getType and getBlock
+   * @return the requesting peer
+   */
+  public Node next() {
+    for (int priority = 0; priority < CLASSES; priority++) {
+      Node peer = this.rounds[priority].poll();
+      if (peer == null) {
+        continue;
+      }
+      RequestQueue queue = this.queues.get(peer)[priority];
+      this.type = queue.peekType();
+      this.block = queue.peekBlock();
+      queue.poll();
+      if (this.roundRobin && !queue.isEmpty()) {
+        this.rounds[priority].add(peer);
+      }
+      this.queued--;
+      this.uploads++;
+      return peer;
+    }
+    throw new IllegalStateException("No queued upload");
+  }
+
+  /**
+   * @return the type of the request taken by the last call of next
+   */
+  public int getType() {
+    return this.type;
+  }
+
+  /**
+   * @return the block of the request taken by the last call of next
+   */
+  public Block getBlock() {
+    return this.block;
+  }
+
+  /**
+   * creates an array of deques, generic arrays can only be created by an unchecked cast
+   */
+  @SuppressWarnings("unchecked")
+  private static <E> ArrayDeque<E>[] newArray(int length) {
+    return (ArrayDeque<E>[]) new ArrayDeque<?>[length];
+  }
+
+  /**
+   * ends a running upload
+   */
+  public void finish() {
+    if (this.uploads > 0) {
+      this.uploads--;
+    }
+  }
+
+  /**
+   * @return the number of running uploads
+   */
+  public int getUploads() {
+    return this.uploads;
+  }
+
+  /**
+   * @return the number of queued requests
+   */
+  public int size() {
+    return this.queued;
+  }
+
+  /**
+   * drops all queued requests, running uploads still end with finish
+   */
+  public void clear() {
+    for (ArrayDeque<Node> round : this.rounds) {
+      round.clear();
+    }
+    this.queues.clear();
+    this.queued = 0;
+    this.block = null;
+  }
+
+  /*
+   * the requests of a peer and class, a ring buffer of their types and blocks whose capacity is a
+   * power of two
+   */
+  private static final class RequestQueue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] types = new int[4];
+    private Block[] blocks = new Block[4];
+    private int head = 0;
+    private int size = 0;
+
+    void add(int type, Block block) {
+      if (this.size == this.types.length) {
+        grow();
+      }
+      int tail = (this.head + this.size) & (this.types.length - 1);
+      this.types[tail] = type;
+      this.blocks[tail] = block;
+      this.size++;
+    }
+
+    int peekType() {
+      return this.types[this.head];
+    }
+
+    Block peekBlock() {
+      return this.blocks[this.head];
+    }
+
+    void poll() {
+      this.blocks[this.head] = null;
+      this.head = (this.head + 1) & (this.types.length - 1);
+      this.size--;
+    }
+
+    boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    private void grow() {
+      int capacity = this.types.length;
+      int[] types = new int[2 * capacity];
+      Block[] blocks = new Block[2 * capacity];
+      for (int i = 0; i < this.size; i++) {
+        types[i] = this.types[(this.head + i) & (capacity - 1)];
+        blocks[i] = this.blocks[(this.head + i) & (capacity - 1)];
+      }
+      this.types = types;
+      this.blocks = blocks;
+      this.head = 0;
+    }
+  }
+}
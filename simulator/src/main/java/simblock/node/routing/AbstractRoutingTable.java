@@ -16,15 +16,23 @@
 
 package simblock.node.routing;
 
+import java.io.PrintWriter;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
 import simblock.node.Node;
 
 /**
  * An abstraction of the a routing table used by a {@link Node}.
  */
-public abstract class AbstractRoutingTable {
+public abstract class AbstractRoutingTable implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   private final Node selfNode;
   private int numConnection = 8;
+  private int modifications = 0;
 
   /**
    * Instantiates a new Abstract routing table.
@@ -68,6 +76,22 @@ public abstract class AbstractRoutingTable {
    */
   public abstract void initTable(boolean connectToMiners);
 
+  /**
+   * Proposes outbound neighbors for a network that is constructed in parallel, see
+   * simblock.simulator.NetworkBuilder. The proposal must only read shared state and draw from the
+   * given random number generator, so tables can propose at the same time. The proposals are
+   * then added in node order and {@link #initTable(boolean)} completes the tables that are not
+   * full.
+   *
+   * @param connectToMiners whether miners connect to other miners first
+   * @param random          the random number generator of the self node
+   * @return the indices of the proposed neighbors in the list of simulated nodes, by default
+   *     none, so the table is built by {@link #initTable(boolean)} alone
+   */
+  public int[] proposeOutbound(boolean connectToMiners, SplittableRandom random) {
+    return new int[0];
+  }
+
   /**
    * Gets neighbors.
    *
@@ -75,6 +99,60 @@ public abstract class AbstractRoutingTable {
    */
   public abstract ArrayList<Node> getNeighbors();
 
+  /**
+   * Gets the number of neighbors. Together with {@link #getNeighbor(int)} the neighbors can be
+   * iterated without the copy {@link #getNeighbors()} makes.
+   *
+   * @return the number of neighbors
+   */
+  public int getNeighborCount() {
+    return getNeighbors().size();
+  }
+
+  /**
+   * Gets a neighbor by its index in {@link #getNeighbors()}.
+   *
+   * @param index the index
+   * @return the neighbor
+   */
+  public Node getNeighbor(int index) {
+    return getNeighbors().get(index);
+  }
+
+  /**
+   * Whether a node is a neighbor.
+   *
+   * @param node the node
+   * @return true if the node is an outbound or an inbound neighbor
+   */
+  public boolean isNeighbor(Node node) {
+    return getNeighbors().contains(node);
+  }
+
+  /**
+   * Gets the number of times the neighbors changed. State kept per index of
+   * {@link #getNeighbor(int)} is valid as long as the number stays the same.
+   *
+   * @return the number of changes
+   */
+  public int getModifications() {
+    return this.modifications;
+  }
+
+  /**
+   * Counts a change of the neighbors, after which they may have other indices.
+   */
+  protected void neighborsModified() {
+    this.modifications++;
+  }
+
+  /**
+   * Called once the network is constructed. A table may then build a faster representation of
+   * its neighbors, it has to fall back to the dynamic one as soon as its neighbors change again.
+   */
+  public void freeze() {
+  }
+
   /**
    * Add a neighbor to the list of neighbors.
    *
@@ -113,10 +191,96 @@ public abstract class AbstractRoutingTable {
     return false;
   }
 
+  /**
+   * Gets the nodes the self node has connected to.
+   *
+   * @return the outbound neighbors
+   */
+  public List<Node> getOutboundNeighbors() {
+    return getNeighbors();
+  }
+
+  /**
+   * Gets the nodes that have connected to the self node.
+   *
+   * @return the inbound neighbors
+   */
+  public List<Node> getInboundNeighbors() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Restores the outbound connections of a stored network in their original order. The
+   * neighbors are not notified, every table restores its inbound connections itself with
+   * {@link #restoreInbound(List)} once all outbound connections are restored.
+   *
+   * @param nodes the outbound neighbors
+   */
+  public void restoreOutbound(List<Node> nodes) {
+    for (Node node : nodes) {
+      addNeighbor(node);
+    }
+  }
+
+  /**
+   * Restores the inbound connections of a stored network in their original order.
+   *
+   * @param nodes the inbound neighbors
+   */
+  public void restoreInbound(List<Node> nodes) {
+  }
+
+  /**
+   * Gets the base latency of the link to a neighbor, see
+   * {@link simblock.settings.NetworkConfiguration#LINK_LATENCY}.
+   *
+   * @param node the neighbor
+   * @return the latency in milliseconds or -1 if the table does not store one for the node
+   */
+  public long getLinkLatency(Node node) {
+    return -1;
+  }
+
   /**
    * Accept block.
    */
   //TODO unclear what this does
   public void acceptBlock() {
   }
+
+  /**
+   * Prints the creation of a link to the output of the simulation.
+   *
+   * @param endNode the node the self node connected to
+   */
+  protected void printAddLink(Node endNode) {
+    PrintWriter outJsonFile = getSelfNode().getContext().getOutJsonFile();
+    outJsonFile.print("{");
+    outJsonFile.print("\"kind\":\"add-link\",");
+    outJsonFile.print("\"content\":{");
+    outJsonFile.print("\"timestamp\":" + getSelfNode().getContext().getTimer().getCurrentTime() + ",");
+    outJsonFile.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
+    outJsonFile.print("\"end-node-id\":" + endNode.getNodeID());
+    outJsonFile.print("}");
+    outJsonFile.print("},");
+    outJsonFile.flush();
+  }
+
+  /**
+   * Prints the removal of a link to the output of the simulation.
+   *
+   * @param endNode the node the self node disconnected from
+   */
+  protected void printRemoveLink(Node endNode) {
+    PrintWriter outJsonFile = getSelfNode().getContext().getOutJsonFile();
+    outJsonFile.print("{");
+    outJsonFile.print("\"kind\":\"remove-link\",");
+    outJsonFile.print("\"content\":{");
+    outJsonFile.print("\"timestamp\":" + getSelfNode().getContext().getTimer().getCurrentTime() + ",");
+    outJsonFile.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
+    outJsonFile.print("\"end-node-id\":" + endNode.getNodeID());
+    outJsonFile.print("}");
+    outJsonFile.print("},");
+    outJsonFile.flush();
+  }
 }
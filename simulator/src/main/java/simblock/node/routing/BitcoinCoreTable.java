@@ -16,16 +16,15 @@
 
 package simblock.node.routing;
 
-import static simblock.settings.NetworkConfiguration.getUSEMINGPOOLS;
-import static simblock.settings.SimulationConfiguration.DEBUG_MODE;
-import static simblock.simulator.Main.OUT_JSON_FILE;
-import static simblock.simulator.Simulator.getSimulatedNodes;
-import static simblock.simulator.Timer.getCurrentTime;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
 
 import simblock.node.Node;
+import simblock.simulator.SimulationContext;
 
 /**
  * The implementation of the {@link AbstractRoutingTable} representing the Bitcoin core routing
@@ -33,6 +32,7 @@ import simblock.node.Node;
  */
 @SuppressWarnings("unused")
 public class BitcoinCoreTable extends AbstractRoutingTable {
+  private static final long serialVersionUID = 1L;
 
   /**
    * The list of outbound connections.
@@ -44,6 +44,25 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    */
   private final ArrayList<Node> inbound = new ArrayList<>();
 
+  /**
+   * The base latencies of the outbound and inbound connections in milliseconds, at the index of
+   * the node in {@link #outbound} and {@link #inbound}. Only used if
+   * {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is enabled.
+   */
+  private int[] outboundLatency = new int[0];
+  private int[] inboundLatency = new int[0];
+
+  /**
+   * The outbound followed by the inbound neighbors, their ids in ascending order and the base
+   * latencies of their connections in the order of the ids, built by {@link #freeze()} and
+   * dropped when a connection is added or removed. Null while the table is not frozen, the
+   * latencies are null as well if {@link simblock.settings.NetworkConfiguration#LINK_LATENCY}
+   * is disabled.
+   */
+  private Node[] frozenNeighbors = null;
+  private int[] frozenIds = null;
+  private int[] frozenLatencies = null;
+
   /**
    * Instantiates a new Bitcoin core table.
    *
@@ -59,28 +78,168 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return a list of known neighbors
    */
   public ArrayList<Node> getNeighbors() {
+    if (this.frozenNeighbors != null) {
+      return new ArrayList<>(Arrays.asList(this.frozenNeighbors));
+    }
     ArrayList<Node> neighbors = new ArrayList<>();
     neighbors.addAll(outbound);
     neighbors.addAll(inbound);
     return neighbors;
   }
 
+  @Override
+  public int getNeighborCount() {
+    return this.outbound.size() + this.inbound.size();
+  }
+
+  @Override
+  public Node getNeighbor(int index) {
+    if (this.frozenNeighbors != null) {
+      return this.frozenNeighbors[index];
+    }
+    int outboundSize = this.outbound.size();
+    return index < outboundSize ? this.outbound.get(index) : this.inbound.get(index - outboundSize);
+  }
+
+  /**
+   * Whether a node is a neighbor, by a binary search of its id if the table is frozen.
+   *
+   * @param node the node
+   * @return true if the node is an outbound or an inbound neighbor
+   */
+  @Override
+  public boolean isNeighbor(Node node) {
+    if (this.frozenIds != null) {
+      return Arrays.binarySearch(this.frozenIds, node.getNodeID()) >= 0;
+    }
+    return this.outbound.contains(node) || this.inbound.contains(node);
+  }
+
+  /**
+   * Copies the neighbors to an array and sorts their ids for {@link #isNeighbor(Node)} and
+   * {@link #getLinkLatency(Node)}.
+   */
+  @Override
+  public void freeze() {
+    int count = getNeighborCount();
+    int outboundSize = this.outbound.size();
+    boolean linkLatency = isLinkLatencyEnabled();
+    Node[] neighbors = new Node[count];
+    // The id in the upper and the latency in the lower half, so sorting keeps them together
+    long[] links = new long[count];
+    for (int i = 0; i < count; i++) {
+      neighbors[i] = getNeighbor(i);
+      long latency = !linkLatency ? 0
+          : i < outboundSize ? this.outboundLatency[i] : this.inboundLatency[i - outboundSize];
+      links[i] = (long) neighbors[i].getNodeID() << 32 | latency & 0xffffffffL;
+    }
+    Arrays.sort(links);
+    int[] ids = new int[count];
+    int[] latencies = linkLatency ? new int[count] : null;
+    for (int i = 0; i < count; i++) {
+      ids[i] = (int) (links[i] >>> 32);
+      if (linkLatency) {
+        latencies[i] = (int) links[i];
+      }
+    }
+    this.frozenNeighbors = neighbors;
+    this.frozenIds = ids;
+    this.frozenLatencies = latencies;
+  }
+
+  /**
+   * Drops the frozen neighbors after a connection has changed and counts the change.
+   */
+  private void thaw() {
+    neighborsModified();
+    this.frozenNeighbors = null;
+    this.frozenIds = null;
+    this.frozenLatencies = null;
+  }
+
+  /**
+   * Connects to random outbound peers until the number of connections is reached. If
+   * connectToMiners is set, a miner connects to other miners first. The peers are drawn from the
+   * pools of the {@link PeerSampler} of the simulation, unless
+   * {@link simblock.settings.SimulationConfiguration#SHUFFLED_PEER_SELECTION} is enabled.
+   *
+   * @param connectToMiners whether miners connect to other miners first
+   */
   public void initTable(boolean connectToMiners) {
+    if (getContext().getConfig().SHUFFLED_PEER_SELECTION) {
+      initTableShuffled(connectToMiners);
+      return;
+    }
+    PeerSampler sampler = getContext().getSimulator().getPeerSampler();
+    if (connectToMiners && this.getSelfNode().getMiningPower() > 0) {
+      connectFromPool(sampler, sampler.getMiners());
+      connectFromPool(sampler, sampler.getOthers());
+    } else {
+      connectFromPool(sampler, sampler.getAll());
+    }
+  }
+
+  /**
+   * Proposes as many outbound neighbors as the node has connections, drawn from the pools of
+   * the {@link PeerSampler} with the same miner preference as {@link #initTable(boolean)}.
+   *
+   * @param connectToMiners whether miners connect to other miners first
+   * @param random          the random number generator of the self node
+   * @return the indices of the proposed neighbors
+   */
+  @Override
+  public int[] proposeOutbound(boolean connectToMiners, SplittableRandom random) {
+    PeerSampler sampler = getContext().getSimulator().getPeerSampler();
+    int self = getSelfNode().getNodeID() - 1;
+    int[] proposal = new int[this.getNumConnection()];
+    int count;
+    if (connectToMiners && this.getSelfNode().getMiningPower() > 0) {
+      count = sampler.sample(sampler.getMiners(), self, proposal, 0, random);
+      count = sampler.sample(sampler.getOthers(), self, proposal, count, random);
+    } else {
+      count = sampler.sample(sampler.getAll(), self, proposal, 0, random);
+    }
+    return count == proposal.length ? proposal : Arrays.copyOf(proposal, count);
+  }
+
+  /**
+   * Connects to peers drawn from a pool until the number of connections is reached or the pool
+   * is exhausted. Drawn peers that {@link #addNeighbor(Node)} rejects are skipped.
+   *
+   * @param sampler the peer sampler
+   * @param pool    the pool
+   */
+  private void connectFromPool(PeerSampler sampler, int[] pool) {
+    Random random = getContext().getRandom();
+    for (int drawn = 0; drawn < pool.length && this.outbound.size() < this.getNumConnection();
+        drawn++) {
+      this.addNeighbor(sampler.draw(pool, drawn, random));
+    }
+  }
+
+  /**
+   * Connects to peers in the order of a shuffled list of all nodes, which takes O(N) per node.
+   * Reproduces the networks of earlier versions.
+   *
+   * @param connectToMiners whether miners connect to other miners first
+   */
+  private void initTableShuffled(boolean connectToMiners) {
+    ArrayList<Node> simulatedNodes = getContext().getSimulator().getSimulatedNodes();
     ArrayList<Integer> candidates = new ArrayList<>();
     ArrayList<Integer> miners = new ArrayList<>();
-    for (int i = 0; i < getSimulatedNodes().size(); i++) {
-      if (connectToMiners && this.getSelfNode().getMiningPower() > 0 && getSimulatedNodes().get(i).getMiningPower() > 0 ) {
+    for (int i = 0; i < simulatedNodes.size(); i++) {
+      if (connectToMiners && this.getSelfNode().getMiningPower() > 0 && simulatedNodes.get(i).getMiningPower() > 0 ) {
         miners.add(i);
       } else {
         candidates.add(i);
       }
     }
-    Collections.shuffle(miners);
-    Collections.shuffle(candidates);
+    Collections.shuffle(miners, getContext().getRandom());
+    Collections.shuffle(candidates, getContext().getRandom());
     if (connectToMiners) {
       for (int miner : miners) {
         if (this.outbound.size() < this.getNumConnection()) {
-          this.addNeighbor(getSimulatedNodes().get(miner));
+          this.addNeighbor(simulatedNodes.get(miner));
         } else {
           break;
         }
@@ -88,7 +247,7 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
     }
     for (int candidate : candidates) {
       if (this.outbound.size() < this.getNumConnection()) {
-        this.addNeighbor(getSimulatedNodes().get(candidate));
+        this.addNeighbor(simulatedNodes.get(candidate));
       } else {
         break;
       }
@@ -97,7 +256,7 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
 
   /**
    * Adds the provided node to the list of outbound connections of self node.The provided node
-   * will not be added if it is the self node, it exists as an outbound connection of the self node,
+   * will not be added if it is the self node, it is offline, it exists as an outbound connection of the self node,
    * it exists as an inbound connection of the self node or the self node does not allow for
    * additional outbound connections. Otherwise, the self node will add the provided node to the
    * list of outbound connections and the provided node will add the self node to the list of
@@ -107,14 +266,19 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state
    */
   public boolean addNeighbor(Node node) {
-    if (node == getSelfNode() || this.outbound.contains(node) || this.inbound.contains(
-        node) || this.outbound.size() >= this.getNumConnection()) {
+    if (node == getSelfNode() || !node.isOnline() || isNeighbor(node)
+        || this.outbound.size() >= this.getNumConnection()) {
       return false;
-    } else if (this.outbound.add(node) && node.getRoutingTable().addInbound(getSelfNode())) {
-      if (DEBUG_MODE) {
-        printAddLink(node);
+    } else if (this.outbound.add(node)) {
+      thaw();
+      addOutboundLatency(node);
+      if (node.getRoutingTable().addInbound(getSelfNode())) {
+        if (getContext().getConfig().DEBUG_MODE) {
+          printAddLink(node);
+        }
+        return true;
       }
-      return true;
+      return false;
     } else {
       return false;
     }
@@ -128,8 +292,15 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state of the operation
    */
   public boolean removeNeighbor(Node node) {
+    int index = this.outbound.indexOf(node);
+    if (index >= 0 && isLinkLatencyEnabled()) {
+      this.outboundLatency = removeLatency(this.outboundLatency, index, this.outbound.size());
+    }
+    if (index >= 0) {
+      thaw();
+    }
     if (this.outbound.remove(node) && node.getRoutingTable().removeInbound(getSelfNode())) {
-      if (DEBUG_MODE) {
+      if (getContext().getConfig().DEBUG_MODE) {
         printRemoveLink(node);
       }
       return true;
@@ -145,7 +316,13 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    */
   public boolean addInbound(Node from) {
     if (this.inbound.add(from)) {
-      if (DEBUG_MODE) {
+      thaw();
+      if (isLinkLatencyEnabled()) {
+        // Both directions of a connection share its latency
+        this.inboundLatency = addLatency(this.inboundLatency, this.inbound.size() - 1,
+            from.getRoutingTable().getLinkLatency(getSelfNode()));
+      }
+      if (getContext().getConfig().DEBUG_MODE) {
         printAddLink(from);
       }
       return true;
@@ -160,8 +337,13 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state of the operation
    */
   public boolean removeInbound(Node from) {
+    int index = this.inbound.indexOf(from);
+    if (index >= 0 && isLinkLatencyEnabled()) {
+      this.inboundLatency = removeLatency(this.inboundLatency, index, this.inbound.size());
+    }
     if (this.inbound.remove(from)) {
-      if (DEBUG_MODE) {
+      thaw();
+      if (getContext().getConfig().DEBUG_MODE) {
         printRemoveLink(from);
       }
       return true;
@@ -169,27 +351,114 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
     return false;
   }
 
-  private void printAddLink(Node endNode) {
-    OUT_JSON_FILE.print("{");
-    OUT_JSON_FILE.print("\"kind\":\"add-link\",");
-    OUT_JSON_FILE.print("\"content\":{");
-    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
-    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
-    OUT_JSON_FILE.print("\"end-node-id\":" + endNode.getNodeID());
-    OUT_JSON_FILE.print("}");
-    OUT_JSON_FILE.print("},");
-    OUT_JSON_FILE.flush();
-  }
-
-  private void printRemoveLink(Node endNode) {
-    OUT_JSON_FILE.print("{");
-    OUT_JSON_FILE.print("\"kind\":\"remove-link\",");
-    OUT_JSON_FILE.print("\"content\":{");
-    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
-    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
-    OUT_JSON_FILE.print("\"end-node-id\":" + endNode.getNodeID());
-    OUT_JSON_FILE.print("}");
-    OUT_JSON_FILE.print("},");
-    OUT_JSON_FILE.flush();
+  @Override
+  public List<Node> getOutboundNeighbors() {
+    return Collections.unmodifiableList(this.outbound);
+  }
+
+  @Override
+  public List<Node> getInboundNeighbors() {
+    return Collections.unmodifiableList(this.inbound);
+  }
+
+  @Override
+  public void restoreOutbound(List<Node> nodes) {
+    thaw();
+    for (Node node : nodes) {
+      this.outbound.add(node);
+      addOutboundLatency(node);
+    }
+  }
+
+  @Override
+  public void restoreInbound(List<Node> nodes) {
+    for (Node node : nodes) {
+      addInbound(node);
+    }
+  }
+
+  /**
+   * Gets the base latency of the link to a neighbor, by a binary search of its id if the table
+   * is frozen.
+   *
+   * @param node the neighbor
+   * @return the latency in milliseconds or -1 if the node is no neighbor
+   */
+  @Override
+  public long getLinkLatency(Node node) {
+    if (!isLinkLatencyEnabled()) {
+      return -1;
+    }
+    if (this.frozenLatencies != null) {
+      int position = Arrays.binarySearch(this.frozenIds, node.getNodeID());
+      return position >= 0 ? this.frozenLatencies[position] : -1;
+    }
+    int index = this.outbound.indexOf(node);
+    if (index >= 0) {
+      return this.outboundLatency[index];
+    }
+    index = this.inbound.indexOf(node);
+    return index >= 0 ? this.inboundLatency[index] : -1;
+  }
+
+  /**
+   * Whether the connections have a base latency.
+   *
+   * @return true if {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is enabled
+   */
+  private boolean isLinkLatencyEnabled() {
+    return getContext().getNetworkConfig().LINK_LATENCY;
+  }
+
+  /**
+   * Draws the base latency of a new outbound connection from the latency distribution of both
+   * nodes.
+   *
+   * @param node the new outbound neighbor, the last node of {@link #outbound}
+   */
+  private void addOutboundLatency(Node node) {
+    if (isLinkLatencyEnabled()) {
+      long latency = getContext().getNetwork().drawLatency(getSelfNode(), node);
+      this.outboundLatency = addLatency(this.outboundLatency, this.outbound.size() - 1, latency);
+    }
+  }
+
+  /**
+   * Stores a latency in an array, growing it if necessary.
+   *
+   * @param latencies the latencies
+   * @param index     the index of the latency
+   * @param latency   the latency in milliseconds
+   * @return the array holding the latency
+   */
+  private static int[] addLatency(int[] latencies, int index, long latency) {
+    if (index >= latencies.length) {
+      latencies = Arrays.copyOf(latencies, Math.max(8, latencies.length * 2));
+    }
+    latencies[index] = (int) latency;
+    return latencies;
+  }
+
+  /**
+   * Removes a latency from an array, moving the following latencies down like the nodes of
+   * the list the array is aligned with.
+   *
+   * @param latencies the latencies
+   * @param index     the index of the latency
+   * @param size      the number of latencies stored
+   * @return the array without the latency
+   */
+  private static int[] removeLatency(int[] latencies, int index, int size) {
+    System.arraycopy(latencies, index + 1, latencies, index, size - index - 1);
+    return latencies;
+  }
+
+  /**
+   * Gets the simulation the self node belongs to.
+   *
+   * @return the simulation context
+   */
+  private SimulationContext getContext() {
+    return getSelfNode().getContext();
   }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.node.routing;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The type Kademlia index gives every simulated node a random 64 bit Kademlia id and keeps the
+ * ids sorted in primitive arrays. The nodes at a log distance from a node, the k-bucket of the
+ * XOR metric whose ids share exactly the first l bits with the id of the node, form a contiguous
+ * range of the sorted ids. The range is found by two binary searches, so the buckets never have
+ * to be stored: building the index takes O(N log N) and drawing a peer from a bucket O(log N).
+ *
+ * <p>The ids are drawn from the seed of the simulation in node order, so they do not depend on
+ * the random number generator of the simulation. The index is immutable and may be read by
+ * several threads.
+ */
+public class KademliaIndex {
+
+  /**
+   * The ids by node index. The lowest bits of an id are replaced by the node index, so the ids
+   * are unique and the index of a sorted id is found without a search. The ids are sorted as
+   * signed numbers, which only swaps the two halves of the id space, so every bucket is still a
+   * contiguous range.
+   */
+  private final long[] ids;
+
+  /**
+   * The ids in ascending order and the node indices in the same order.
+   */
+  private final long[] sortedIds;
+  private final int[] sortedNodes;
+
+  /**
+   * Draws the ids of the nodes and sorts them.
+   *
+   * @param size the number of nodes
+   * @param seed the seed of the simulation
+   */
+  public KademliaIndex(int size, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    int indexBits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+    long indexMask = (1L << indexBits) - 1;
+    this.ids = new long[size];
+    for (int i = 0; i < size; i++) {
+      this.ids[i] = (random.nextLong() & ~indexMask) | i;
+    }
+    this.sortedIds = this.ids.clone();
+    Arrays.sort(this.sortedIds);
+    this.sortedNodes = new int[size];
+    for (int i = 0; i < size; i++) {
+      this.sortedNodes[i] = (int) (this.sortedIds[i] & indexMask);
+    }
+  }
+
+  /**
+   * Gets the number of nodes.
+   *
+   * @return the number of nodes
+   */
+  public int size() {
+    return this.ids.length;
+  }
+
+  /**
+   * Gets the Kademlia id of a node.
+   *
+   * @param node the index of the node
+   * @return the id
+   */
+  public long getId(int node) {
+    return this.ids[node];
+  }
+
+  /**
+   * Gets the bucket a node falls into from the view of another node.
+   *
+   * @param self the index of the viewing node
+   * @param node the index of the other node
+   * @return the number of leading bits both ids share
+   */
+  public int getBucket(int self, int node) {
+    return Long.numberOfLeadingZeros(this.ids[self] ^ this.ids[node]);
+  }
+
+  /**
+   * Gets the deepest bucket of a node that is not empty, the bucket of the node whose id is
+   * closest.
+   *
+   * @param self the index of the node
+   * @return the number of leading bits the id shares with the closest id, -1 for a single node
+   */
+  public int getDepth(int self) {
+    int position = Arrays.binarySearch(this.sortedIds, this.ids[self]);
+    int depth = -1;
+    if (position > 0) {
+      depth = getBucket(self, this.sortedNodes[position - 1]);
+    }
+    if (position + 1 < this.sortedNodes.length) {
+      depth = Math.max(depth, getBucket(self, this.sortedNodes[position + 1]));
+    }
+    return depth;
+  }
+
+  /**
+   * Gets the first position of a bucket in the sorted ids.
+   *
+   * @param self   the index of the node
+   * @param bucket the number of leading bits shared with the id of the node
+   * @return the first position
+   */
+  public int getBucketStart(int self, int bucket) {
+    long prefix = getBucketPrefix(self, bucket);
+    return prefix == Long.MIN_VALUE ? 0 : upperBound(prefix - 1);
+  }
+
+  /**
+   * Gets the position after a bucket in the sorted ids.
+   *
+   * @param self   the index of the node
+   * @param bucket the number of leading bits shared with the id of the node
+   * @return the position after the last node of the bucket
+   */
+  public int getBucketEnd(int self, int bucket) {
+    long rest = bucket == 63 ? 0 : -1L >>> (bucket + 1);
+    return upperBound(getBucketPrefix(self, bucket) + rest);
+  }
+
+  /**
+   * Gets the node at a position of the sorted ids.
+   *
+   * @param position the position
+   * @return the index of the node
+   */
+  public int getNode(int position) {
+    return this.sortedNodes[position];
+  }
+
+  /**
+   * Draws a node from the table of a node. The table holds at most bucketSize nodes of every
+   * bucket, every entry is drawn with the same probability: a bucket is drawn uniformly among
+   * the buckets up to the depth of the node and accepted with a probability proportional to the
+   * number of its entries, then one of its nodes is drawn uniformly.
+   *
+   * @param self       the index of the node
+   * @param depth      the depth of the node, see {@link #getDepth(int)}
+   * @param bucketSize the number of entries of a full bucket
+   * @param random     draws an integer below its argument
+   * @return the index of the drawn node
+   */
+  public int draw(int self, int depth, int bucketSize, IntUnaryOperator random) {
+    while (true) {
+      int bucket = random.applyAsInt(depth + 1);
+      int start = getBucketStart(self, bucket);
+      int size = getBucketEnd(self, bucket) - start;
+      if (size > 0 && random.applyAsInt(bucketSize) < size) {
+        return this.sortedNodes[start + random.applyAsInt(size)];
+      }
+    }
+  }
+
+  /**
+   * Gets the smallest id of a bucket, the id of the node with the bit after the shared bits
+   * flipped and the bits after it cleared.
+   *
+   * @param self   the index of the node
+   * @param bucket the number of leading bits shared with the id of the node
+   * @return the smallest id
+   */
+  private long getBucketPrefix(int self, int bucket) {
+    long flipped = this.ids[self] ^ (Long.MIN_VALUE >>> bucket);
+    long mask = bucket == 63 ? -1L : ~(-1L >>> (bucket + 1));
+    return flipped & mask;
+  }
+
+  /**
+   * Gets the first position of an id greater than the given one.
+   *
+   * @param id the id
+   * @return the position
+   */
+  private int upperBound(long id) {
+    int low = 0;
+    int high = this.sortedIds.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (this.sortedIds[middle] <= id) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.node.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
+
+import simblock.node.Node;
+import simblock.simulator.SimulationContext;
+
+/**
+ * The implementation of the {@link AbstractRoutingTable} representing a Kademlia routing table
+ * like the discv5 table of Ethereum clients. Every node has a random Kademlia id, see
+ * {@link KademliaIndex}, and keeps the nodes it knows in k-buckets by their XOR distance: bucket
+ * l holds at most {@link #BUCKET_SIZE} nodes whose ids share exactly the first l bits with its
+ * own id. A node dials its outbound peers from its table, every entry with the same
+ * probability, and connects to at most {@link #BUCKET_SIZE} peers of a bucket. As the buckets of
+ * close ids are small, the peers are biased towards nodes close in the id space, which gives the
+ * overlay the clustering of a Kademlia network.
+ *
+ * <p>The connections are stored as node indices in primitive arrays. The buckets themselves are
+ * not stored, they are ranges of the sorted ids of the shared index. Miners do not prefer other
+ * miners, the id space knows no miners.
+ */
+public class KademliaTable extends AbstractRoutingTable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The number of entries of a k-bucket, k in Kademlia.
+   */
+  public static final int BUCKET_SIZE = 16;
+
+  /**
+   * The indices of the outbound and inbound neighbors and their number.
+   */
+  private int[] outbound = new int[8];
+  private int outboundCount = 0;
+  private int[] inbound = new int[8];
+  private int inboundCount = 0;
+
+  /**
+   * The base latencies of the outbound and inbound connections in milliseconds, at the index of
+   * the node in {@link #outbound} and {@link #inbound}. Only used if
+   * {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is enabled.
+   */
+  private int[] outboundLatency = new int[8];
+  private int[] inboundLatency = new int[8];
+
+  /**
+   * The ids of the neighbors in ascending order and the base latencies of their connections in
+   * the same order, built by {@link #freeze()} and dropped when a connection is added or
+   * removed. Null while the table is not frozen, the latencies are null as well if
+   * {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is disabled.
+   */
+  private int[] frozenIds = null;
+  private int[] frozenLatencies = null;
+
+  /**
+   * Instantiates a new Kademlia table.
+   *
+   * @param selfNode the self node
+   */
+  public KademliaTable(Node selfNode) {
+    super(selfNode);
+  }
+
+  /**
+   * Connects to peers drawn from the table until the number of connections is reached. Drawn
+   * peers that {@link #addNeighbor(Node)} rejects are skipped, the draws end if the table holds
+   * too few peers.
+   *
+   * @param connectToMiners ignored, the peers are chosen by their ids
+   */
+  @Override
+  public void initTable(boolean connectToMiners) {
+    KademliaIndex index = getContext().getSimulator().getPeerSampler().getKademliaIndex();
+    int self = getSelfIndex();
+    int depth = index.getDepth(self);
+    if (depth < 0) {
+      return;
+    }
+    Random random = getContext().getRandom();
+    IntUnaryOperator draw = random::nextInt;
+    List<Node> nodes = getNodes();
+    for (int attempt = 0; attempt < getMaxAttempts() && this.outboundCount < getNumConnection();
+        attempt++) {
+      int peer = index.draw(self, depth, BUCKET_SIZE, draw);
+      if (countBucket(index, self, index.getBucket(self, peer), this.outbound, this.outboundCount)
+          < BUCKET_SIZE) {
+        addNeighbor(nodes.get(peer));
+      }
+    }
+  }
+
+  /**
+   * Proposes as many outbound neighbors as the node has connections, drawn like
+   * {@link #initTable(boolean)} draws them.
+   *
+   * @param connectToMiners ignored, the peers are chosen by their ids
+   * @param random          the random number generator of the self node
+   * @return the indices of the proposed neighbors
+   */
+  @Override
+  public int[] proposeOutbound(boolean connectToMiners, SplittableRandom random) {
+    KademliaIndex index = getContext().getSimulator().getPeerSampler().getKademliaIndex();
+    int self = getSelfIndex();
+    int depth = index.getDepth(self);
+    int[] proposal = new int[getNumConnection()];
+    int count = 0;
+    if (depth < 0) {
+      return proposal;
+    }
+    IntUnaryOperator draw = random::nextInt;
+    for (int attempt = 0; attempt < getMaxAttempts() && count < proposal.length; attempt++) {
+      int peer = index.draw(self, depth, BUCKET_SIZE, draw);
+      if (!contains(proposal, count, peer)
+          && countBucket(index, self, index.getBucket(self, peer), proposal, count)
+          < BUCKET_SIZE) {
+        proposal[count++] = peer;
+      }
+    }
+    return count == proposal.length ? proposal : Arrays.copyOf(proposal, count);
+  }
+
+  /**
+   * Gets the number of draws after which a node gives up filling its table, enough to find all
+   * peers of a small network.
+   *
+   * @return the number of draws
+   */
+  private int getMaxAttempts() {
+    return 64 * getNumConnection();
+  }
+
+  /**
+   * Counts the nodes of a bucket among the first entries of an array.
+   *
+   * @param index   the Kademlia index
+   * @param self    the index of the self node
+   * @param bucket  the bucket
+   * @param entries the node indices
+   * @param count   the number of entries
+   * @return the number of nodes in the bucket
+   */
+  private static int countBucket(KademliaIndex index, int self, int bucket, int[] entries,
+      int count) {
+    int inBucket = 0;
+    for (int i = 0; i < count; i++) {
+      if (index.getBucket(self, entries[i]) == bucket) {
+        inBucket++;
+      }
+    }
+    return inBucket;
+  }
+
+  /**
+   * Whether the first entries of an array contain a value.
+   *
+   * @param values the array
+   * @param count  the number of entries to search
+   * @param value  the value
+   * @return true if the value is found
+   */
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets all known outbound and inbound nodes.
+   *
+   * @return a list of known neighbors
+   */
+  @Override
+  public ArrayList<Node> getNeighbors() {
+    ArrayList<Node> neighbors = new ArrayList<>(getNeighborCount());
+    List<Node> nodes = getNodes();
+    for (int i = 0; i < this.outboundCount; i++) {
+      neighbors.add(nodes.get(this.outbound[i]));
+    }
+    for (int i = 0; i < this.inboundCount; i++) {
+      neighbors.add(nodes.get(this.inbound[i]));
+    }
+    return neighbors;
+  }
+
+  @Override
+  public int getNeighborCount() {
+    return this.outboundCount + this.inboundCount;
+  }
+
+  @Override
+  public Node getNeighbor(int index) {
+    int neighbor = index < this.outboundCount
+        ? this.outbound[index] : this.inbound[index - this.outboundCount];
+    return getNodes().get(neighbor);
+  }
+
+  /**
+   * Whether a node is a neighbor, by a binary search of its id if the table is frozen.
+   *
+   * @param node the node
+   * @return true if the node is an outbound or an inbound neighbor
+   */
+  @Override
+  public boolean isNeighbor(Node node) {
+    if (this.frozenIds != null) {
+      return Arrays.binarySearch(this.frozenIds, node.getNodeID()) >= 0;
+    }
+    int index = node.getNodeID() - 1;
+    return contains(this.outbound, this.outboundCount, index)
+        || contains(this.inbound, this.inboundCount, index);
+  }
+  /**
+   * Sorts the ids of the neighbors for {@link #isNeighbor(Node)} and
+   * {@link #getLinkLatency(Node)}.
+   */
+  @Override
+  public void freeze() {
+    int count = getNeighborCount();
+    boolean linkLatency = isLinkLatencyEnabled();
+    // The id in the upper and the latency in the lower half, so sorting keeps them together
+    long[] links = new long[count];
+    for (int i = 0; i < count; i++) {
+      int index = i < this.outboundCount ? this.outbound[i] : this.inbound[i - this.outboundCount];
+      long latency = !linkLatency ? 0 : i < this.outboundCount
+          ? this.outboundLatency[i] : this.inboundLatency[i - this.outboundCount];
+      links[i] = (long) (index + 1) << 32 | latency & 0xffffffffL;
+    }
+    Arrays.sort(links);
+    int[] ids = new int[count];
+    int[] latencies = linkLatency ? new int[count] : null;
+    for (int i = 0; i < count; i++) {
+      ids[i] = (int) (links[i] >>> 32);
+      if (linkLatency) {
+        latencies[i] = (int) links[i];
+      }
+    }
+    this.frozenIds = ids;
+    this.frozenLatencies = latencies;
+  }
+
+  /**
+   * Drops the frozen neighbors after a connection has changed and counts the change.
+   */
+  private void thaw() {
+    neighborsModified();
+    this.frozenIds = null;
+    this.frozenLatencies = null;
+  }
+
+
+  /**
+   * Adds the provided node to the outbound connections of the self node and the self node to
+   * the inbound connections of the provided node, unless it is the self node, it is offline, it
+   * is already a neighbor or the self node has no free outbound connection.
+   *
+   * @param node the node to be connected to the self node.
+   * @return the success state
+   */
+  @Override
+  public boolean addNeighbor(Node node) {
+    if (node == getSelfNode() || !node.isOnline() || isNeighbor(node)
+        || this.outboundCount >= getNumConnection()) {
+      return false;
+    }
+    long latency = isLinkLatencyEnabled()
+        ? getContext().getNetwork().drawLatency(getSelfNode(), node) : 0;
+    thaw();
+    this.outbound = append(this.outbound, this.outboundCount, node.getNodeID() - 1);
+    this.outboundLatency = append(this.outboundLatency, this.outboundCount, (int) latency);
+    this.outboundCount++;
+    if (node.getRoutingTable().addInbound(getSelfNode())) {
+      if (getContext().getConfig().DEBUG_MODE) {
+        printAddLink(node);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Removes the provided node from the outbound connections of the self node and the self node
+   * from the inbound connections of the provided node.
+   *
+   * @param node the node to be disconnected from the self node.
+   * @return the success state of the operation
+   */
+  @Override
+  public boolean removeNeighbor(Node node) {
+    int position = indexOf(this.outbound, this.outboundCount, node.getNodeID() - 1);
+    if (position < 0) {
+      return false;
+    }
+    thaw();
+    remove(this.outbound, this.outboundCount, position);
+    remove(this.outboundLatency, this.outboundCount, position);
+    this.outboundCount--;
+    if (node.getRoutingTable().removeInbound(getSelfNode())) {
+      if (getContext().getConfig().DEBUG_MODE) {
+        printRemoveLink(node);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean addInbound(Node from) {
+    // Both directions of a connection share its latency
+    long latency = isLinkLatencyEnabled() ? from.getRoutingTable().getLinkLatency(getSelfNode()) : 0;
+    thaw();
+    this.inbound = append(this.inbound, this.inboundCount, from.getNodeID() - 1);
+    this.inboundLatency = append(this.inboundLatency, this.inboundCount, (int) latency);
+    this.inboundCount++;
+    return true;
+  }
+
+  @Override
+  public boolean removeInbound(Node from) {
+    int position = indexOf(this.inbound, this.inboundCount, from.getNodeID() - 1);
+    if (position < 0) {
+      return false;
+    }
+    thaw();
+    remove(this.inbound, this.inboundCount, position);
+    remove(this.inboundLatency, this.inboundCount, position);
+    this.inboundCount--;
+    return true;
+  }
+
+  @Override
+  public List<Node> getOutboundNeighbors() {
+    return toNodes(this.outbound, this.outboundCount);
+  }
+
+  @Override
+  public List<Node> getInboundNeighbors() {
+    return toNodes(this.inbound, this.inboundCount);
+  }
+
+  @Override
+  public void restoreOutbound(List<Node> nodes) {
+    thaw();
+    for (Node node : nodes) {
+      long latency = isLinkLatencyEnabled()
+          ? getContext().getNetwork().drawLatency(getSelfNode(), node) : 0;
+      this.outbound = append(this.outbound, this.outboundCount, node.getNodeID() - 1);
+      this.outboundLatency = append(this.outboundLatency, this.outboundCount, (int) latency);
+      this.outboundCount++;
+    }
+  }
+
+  @Override
+  public void restoreInbound(List<Node> nodes) {
+    for (Node node : nodes) {
+      addInbound(node);
+    }
+  }
+
+  /**
+   * Gets the base latency of the link to a neighbor, by a binary search of its id if the table
+   * is frozen.
+   *
+   * @param node the neighbor
+   * @return the latency in milliseconds or -1 if the node is no neighbor
+   */
+  @Override
+  public long getLinkLatency(Node node) {
+    if (!isLinkLatencyEnabled()) {
+      return -1;
+    }
+    if (this.frozenLatencies != null) {
+      int position = Arrays.binarySearch(this.frozenIds, node.getNodeID());
+      return position >= 0 ? this.frozenLatencies[position] : -1;
+    }
+    int index = node.getNodeID() - 1;
+    int position = indexOf(this.outbound, this.outboundCount, index);
+    if (position >= 0) {
+      return this.outboundLatency[position];
+    }
+    position = indexOf(this.inbound, this.inboundCount, index);
+    return position >= 0 ? this.inboundLatency[position] : -1;
+  }
+
+  /**
+   * Whether the connections have a base latency.
+   *
+   * @return true if {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is enabled
+   */
+  private boolean isLinkLatencyEnabled() {
+    return getContext().getNetworkConfig().LINK_LATENCY;
+  }
+
+  /**
+   * Stores a value after the first entries of an array, growing it if necessary.
+   *
+   * @param values the array
+   * @param count  the number of entries
+   * @param value  the value
+   * @return the array holding the value
+   */
+  private static int[] append(int[] values, int count, int value) {
+    if (count == values.length) {
+      values = Arrays.copyOf(values, Math.max(8, 2 * values.length));
+    }
+    values[count] = value;
+    return values;
+  }
+
+  /**
+   * Removes an entry, moving the following entries down so the order is kept.
+   *
+   * @param values   the array
+   * @param count    the number of entries
+   * @param position the position of the entry
+   */
+  private static void remove(int[] values, int count, int position) {
+    System.arraycopy(values, position + 1, values, position, count - position - 1);
+  }
+
+  /**
+   * Gets the position of a value among the first entries of an array.
+   *
+   * @param values the array
+   * @param count  the number of entries
+   * @param value  the value
+   * @return the position or -1
+   */
+  private static int indexOf(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Resolves node indices.
+   *
+   * @param indices the node indices
+   * @param count   the number of indices
+   * @return the nodes
+   */
+  private List<Node> toNodes(int[] indices, int count) {
+    List<Node> nodes = getNodes();
+    List<Node> resolved = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      resolved.add(nodes.get(indices[i]));
+    }
+    return resolved;
+  }
+
+  /**
+   * Gets the index of the self node in the list of simulated nodes.
+   *
+   * @return the index
+   */
+  private int getSelfIndex() {
+    return getSelfNode().getNodeID() - 1;
+  }
+
+  /**
+   * Gets the simulated nodes the indices refer to.
+   *
+   * @return the simulated nodes
+   */
+  private List<Node> getNodes() {
+    return getContext().getSimulator().getSimulatedNodes();
+  }
+
+  /**
+   * Gets the simulation the self node belongs to.
+   *
+   * @return the simulation context
+   */
+  private SimulationContext getContext() {
+    return getSelfNode().getContext();
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.node.routing;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import simblock.node.Node;
+
+/**
+ * The type Peer sampler holds the indices of the simulated nodes in primitive arrays from which
+ * the routing tables draw their outbound peers. A pool is sampled by a partial Fisher-Yates
+ * shuffle: the first k draws swap k uniformly chosen indices to the front of the pool, so a node
+ * with k outbound connections costs O(k) instead of shuffling a list of all nodes.
+ *
+ * <p>A pool is not restored after a node has drawn from it. Every permutation of a pool is as
+ * good a starting point as any other, so the pools are shared by all nodes of a network and
+ * never copied. The pools are rebuilt when the number of simulated nodes has changed; the split
+ * into miners and other nodes reflects the mining power at that time.
+ *
+ * <p>{@link #sample} does not change the pools and may be called by several threads once the
+ * pools have been built. The sampler also holds the {@link KademliaIndex} of the nodes, built
+ * when it is first needed.
+ */
+public class PeerSampler {
+  private final List<Node> nodes;
+  private final long seed;
+  private int size = -1;
+  private int[] all;
+  private int[] miners;
+  private int[] others;
+  private KademliaIndex kademliaIndex;
+
+  /**
+   * Instantiates a new Peer sampler.
+   *
+   * @param nodes the simulated nodes, the index of a node in the pools is its index in the list
+   * @param seed  the seed of the simulation the Kademlia ids are drawn from
+   */
+  public PeerSampler(List<Node> nodes, long seed) {
+    this.nodes = nodes;
+    this.seed = seed;
+  }
+
+  /**
+   * Rebuilds the pools if nodes have been added or removed.
+   */
+  private void update() {
+    if (this.nodes.size() == this.size) {
+      return;
+    }
+    this.size = this.nodes.size();
+    this.kademliaIndex = null;
+    this.all = new int[this.size];
+    int minerCount = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.all[i] = i;
+      if (this.nodes.get(i).getMiningPower() > 0) {
+        minerCount++;
+      }
+    }
+    this.miners = new int[minerCount];
+    this.others = new int[this.size - minerCount];
+    int nextMiner = 0;
+    int nextOther = 0;
+    for (int i = 0; i < this.size; i++) {
+      if (this.nodes.get(i).getMiningPower() > 0) {
+        this.miners[nextMiner++] = i;
+      } else {
+        this.others[nextOther++] = i;
+      }
+    }
+  }
+
+  /**
+   * Gets the pool of all nodes.
+   *
+   * @return the indices of all nodes
+   */
+  public int[] getAll() {
+    update();
+    return this.all;
+  }
+
+  /**
+   * Gets the pool of the nodes with mining power.
+   *
+   * @return the indices of the miners
+   */
+  public int[] getMiners() {
+    update();
+    return this.miners;
+  }
+
+  /**
+   * Gets the pool of the nodes without mining power.
+   *
+   * @return the indices of the other nodes
+   */
+  public int[] getOthers() {
+    update();
+    return this.others;
+  }
+
+  /**
+   * Gets the Kademlia ids of the nodes. Synchronized, as the tables of a network that is
+   * constructed in parallel may ask for it at the same time.
+   *
+   * @return the Kademlia index of the simulated nodes
+   */
+  public synchronized KademliaIndex getKademliaIndex() {
+    update();
+    if (this.kademliaIndex == null) {
+      this.kademliaIndex = new KademliaIndex(this.size, this.seed);
+    }
+    return this.kademliaIndex;
+  }
+
+  /**
+   * Samples distinct nodes of a pool without changing it, so several nodes can sample at the
+   * same time. A large pool is sampled by rejecting the nodes drawn before, a pool that is not
+   * much larger than the sample is copied and partially shuffled.
+   *
+   * @param pool    the pool
+   * @param exclude the index of a node never to sample, the sampling node itself
+   * @param sample  the sample, its length is the number of nodes wanted
+   * @param count   the number of nodes already in the sample
+   * @param random  the random number generator
+   * @return the number of nodes in the sample, less than its length if the pool is exhausted
+   */
+  public int sample(int[] pool, int exclude, int[] sample, int count,
+      SplittableRandom random) {
+    if (pool.length > 4 * sample.length) {
+      while (count < sample.length) {
+        int index = pool[random.nextInt(pool.length)];
+        if (index != exclude && !contains(sample, count, index)) {
+          sample[count++] = index;
+        }
+      }
+      return count;
+    }
+    int[] copy = pool.clone();
+    for (int drawn = 0; drawn < copy.length && count < sample.length; drawn++) {
+      int swap = drawn + random.nextInt(copy.length - drawn);
+      int index = copy[swap];
+      copy[swap] = copy[drawn];
+      copy[drawn] = index;
+      if (index != exclude && !contains(sample, count, index)) {
+        sample[count++] = index;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Whether the first entries of an array contain a value.
+   *
+   * @param values the array
+   * @param count  the number of entries to search
+   * @param value  the value
+   * @return true if the value is found
+   */
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Draws the next node of a pool, the step of a partial Fisher-Yates shuffle.
+   *
+   * @param pool   the pool
+   * @param drawn  the number of nodes drawn from the pool so far by the same node
+   * @param random the random number generator
+   * @return the drawn node
+   */
+  public Node draw(int[] pool, int drawn, Random random) {
+    int swap = drawn + random.nextInt(pool.length - drawn);
+    int index = pool[swap];
+    pool[swap] = pool[drawn];
+    pool[drawn] = index;
+    return this.nodes.get(index);
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.settings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The type Location model describes a network with an arbitrary number of locations, e.g.
+ * cities or autonomous systems, loaded from a data file instead of the regions compiled into
+ * {@link NetworkConfiguration}. Every location has a name, a share of the nodes, an upload and a
+ * download bandwidth, and the mean latencies between all locations are stored in a single
+ * primitive matrix.
+ *
+ * <p>The data file is a text file of whitespace separated values, lines starting with # are
+ * comments:
+ *
+ * <pre>
+ * locations n
+ * name share upload download   (n lines)
+ * latency latency ...          (n lines of n mean latencies in milliseconds, row is the sender)
+ * </pre>
+ *
+ * <p>The shares are normalized to a distribution, so they can be node counts as well. The
+ * bandwidths have the unit of {@link NetworkConfiguration#UPLOAD_BANDWIDTH}.
+ *
+ * <p>Parsing a matrix of thousands of locations takes much longer than a simulation run of a
+ * sweep, so the parsed model is written to a binary cache next to the data file, the file name
+ * with the suffix {@value #CACHE_SUFFIX}. The cache is memory mapped when the model is loaded
+ * again and rebuilt whenever the size or the modification time of the data file changes. Within
+ * a JVM every data file is loaded only once and the model is shared by all runs, so a model must
+ * not be modified.
+ */
+public class LocationModel implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The suffix of the binary cache of a data file.
+   */
+  public static final String CACHE_SUFFIX = ".bin";
+
+  private static final int CACHE_MAGIC = 0x53424c4d;
+  private static final int CACHE_VERSION = 1;
+
+  /**
+   * The models loaded in this JVM by the canonical path of their data file.
+   */
+  private static final Map<String, LocationModel> loaded = new HashMap<>();
+
+  private final String[] names;
+  private final double[] distribution;
+  private final long[] upload;
+  private final long[] download;
+
+  /**
+   * The mean latencies in milliseconds, the latency from location i to location j at
+   * <code>i * n + j</code>.
+   */
+  private final int[] latency;
+
+  private LocationModel(String[] names, double[] distribution, long[] upload, long[] download,
+      int[] latency) {
+    this.names = names;
+    this.distribution = distribution;
+    this.upload = upload;
+    this.download = download;
+    this.latency = latency;
+  }
+
+  /**
+   * Loads the model of a data file, from its binary cache if it is up to date.
+   *
+   * @param path the path of the data file
+   * @return the model, shared with all other callers loading the same file
+   * @throws IOException              if the data file cannot be read
+   * @throws IllegalArgumentException if the data file is malformed
+   */
+  public static LocationModel load(String path) throws IOException {
+    File file = new File(path).getCanonicalFile();
+    synchronized (loaded) {
+      LocationModel model = loaded.get(file.getPath());
+      if (model == null) {
+        model = readCache(file);
+        if (model == null) {
+          model = parse(file);
+          writeCache(file, model);
+        }
+        loaded.put(file.getPath(), model);
+      }
+      return model;
+    }
+  }
+
+  /**
+   * Gets the number of locations.
+   *
+   * @return the number of locations
+   */
+  public int size() {
+    return this.names.length;
+  }
+
+  /**
+   * Gets the names of the locations.
+   *
+   * @return the names
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(this.names));
+  }
+
+  /**
+   * Gets the distribution of the nodes over the locations, the shares sum up to 1.
+   *
+   * @return the distribution, not to be modified
+   */
+  public double[] getDistribution() {
+    return this.distribution;
+  }
+
+  /**
+   * Gets the upload bandwidth of a location.
+   *
+   * @param location the location
+   * @return the upload bandwidth
+   */
+  public long getUploadBandwidth(int location) {
+    return this.upload[location];
+  }
+
+  /**
+   * Gets the download bandwidth of a location.
+   *
+   * @param location the location
+   * @return the download bandwidth
+   */
+  public long getDownloadBandwidth(int location) {
+    return this.download[location];
+  }
+
+  /**
+   * Gets the mean latency between two locations.
+   *
+   * @param from the sending location
+   * @param to   the receiving location
+   * @return the mean latency in milliseconds
+   */
+  public long getLatency(int from, int to) {
+    return this.latency[from * this.names.length + to];
+  }
+
+  /**
+   * Parses a data file.
+   *
+   * @param file the data file
+   * @return the model
+   * @throws IOException if the file cannot be read
+   */
+  private static LocationModel parse(File file) throws IOException {
+    List<String> tokens = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        tokens.addAll(Arrays.asList(line.split("\\s+")));
+      }
+    }
+    if (tokens.size() < 2 || !tokens.get(0).equals("locations")) {
+      throw new IllegalArgumentException(file + " does not start with: locations n");
+    }
+    try {
+      int n = Integer.parseInt(tokens.get(1));
+      if (n < 1 || tokens.size() != 2 + 4 * n + n * n) {
+        throw new IllegalArgumentException(file + " does not hold " + n + " locations and a "
+            + n + "x" + n + " latency matrix");
+      }
+      String[] names = new String[n];
+      double[] distribution = new double[n];
+      long[] upload = new long[n];
+      long[] download = new long[n];
+      int[] latency = new int[n * n];
+      int next = 2;
+      double total = 0;
+      for (int i = 0; i < n; i++) {
+        names[i] = tokens.get(next++);
+        distribution[i] = Double.parseDouble(tokens.get(next++));
+        upload[i] = Long.parseLong(tokens.get(next++));
+        download[i] = Long.parseLong(tokens.get(next++));
+        if (distribution[i] < 0 || upload[i] <= 0 || download[i] <= 0) {
+          throw new IllegalArgumentException(file + ": location " + names[i]
+              + " has a negative share or no bandwidth");
+        }
+        total += distribution[i];
+      }
+      if (total <= 0) {
+        throw new IllegalArgumentException(file + " has no nodes");
+      }
+      for (int i = 0; i < n; i++) {
+        distribution[i] /= total;
+      }
+      for (int i = 0; i < n * n; i++) {
+        latency[i] = Integer.parseInt(tokens.get(next++));
+      }
+      return new LocationModel(names, distribution, upload, download, latency);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(file + ": invalid number " + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the binary cache of a data file.
+   *
+   * @param file the data file
+   * @return the model or null if there is no cache or it is out of date
+   */
+  private static LocationModel readCache(File file) {
+    Path cache = Paths.get(file.getPath() + CACHE_SUFFIX);
+    if (!Files.isRegularFile(cache)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+          || buffer.getLong() != file.length() || buffer.getLong() != file.lastModified()) {
+        return null;
+      }
+      int n = buffer.getInt();
+      String[] names = new String[n];
+      double[] distribution = new double[n];
+      long[] upload = new long[n];
+      long[] download = new long[n];
+      int[] latency = new int[n * n];
+      for (int i = 0; i < n; i++) {
+        byte[] name = new byte[buffer.getShort()];
+        buffer.get(name);
+        names[i] = new String(name, StandardCharsets.UTF_8);
+      }
+      buffer.asDoubleBuffer().get(distribution);
+      buffer.position(buffer.position() + 8 * n);
+      buffer.asLongBuffer().get(upload);
+      buffer.position(buffer.position() + 8 * n);
+      buffer.asLongBuffer().get(download);
+      buffer.position(buffer.position() + 8 * n);
+      buffer.asIntBuffer().get(latency);
+      return new LocationModel(names, distribution, upload, download, latency);
+    } catch (IOException | RuntimeException e) {
+      // A broken cache is rebuilt from the data file
+      return null;
+    }
+  }
+
+  /**
+   * Writes the binary cache of a data file. The cache is written to a temporary file first, so
+   * runs started at the same time never map a partially written cache. Failing to write it only
+   * costs the next run the parsing.
+   *
+   * @param file  the data file
+   * @param model the parsed model
+   */
+  private static void writeCache(File file, LocationModel model) {
+    int n = model.size();
+    byte[][] names = new byte[n][];
+    int size = 4 + 4 + 8 + 8 + 4 + 8 * n * 3 + 4 * n * n;
+    for (int i = 0; i < n; i++) {
+      names[i] = model.names[i].getBytes(StandardCharsets.UTF_8);
+      size += 2 + names[i].length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putLong(file.length())
+        .putLong(file.lastModified()).putInt(n);
+    for (byte[] name : names) {
+      buffer.putShort((short) name.length).put(name);
+    }
+    for (double share : model.distribution) {
+      buffer.putDouble(share);
+    }
+    for (long bandwidth : model.upload) {
+      buffer.putLong(bandwidth);
+    }
+    for (long bandwidth : model.download) {
+      buffer.putLong(bandwidth);
+    }
+    buffer.asIntBuffer().put(model.latency);
+    buffer.position(0);
+    Path cache = Paths.get(file.getPath() + CACHE_SUFFIX);
+    try {
+      Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(),
+          cache.getFileName().toString(), ".tmp");
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.out.println("Could not write the location cache " + cache + ": " + e.getMessage());
+    }
+  }
+}
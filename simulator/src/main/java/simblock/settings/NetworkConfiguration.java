@@ -16,15 +16,20 @@
 
 package simblock.settings;
 
+import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * The type Network configuration allows to configure network latency and bandwidth.
+ * The type Network configuration allows to configure network latency and bandwidth. The static
+ * constants are shared by all simulations, the remaining parameters belong to the
+ * {@link simblock.simulator.SimulationContext} of a single simulation.
  */
-public class NetworkConfiguration {
+public class NetworkConfiguration implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   /**
    * Regions where nodes can exist.
    */
@@ -85,7 +90,57 @@ public class NetworkConfiguration {
   /**
    * List of latency assigned to each region. (unit: millisecond)
    */
-  public static  long[][] LATENCY = LATENCY_FITTING_CBR_22;
+  public long[][] LATENCY = LATENCY_FITTING_CBR_22;
+
+  /**
+   * Number of cells of the quantile tables the latency is sampled from, 0 samples it with the
+   * closed form of the distribution instead. See simblock.simulator.ParetoLatencyTable.
+   */
+  public int LATENCY_TABLE_RESOLUTION = 0;
+
+  /**
+   * Whether every connection draws a base latency when it is established, which all its
+   * messages share. Otherwise every message draws its own latency.
+   */
+  public boolean LINK_LATENCY = false;
+
+  /**
+   * The jitter added to the base latency of a connection for every message, drawn uniformly
+   * up to this fraction of the base latency.
+   */
+  public double LINK_JITTER = 0.1;
+
+  /**
+   * Whether every node gets a position and an access delay that add to the mean latency of its
+   * region, see simblock.simulator.NodeCoordinates. Otherwise all nodes of a region have the
+   * same latency distribution.
+   */
+  public boolean NODE_COORDINATES = false;
+
+  /**
+   * The radius of the disk the positions of the nodes of a region are drawn from. (unit:
+   * millisecond)
+   */
+  public double COORDINATE_SPREAD = 10;
+
+  /**
+   * The mean of the exponentially distributed access delay of a node. (unit: millisecond)
+   */
+  public double ACCESS_DELAY = 5;
+
+  /**
+   * Whether concurrent block transmissions share the bandwidth of the nodes as max-min fair
+   * flows, see simblock.simulator.FlowNetwork. Otherwise a node transmits one block at a time
+   * at the full bandwidth.
+   */
+  public boolean BANDWIDTH_SHARING = false;
+
+  /**
+   * The locations loaded from a data file, which replace the regions, their latencies, their
+   * bandwidths and the region distribution compiled into this class. Null uses the compiled
+   * regions.
+   */
+  private LocationModel locationModel = null;
 
   /**
    * List of download bandwidth assigned to each region, and last element is Inter-regional
@@ -114,7 +169,7 @@ public class NetworkConfiguration {
    * List of download bandwidth assigned to each region, and last element is Inter-regional
    * bandwidth. (unit: bit per second)
    */
-  public static  long[] DOWNLOAD_BANDWIDTH = DOWNLOAD_BANDWIDTH_2022;
+  public long[] DOWNLOAD_BANDWIDTH = DOWNLOAD_BANDWIDTH_2022;
 
   /**
    * List of upload bandwidth assigned to each region. (unit: bit per second), and last element
@@ -145,7 +200,7 @@ public class NetworkConfiguration {
    * List of upload bandwidth assigned to each region. (unit: bit per second), and last element
    * is Inter-regional bandwidth.
    */
-  public static  long[] UPLOAD_BANDWIDTH = UPLOAD_FITTING_CBR_22;
+  public long[] UPLOAD_BANDWIDTH = UPLOAD_FITTING_CBR_22;
 
 
   /**
@@ -222,69 +277,140 @@ public class NetworkConfiguration {
   /**
    * propability of a connection between a adversarial node and a regular node to be affected by M
    */
-  public static double Q = 0.0;
+  public double Q = 0.0;
 
   /**
    * probability of a node to be adverserial
    */
-  public static double P = 0.0;
+  public double P = 0.0;
 
   /*
    * delay by which a block gets delayed in ms
    */
-  public static long M = 0;
+  public long M = 0;
 
   /*
    * timeout after which a regular node will send out the next REC message for the same block
    */
-  public static long T = 1200000;
+  public long T = 1200000;
 
-  public static boolean USEMININGPOOLS = false;
+  public boolean USEMININGPOOLS = false;
   /*
    *number and distribution of the biggest Mining pool without the "unkown" Miners
    */
-  public static int PoolCount_A = 22;
-  public static Double[] PoolProportion_A = {23.002, 19.702, 15.072, 8.859, 8.687, 2.418, 1.946, 1.755, 1.207, 1.061, 1.046, 0.997, 0.641, 0.296, 0.146, 0.109, 0.071, 0.041, 0.022, 0.022, 0.004, 0.004};
+  public static final int PoolCount_A = 22;
+  public static final Double[] PoolProportion_A = {23.002, 19.702, 15.072, 8.859, 8.687, 2.418, 1.946, 1.755, 1.207, 1.061, 1.046, 0.997, 0.641, 0.296, 0.146, 0.109, 0.071, 0.041, 0.022, 0.022, 0.004, 0.004};
 
   /*
    *number and distribution of the biggest Mining pool with the "unkown" Miners as one pool
    */
-  public static int PoolCount_B = 23;
-  public static Double[] PoolProportion_B = {23.002, 19.702, 15.072, 12.890, 8.859, 8.687, 2.418, 1.946, 1.755, 1.207, 1.061, 1.046, 0.997, 0.641, 0.296, 0.146, 0.109, 0.071, 0.041, 0.022, 0.022, 0.004, 0.004};
-  public static long NetworkMiningPower = 10000000;
+  public static final int PoolCount_B = 23;
+  public static final Double[] PoolProportion_B = {23.002, 19.702, 15.072, 12.890, 8.859, 8.687, 2.418, 1.946, 1.755, 1.207, 1.061, 1.046, 0.997, 0.641, 0.296, 0.146, 0.109, 0.071, 0.041, 0.022, 0.022, 0.004, 0.004};
+  public long NetworkMiningPower = 10000000;
+
+  public int PoolCount;
+  public Double[] PoolProportion;
 
-  public static int PoolCount;
-  public static Double[] PoolProportion;
+  /**
+   * Gets the locations loaded from a data file.
+   *
+   * @return the location model or null if the compiled regions are used
+   */
+  public LocationModel getLocationModel() {
+    return this.locationModel;
+  }
+
+  /**
+   * Replaces the compiled regions by the locations of a data file.
+   *
+   * @param locationModel the location model or null to use the compiled regions
+   */
+  public void setLocationModel(LocationModel locationModel) {
+    this.locationModel = locationModel;
+  }
+
+  /**
+   * Gets the names of the regions nodes can exist in.
+   *
+   * @return the region names
+   */
+  public List<String> getRegionList() {
+    return this.locationModel == null ? REGION_LIST : this.locationModel.getNames();
+  }
+
+  /**
+   * Gets the share of the nodes in every region.
+   *
+   * @return the region distribution
+   */
+  public double[] getRegionDistribution() {
+    return this.locationModel == null ? REGION_DISTRIBUTION
+        : this.locationModel.getDistribution();
+  }
+
+  /**
+   * Gets the mean latency between two regions.
+   *
+   * @param from the sending region
+   * @param to   the receiving region
+   * @return the mean latency in milliseconds
+   */
+  public long getMeanLatency(int from, int to) {
+    return this.locationModel == null ? LATENCY[from][to]
+        : this.locationModel.getLatency(from, to);
+  }
+
+  /**
+   * Gets the upload bandwidth of a region.
+   *
+   * @param region the region
+   * @return the upload bandwidth
+   */
+  public long getUploadBandwidth(int region) {
+    return this.locationModel == null ? UPLOAD_BANDWIDTH[region]
+        : this.locationModel.getUploadBandwidth(region);
+  }
+
+  /**
+   * Gets the download bandwidth of a region.
+   *
+   * @param region the region
+   * @return the download bandwidth
+   */
+  public long getDownloadBandwidth(int region) {
+    return this.locationModel == null ? DOWNLOAD_BANDWIDTH[region]
+        : this.locationModel.getDownloadBandwidth(region);
+  }
 
-  public static boolean getUSEMINGPOOLS() {
+  public boolean getUSEMINGPOOLS() {
     return USEMININGPOOLS;
   }
 
-  public static void setUSEMININGPOOLS(boolean bool) {
+  public void setUSEMININGPOOLS(boolean bool) {
     USEMININGPOOLS = bool;
   }
 
-  public static int getPoolCount() {
+  public int getPoolCount() {
     return PoolCount;
   }
 
-  public static void setPoolCount(int count) {
+  public void setPoolCount(int count) {
     PoolCount = count;
   }
 
-  public static Double[] getPoolProportion() {
+  public Double[] getPoolProportion() {
     return PoolProportion;
   }
 
-  public static void setPoolProportions(Double[] pools) {
+  public void setPoolProportions(Double[] pools) {
     PoolProportion = pools;
   }
 
-  public static long getNetworkMiningPower() {
+  public long getNetworkMiningPower() {
     return NetworkMiningPower;
   }
 
-  public static void setNetworkMiningPower(long mining) {
+  public void setNetworkMiningPower(long mining) {
     NetworkMiningPower = mining;
   }
 }
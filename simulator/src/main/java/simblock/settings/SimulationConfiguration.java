@@ -16,36 +16,49 @@
 
 package simblock.settings;
 
+import java.io.Serializable;
+
 /**
- * The type Simulation configuration allows for specific simulation instance configuration.
+ * The type Simulation configuration allows for specific simulation instance configuration. The
+ * static constants are shared by all simulations, the remaining parameters belong to the
+ * {@link simblock.simulator.SimulationContext} of a single simulation.
  */
-public class SimulationConfiguration {
+public class SimulationConfiguration implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   /**
    * The number of nodes participating in the blockchain network.
    */
-  public static int NUM_OF_NODES = 6;
+  public int NUM_OF_NODES = 6;
 
   /**
    * The kind of routing table.
    */
-  public static final String TABLE = "simblock.node.routing.BitcoinCoreTable";
+  public String TABLE = "simblock.node.routing.BitcoinCoreTable";
 
   /**
    * The consensus algorithm to be used.
    */
   public static final String ALGO = "simblock.node.consensus.ProofOfWork";
 
+  /**
+   * The Future Event List used by the timer. HeapFutureEventList is the reference
+   * implementation, LadderFutureEventList offers amortized O(1) enqueue and dequeue for large
+   * networks. Inv, rec, block, compact block and transaction messages are not stored in it, they
+   * are kept as packed records in a heap of their own.
+   */
+  public String FUTURE_EVENT_LIST = "simblock.simulator.fel.HeapFutureEventList";
+
   /**
    * The propagation mecanism used.
    */
-  public static String Propagation = "";
+  public String Propagation = "";
 
   /**
    * The expected value of block generation interval. The difficulty of mining is automatically
    * adjusted by this value and the sum of mining power. (unit: millisecond)
    */
-  public static long INTERVAL = 1000 * 60 * 10;
+  public long INTERVAL = 1000 * 60 * 10;
 
   /**
    * The average mining power of each node. Mining power corresponds to Hash Rate in Bitcoin, and
@@ -74,18 +87,18 @@ public class SimulationConfiguration {
   public static final double STAKING_REWARD = 0.01;
 
   /**
-   * The block height when a simulation ends.
+   * The block height when a simulation ends by default.
    */
   public static final int END_BLOCK_HEIGHT = 100;
 
   /**
    * Block size. (unit: byte).
    */
-  public static  long BLOCK_SIZE = 535000;
+  public long BLOCK_SIZE = 535000;
   /*
    * default Transaction size
    */
-  public static long TRANSACTION_SIZE = 60000;
+  public long TRANSACTION_SIZE = 60000;
 
   /**
    * The usage rate of compact block relay (CBR) protocol.
@@ -100,7 +113,7 @@ public class SimulationConfiguration {
   /**
    * Compact block size. (unit: byte)
    */
-  public static long COMPACT_BLOCK_SIZE = 18 * 1000; // 18KB
+  public long COMPACT_BLOCK_SIZE = 18 * 1000; // 18KB
 
   /**
    * CBR failure rate for a node that always connect network.
@@ -218,32 +231,127 @@ public class SimulationConfiguration {
   /**
    * flag to signal the usage of transactions in the simulation
    */
-  public static boolean USE_TRANSACTIONS= false;
+  public boolean USE_TRANSACTIONS= false;
 
   /**
    * enables additional log file
-   * (not thread save)
    */
-  public static boolean DEBUG_MODE=false;
+  public boolean DEBUG_MODE=false;
 
   /**
    * use Bitcoin blocksize regardless of simulated blockchain
    */
-  public static boolean FIXED_SIZE=false;
+  public boolean FIXED_SIZE=false;
 
   /**
    *  number of transactions created with the genesis block
    */
-  public static int INITIAL_TRANSACTIONS=30;
+  public int INITIAL_TRANSACTIONS=30;
 
   /**
    * number of high bandwidth connection in CBR propagation
    */
-  public static int CBR_HIGH_BW_CONNECTIONS=3;
+  public int CBR_HIGH_BW_CONNECTIONS=3;
+
+  /**
+   * whether CBR nodes replace their high bandwidth connections during a run like Bitcoin Core,
+   * the neighbor that delivers a new block first replaces the least recently chosen one, instead
+   * of keeping the neighbors chosen when the network is built
+   */
+  public boolean CBR_DYNAMIC_HIGH_BW=false;
+
+  /**
+   * whether nodes upload compact blocks to high bandwidth peers first, then missing transactions
+   * of failed compact blocks and then all other blocks, serving the requesting peers of a class
+   * round robin, instead of in the order of the requests
+   */
+  public boolean UPLOAD_PRIORITIES=false;
+
+  /**
+   * number of block uploads a node runs at the same time, they share its bandwidth
+   */
+  public int MAX_CONCURRENT_UPLOADS=1;
+
+  /**
+   * whether nodes skip the inv of a block to neighbors that announced or sent it to them, like
+   * the known inventory of Bitcoin Core
+   */
+  public boolean INV_FILTER=false;
 
   /**
    * reduce the number of concurrent mining task for the same blog in the task queue
    */
-  public static boolean FILTER_MINING_TASKS=false;
-  public static int MAX_MINING_TASKS = 100;
+  public boolean FILTER_MINING_TASKS=false;
+  public int MAX_MINING_TASKS = 100;
+
+  /**
+   * schedule a single network wide mining task instead of one mining task per miner
+   * (Proof of Work only, makes FILTER_MINING_TASKS unnecessary)
+   */
+  public boolean AGGREGATED_MINING = false;
+
+  /**
+   * number of region partitions simulated in parallel by the ParallelEngine,
+   * 1 runs the sequential engine
+   */
+  public int PARTITIONS = 1;
+
+  /**
+   * record the number and run time of the tasks per task class,
+   * see simblock.simulator.TaskProfiler
+   */
+  public boolean PROFILE_TASKS = false;
+
+  /**
+   * write a checkpoint every CHECKPOINT_TIME ms of simulation time, 0 disables it
+   */
+  public long CHECKPOINT_TIME = 0;
+
+  /**
+   * write a checkpoint every CHECKPOINT_BLOCKS blocks of height, 0 disables it
+   */
+  public int CHECKPOINT_BLOCKS = 0;
+
+  /**
+   * the condition that ends a simulation, see simblock.simulator.stop.StopCondition
+   */
+  public String STOP_CONDITION = "height:" + END_BLOCK_HEIGHT;
+
+  /**
+   * select the outbound peers of every node by shuffling the list of all nodes as earlier
+   * versions did, which takes O(N^2) for a network of N nodes, false draws them from shared
+   * pools in O(N * degree) instead, see simblock.node.routing.PeerSampler
+   */
+  public boolean SHUFFLED_PEER_SELECTION = true;
+
+  /**
+   * number of threads constructing a network, see simblock.simulator.NetworkBuilder, 1
+   * constructs it node by node as earlier versions did
+   */
+  public int CONSTRUCTION_THREADS = 1;
+
+  /**
+   * number of miners from which the lower bound of the block propagation is computed after a
+   * network is constructed, see simblock.simulator.PropagationBound, 0 disables it
+   */
+  public int PROPAGATION_BOUND_SOURCES = 0;
+
+  /**
+   * the session lengths of the churn nodes, which leave the network at the end of a session and
+   * rejoin it after a downtime, as a distribution like exponential:3600000, see
+   * simblock.simulator.ChurnModel, null keeps all nodes online
+   */
+  public String CHURN_SESSION = null;
+
+  /**
+   * the downtimes of the churn nodes, in the same format as CHURN_SESSION
+   */
+  public String CHURN_DOWNTIME = "exponential:600000";
+
+  /**
+   * directory of the constructed networks, a network is loaded from it instead of being
+   * constructed if it holds one of the same parameters, see simblock.simulator.Topology,
+   * null always constructs the network
+   */
+  public String TOPOLOGY_DIRECTORY = null;
 }
\ No newline at end of file
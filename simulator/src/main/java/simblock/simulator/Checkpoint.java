@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The type Checkpoint is a snapshot of a simulation between two tasks. It holds the complete
+ * {@link SimulationContext}, that is the task queue and clock, the nodes with their blocks,
+ * orphans, downloads, mempools and message queues, the propagation statistics and the random
+ * number generator, together with the position of the run in {@link Main}. A simulation
+ * resumed from a checkpoint continues exactly like the original one.
+ *
+ * <p>Checkpoints are written with Java serialization to a GZIP compressed file. The object graph
+ * of a large network is deep, so it is written and read on a thread with a large stack.
+ */
+public class Checkpoint implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The stack size of the thread that writes and reads checkpoints.
+   */
+  private static final long STACK_SIZE = 1L << 30;
+
+  private final SimulationContext context;
+
+  /**
+   * The positional arguments of the run.
+   */
+  private final String[] args;
+
+  /**
+   * The network size of the run.
+   */
+  private final int numOfNodes;
+
+  /**
+   * Instantiates a new Checkpoint.
+   *
+   * @param context    the simulation
+   * @param args       the positional arguments of the run
+   * @param numOfNodes the network size of the run
+   */
+  public Checkpoint(SimulationContext context, String[] args, int numOfNodes) {
+    this.context = context;
+    this.args = args.clone();
+    this.numOfNodes = numOfNodes;
+  }
+
+  /**
+   * Gets the simulation.
+   *
+   * @return the simulation context
+   */
+  public SimulationContext getContext() {
+    return this.context;
+  }
+
+  /**
+   * Gets the positional arguments of the run.
+   *
+   * @return the arguments
+   */
+  public String[] getArgs() {
+    return this.args.clone();
+  }
+
+  /**
+   * Gets the network size of the run.
+   *
+   * @return the number of nodes
+   */
+  public int getNumOfNodes() {
+    return this.numOfNodes;
+  }
+
+  /**
+   * Writes the checkpoint. The file is replaced only once the checkpoint is complete, so a
+   * crash while writing keeps the previous checkpoint.
+   *
+   * @param file the file
+   * @throws IOException if the checkpoint cannot be written
+   */
+  public void write(File file) throws IOException {
+    File partial = new File(file.getPath() + ".partial");
+    runOnLargeStack(() -> {
+      try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+          new GZIPOutputStream(new FileOutputStream(partial))))) {
+        out.writeObject(this);
+      }
+      return null;
+    });
+    Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a checkpoint.
+   *
+   * @param file the file
+   * @return the checkpoint
+   * @throws IOException if the file cannot be read or is no checkpoint
+   */
+  public static Checkpoint read(File file) throws IOException {
+    return runOnLargeStack(() -> {
+      try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+          new GZIPInputStream(new FileInputStream(file))))) {
+        return (Checkpoint) in.readObject();
+      } catch (ClassNotFoundException | ClassCastException e) {
+        throw new IOException(file + " is no checkpoint", e);
+      }
+    });
+  }
+
+  /**
+   * An action that may fail with an IOException.
+   */
+  private interface IoAction<T> {
+    T run() throws IOException;
+  }
+
+  private static <T> T runOnLargeStack(IoAction<T> action) throws IOException {
+    AtomicReference<T> result = new AtomicReference<>();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread = new Thread(null, () -> {
+      try {
+        result.set(action.run());
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    }, "checkpoint", STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing a checkpoint", e);
+    }
+    if (failure.get() instanceof IOException) {
+      throw (IOException) failure.get();
+    } else if (failure.get() instanceof RuntimeException) {
+      throw (RuntimeException) failure.get();
+    } else if (failure.get() != null) {
+      throw new IOException("Checkpoint failed", failure.get());
+    }
+    return result.get();
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.simulator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import simblock.node.AdversarialNode;
+import simblock.node.Node;
+import simblock.node.propagation.Cbr;
+import simblock.node.routing.AbstractRoutingTable;
+import simblock.settings.SimulationConfiguration;
+import simblock.task.ChurnTask;
+
+/**
+ * The type Churn model lets the churn nodes, see {@link Node#isChurnNode}, leave and rejoin the
+ * network during a run. Every churn node alternates between sessions online and downtimes
+ * offline whose lengths are drawn from the distributions of
+ * {@link SimulationConfiguration#CHURN_SESSION} and {@link SimulationConfiguration#CHURN_DOWNTIME}.
+ *
+ * <p>A departing node closes all its connections, cancels its minting task and drops its queued
+ * messages, see {@link Node#goOffline()}. The nodes that lose an outbound connection replace it
+ * right away by drawing new peers through their routing table, and a rejoining node connects to
+ * new outbound peers the same way, so the topology is repaired one connection at a time instead
+ * of being rebuilt. The nodes stay in the list of simulated nodes while they are offline, so
+ * node ids keep resolving to nodes.
+ */
+public class ChurnModel implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the churn belongs to.
+   */
+  private final SimulationContext context;
+
+  /**
+   * The distributions of the session lengths and downtimes, null while churn is disabled.
+   */
+  private Distribution sessions = null;
+  private Distribution downtimes = null;
+
+  /**
+   * Whether miners connect to other miners first, as when the network was constructed.
+   */
+  private boolean connectToMiners = false;
+
+  /**
+   * The number of departures, of rejoins, of closed and of opened connections and of messages
+   * dropped because their sender or receiver was offline since the last reset.
+   */
+  private long departures = 0;
+  private long joins = 0;
+  private long closedLinks = 0;
+  private long openedLinks = 0;
+  private long droppedMessages = 0;
+
+  /**
+   * Instantiates a new Churn model.
+   *
+   * @param context the simulation the churn belongs to
+   */
+  public ChurnModel(SimulationContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Disables the churn and resets the counters for another simulation.
+   */
+  public void reset() {
+    this.sessions = null;
+    this.downtimes = null;
+    this.departures = 0;
+    this.joins = 0;
+    this.closedLinks = 0;
+    this.openedLinks = 0;
+    this.droppedMessages = 0;
+  }
+
+  /**
+   * Schedules the end of the first session of every churn node once the network is constructed,
+   * if churn is enabled.
+   *
+   * @param connectToMiners whether miners connect to other miners first
+   */
+  public void start(boolean connectToMiners) {
+    SimulationConfiguration config = this.context.getConfig();
+    if (config.CHURN_SESSION == null) {
+      return;
+    }
+    this.sessions = parseDistribution(config.CHURN_SESSION);
+    this.downtimes = parseDistribution(config.CHURN_DOWNTIME);
+    this.connectToMiners = connectToMiners;
+    for (Node node : this.context.getSimulator().getSimulatedNodes()) {
+      if (node.isChurnNode) {
+        schedule(node, this.sessions);
+      }
+    }
+  }
+
+  /**
+   * Whether the churn nodes leave and rejoin the network.
+   *
+   * @return true if churn is enabled
+   */
+  public boolean isEnabled() {
+    return this.sessions != null;
+  }
+
+  /**
+   * Takes a node offline, closes its connections and lets its former outbound neighbors stay
+   * as they are while the nodes that connected to it replace the lost connection.
+   *
+   * @param node the departing node
+   */
+  public void leave(Node node) {
+    AbstractRoutingTable table = node.getRoutingTable();
+    List<Node> outbound = new ArrayList<>(table.getOutboundNeighbors());
+    List<Node> inbound = new ArrayList<>(table.getInboundNeighbors());
+    node.goOffline();
+    this.departures++;
+    for (Node peer : outbound) {
+      if (node.removeNeighbor(peer)) {
+        this.closedLinks++;
+      }
+      neighborsChanged(peer);
+    }
+    for (Node peer : inbound) {
+      if (peer.removeNeighbor(node)) {
+        this.closedLinks++;
+      }
+    }
+    // Repair once all connections are closed, so no peer draws the departing node again
+    for (Node peer : inbound) {
+      connect(peer);
+    }
+    schedule(node, this.downtimes);
+  }
+
+  /**
+   * Brings a node back online and connects it to new outbound peers. Its blocks are kept, it
+   * catches up with the next block it receives.
+   *
+   * @param node the rejoining node
+   */
+  public void join(Node node) {
+    node.goOnline();
+    this.joins++;
+    connect(node);
+    if (node.getPropagationProtocol() instanceof Cbr) {
+      ((Cbr) node.getPropagationProtocol()).chooseHighBandwidthModeConenctions();
+    }
+    schedule(node, this.sessions);
+  }
+
+  /**
+   * Fills the free outbound slots of a node through its routing table, which only draws new
+   * peers until the number of connections is reached, and notifies the new neighbors.
+   *
+   * @param node the node
+   */
+  private void connect(Node node) {
+    List<Node> outbound = node.getRoutingTable().getOutboundNeighbors();
+    int before = outbound.size();
+    node.getRoutingTable().initTable(this.connectToMiners);
+    List<Node> after = node.getRoutingTable().getOutboundNeighbors();
+    for (int i = before; i < after.size(); i++) {
+      this.openedLinks++;
+      neighborsChanged(after.get(i));
+    }
+    neighborsChanged(node);
+  }
+
+  /**
+   * Lets a node update the state it keeps about its neighbors and freezes its routing table
+   * again, see {@link AbstractRoutingTable#freeze()}.
+   *
+   * @param node the node whose neighbors changed
+   */
+  private void neighborsChanged(Node node) {
+    node.getRoutingTable().freeze();
+    node.getPropagationProtocol().neighborsChanged();
+    if (node.IsAdversarial()) {
+      ((AdversarialNode) node).calculateDelayedLinks();
+    }
+  }
+
+  /**
+   * Schedules the next departure or rejoin of a node.
+   *
+   * @param node         the node
+   * @param distribution the distribution of the time until then
+   */
+  private void schedule(Node node, Distribution distribution) {
+    long interval = distribution.draw(this.context.getRandom());
+    node.getContext().getTimer().putTask(new ChurnTask(node, interval));
+  }
+
+  /**
+   * Counts a message that is discarded because its sender or receiver is offline.
+   */
+  public void dropMessage() {
+    this.droppedMessages++;
+  }
+
+  /**
+   * Gets the number of departures since the last reset.
+   *
+   * @return the number of departures
+   */
+  public long getDepartures() {
+    return this.departures;
+  }
+
+  /**
+   * Gets the number of rejoins since the last reset.
+   *
+   * @return the number of rejoins
+   */
+  public long getJoins() {
+    return this.joins;
+  }
+
+  /**
+   * Gets the number of connections closed by departures since the last reset.
+   *
+   * @return the number of closed connections
+   */
+  public long getClosedLinks() {
+    return this.closedLinks;
+  }
+
+  /**
+   * Gets the number of connections opened to repair the topology since the last reset.
+   *
+   * @return the number of opened connections
+   */
+  public long getOpenedLinks() {
+    return this.openedLinks;
+  }
+
+  /**
+   * Gets the number of messages dropped since the last reset.
+   *
+   * @return the number of dropped messages
+   */
+  public long getDroppedMessages() {
+    return this.droppedMessages;
+  }
+
+  /**
+   * Parses the distribution of a session length or downtime. A distribution is one of
+   * <ul>
+   *   <li><code>fixed:t</code>, always t milliseconds,</li>
+   *   <li><code>exponential:t</code>, exponential with a mean of t milliseconds,</li>
+   *   <li><code>pareto:a:t</code>, Pareto of shape a &gt; 1 with a mean of t milliseconds,</li>
+   *   <li><code>lognormal:s:t</code>, log-normal of log standard deviation s with a mean of t
+   *   milliseconds.</li>
+   * </ul>
+   *
+   * @param spec the distribution
+   * @return the distribution
+   * @throws IllegalArgumentException if the distribution is invalid
+   */
+  public static Distribution parseDistribution(String spec) {
+    String[] parts = spec.split(":");
+    try {
+      switch (parts[0]) {
+        case "fixed":
+          if (parts.length == 2) {
+            return new Distribution(Distribution.FIXED, 0, parseMean(parts[1]));
+          }
+          break;
+        case "exponential":
+          if (parts.length == 2) {
+            return new Distribution(Distribution.EXPONENTIAL, 0, parseMean(parts[1]));
+          }
+          break;
+        case "pareto":
+          if (parts.length == 3 && Double.parseDouble(parts[1]) > 1) {
+            return new Distribution(Distribution.PARETO, Double.parseDouble(parts[1]),
+                parseMean(parts[2]));
+          }
+          break;
+        case "lognormal":
+          if (parts.length == 3 && Double.parseDouble(parts[1]) >= 0) {
+            return new Distribution(Distribution.LOGNORMAL, Double.parseDouble(parts[1]),
+                parseMean(parts[2]));
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown distribution " + spec);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number in " + spec);
+    }
+    throw new IllegalArgumentException("Invalid parameters of " + spec);
+  }
+
+  /**
+   * Parses the mean of a distribution.
+   *
+   * @param value the mean in milliseconds
+   * @return the mean
+   */
+  private static double parseMean(String value) {
+    double mean = Double.parseDouble(value);
+    if (!(mean > 0)) {
+      throw new IllegalArgumentException("The mean has to be positive but is " + value);
+    }
+    return mean;
+  }
+
+  /**
+   * The distribution of a session length or downtime, see {@link #parseDistribution(String)}.
+   */
+  public static final class Distribution implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int FIXED = 0;
+    private static final int EXPONENTIAL = 1;
+    private static final int PARETO = 2;
+    private static final int LOGNORMAL = 3;
+
+    private final int kind;
+    private final double shape;
+    private final double mean;
+
+    private Distribution(int kind, double shape, double mean) {
+      this.kind = kind;
+      this.shape = shape;
+      this.mean = mean;
+    }
+
+    /**
+     * Draws a time.
+     *
+     * @param random the random number generator
+     * @return the time in milliseconds, at least 1
+     */
+    public long draw(Random random) {
+      double value;
+      switch (this.kind) {
+        case EXPONENTIAL:
+          value = -this.mean * Math.log(1 - random.nextDouble());
+          break;
+        case PARETO:
+          double scale = this.mean * (this.shape - 1) / this.shape;
+          value = scale / Math.pow(1 - random.nextDouble(), 1 / this.shape);
+          break;
+        case LOGNORMAL:
+          double mu = Math.log(this.mean) - this.shape * this.shape / 2;
+          value = Math.exp(mu + this.shape * random.nextGaussian());
+          break;
+        default:
+          value = this.mean;
+      }
+      return Math.max(1, (long) value);
+    }
+  }
+}
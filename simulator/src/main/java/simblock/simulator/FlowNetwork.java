@@ -0,0 +1,352 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import simblock.node.Node;
+import simblock.settings.NetworkConfiguration;
+import simblock.task.AbstractMessageTask;
+import simblock.task.Task;
+
+/**
+ * The type Flow network is a fluid-flow model of the bandwidth of the nodes. Every transmission
+ * is a flow from the uplink of the sender to the downlink of the receiver. The flows sharing a
+ * link get max-min fair rates: no flow can get a higher rate without lowering the rate of a flow
+ * that does not have a higher one.
+ *
+ * <p>The rates are computed incrementally. When a flow starts or ends, only the flows connected
+ * to it through shared links are recomputed, and only the flows whose rate changes get their
+ * completion rescheduled. When a flow ends its message is scheduled with the latency of the
+ * message on top, see {@link NetworkConfiguration#BANDWIDTH_SHARING}.
+ */
+public class FlowNetwork implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the flows belong to.
+   */
+  private final SimulationContext context;
+
+  /**
+   * The flows of the uplinks and the downlinks of the nodes.
+   */
+  private final Map<Node, Link> uplinks = new HashMap<>();
+  private final Map<Node, Link> downlinks = new HashMap<>();
+
+  /**
+   * The number of started flows and of rescheduled completions since the last reset.
+   */
+  private long flows = 0;
+  private long rescheduledFlows = 0;
+
+  /**
+   * Instantiates a new Flow network.
+   *
+   * @param context the simulation the flows belong to
+   */
+  public FlowNetwork(SimulationContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Removes all flows for another simulation.
+   */
+  public void reset() {
+    this.uplinks.clear();
+    this.downlinks.clear();
+    this.flows = 0;
+    this.rescheduledFlows = 0;
+  }
+
+  /**
+   * Starts the transmission of a message. The message is scheduled when the transmission ends,
+   * its interval is the time from the end of the transmission to the reception.
+   *
+   * @param from    the sending node
+   * @param to      the receiving node
+   * @param size    the size of the transmission in bytes
+   * @param message the message to schedule at the end of the transmission
+   */
+  public void startFlow(Node from, Node to, long size, AbstractMessageTask message) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
+    Link uplink = this.uplinks.computeIfAbsent(
+        from, node -> new Link(networkConfig.getUploadBandwidth(node.getRegion()) / 1000));
+    Link downlink = this.downlinks.computeIfAbsent(
+        to, node -> new Link(networkConfig.getDownloadBandwidth(node.getRegion()) / 1000));
+    Flow flow = new Flow(uplink, downlink, size, message);
+    flow.lastUpdate = this.context.getTimer().getCurrentTime();
+    uplink.flows.add(flow);
+    downlink.flows.add(flow);
+    this.flows++;
+    allocate(uplink, downlink);
+  }
+
+  /**
+   * Ends a flow and schedules its message.
+   *
+   * @param flow the flow
+   */
+  private void endFlow(Flow flow) {
+    flow.uplink.flows.remove(flow);
+    flow.downlink.flows.remove(flow);
+    allocate(flow.uplink, flow.downlink);
+    this.context.getTimer().putTask(flow.message);
+  }
+
+  /**
+   * Recomputes the max-min fair rates of the flows connected to two links by progressive
+   * filling: the link with the lowest fair share fixes the rate of its flows, their rates are
+   * subtracted from the other links, until every flow has a rate. Fixing flows never lowers the
+   * share of another link, so the links are kept in a queue by share whose outdated entries are
+   * skipped.
+   *
+   * @param first  a link whose flows changed
+   * @param second the other link whose flows changed
+   */
+  private void allocate(Link first, Link second) {
+    long now = this.context.getTimer().getCurrentTime();
+    List<Link> links = new ArrayList<>();
+    List<Flow> component = new ArrayList<>();
+    collect(first, links, component);
+    collect(second, links, component);
+    PriorityQueue<Share> shares = new PriorityQueue<>();
+    for (Link link : links) {
+      link.visited = false;
+      link.remaining = link.capacity;
+      link.unfixed = link.flows.size();
+      link.version = 0;
+      if (link.unfixed > 0) {
+        shares.add(new Share(link));
+      }
+    }
+    for (Flow flow : component) {
+      flow.progress(now);
+      flow.fixed = false;
+    }
+    while (!shares.isEmpty()) {
+      Share bottleneck = shares.poll();
+      Link link = bottleneck.link;
+      if (bottleneck.version != link.version || link.unfixed == 0) {
+        continue;
+      }
+      double share = bottleneck.value;
+      for (Flow flow : link.flows) {
+        if (!flow.fixed) {
+          flow.fixed = true;
+          flow.rate = share;
+          Link other = flow.uplink == link ? flow.downlink : flow.uplink;
+          other.remaining -= share;
+          other.unfixed--;
+          other.version++;
+          if (other.unfixed > 0) {
+            shares.add(new Share(other));
+          }
+        }
+      }
+      link.unfixed = 0;
+    }
+    for (Flow flow : component) {
+      schedule(flow, now);
+    }
+  }
+
+  /**
+   * Collects the links and flows connected to a link.
+   *
+   * @param start     the link
+   * @param links     the connected links
+   * @param component the connected flows
+   */
+  private static void collect(Link start, List<Link> links, List<Flow> component) {
+    if (start.visited) {
+      return;
+    }
+    ArrayDeque<Link> pending = new ArrayDeque<>();
+    start.visited = true;
+    pending.add(start);
+    while (!pending.isEmpty()) {
+      Link link = pending.poll();
+      links.add(link);
+      for (Flow flow : link.flows) {
+        Link other = flow.uplink == link ? flow.downlink : flow.uplink;
+        if (!other.visited) {
+          other.visited = true;
+          pending.add(other);
+        }
+        // Every flow is seen from both of its links, collect it from its uplink only
+        if (flow.uplink == link) {
+          component.add(flow);
+        }
+      }
+    }
+  }
+
+  /**
+   * Schedules the end of a flow at its current rate, if it has changed.
+   *
+   * @param flow the flow
+   * @param now  the current time
+   */
+  private void schedule(Flow flow, long now) {
+    long end = flow.rate > 0 ? now + (long) Math.ceil(flow.remaining / flow.rate) : Long.MAX_VALUE;
+    if (end == flow.end) {
+      return;
+    }
+    Timer timer = this.context.getTimer();
+    if (flow.endTask != null) {
+      timer.removeTask(flow.endTask);
+      this.rescheduledFlows++;
+    }
+    flow.end = end;
+    flow.endTask = end == Long.MAX_VALUE ? null : new FlowEndTask(this, flow);
+    if (flow.endTask != null) {
+      timer.putTaskAbsoluteTime(flow.endTask, end);
+    }
+  }
+
+  /**
+   * Gets the number of flows started since the last reset.
+   *
+   * @return the number of flows
+   */
+  public long getFlows() {
+    return this.flows;
+  }
+
+  /**
+   * Gets the number of flow completions rescheduled since the last reset.
+   *
+   * @return the number of rescheduled completions
+   */
+  public long getRescheduledFlows() {
+    return this.rescheduledFlows;
+  }
+
+  /**
+   * The uplink or downlink of a node.
+   */
+  private static final class Link implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The bandwidth in bytes per millisecond.
+     */
+    private final double capacity;
+    private final List<Flow> flows = new ArrayList<>();
+
+    /**
+     * The state of the link during an allocation.
+     */
+    private double remaining;
+    private int unfixed;
+    private int version;
+    private boolean visited = false;
+
+    private Link(double capacity) {
+      this.capacity = capacity;
+    }
+  }
+
+  /**
+   * The fair share of a link at some point of an allocation.
+   */
+  private static final class Share implements Comparable<Share> {
+    private final Link link;
+    private final double value;
+    private final int version;
+
+    private Share(Link link) {
+      this.link = link;
+      this.value = Math.max(link.remaining, 0) / link.unfixed;
+      this.version = link.version;
+    }
+
+    @Override
+    public int compareTo(Share other) {
+      return Double.compare(this.value, other.value);
+    }
+  }
+
+  /**
+   * A transmission from an uplink to a downlink.
+   */
+  private static final class Flow implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Link uplink;
+    private final Link downlink;
+    private final AbstractMessageTask message;
+
+    /**
+     * The bytes left to transmit at the time of the last update.
+     */
+    private double remaining;
+    private double rate = 0;
+    private long lastUpdate;
+    private long end = Long.MAX_VALUE;
+    private FlowEndTask endTask = null;
+    private boolean fixed;
+
+    private Flow(Link uplink, Link downlink, long size, AbstractMessageTask message) {
+      this.uplink = uplink;
+      this.downlink = downlink;
+      this.remaining = size;
+      this.message = message;
+    }
+
+    /**
+     * Subtracts the bytes transmitted since the last update.
+     *
+     * @param now the current time
+     */
+    private void progress(long now) {
+      this.remaining = Math.max(0, this.remaining - this.rate * (now - this.lastUpdate));
+      this.lastUpdate = now;
+    }
+  }
+
+  /**
+   * The task run when a flow has transmitted all its bytes.
+   */
+  private static final class FlowEndTask implements Task {
+    private static final long serialVersionUID = 1L;
+
+    private final FlowNetwork network;
+    private final Flow flow;
+
+    private FlowEndTask(FlowNetwork network, Flow flow) {
+      this.network = network;
+      this.flow = flow;
+    }
+
+    @Override
+    public long getInterval() {
+      return 0;
+    }
+
+    @Override
+    public void run() {
+      this.network.endFlow(this.flow);
+    }
+  }
+}
@@ -17,22 +17,11 @@
 package simblock.simulator;
 
 import static simblock.settings.SimulationConfiguration.*;
-import static simblock.settings.NetworkConfiguration.*;
+import static simblock.settings.NetworkConfiguration.PoolCount_A;
+import static simblock.settings.NetworkConfiguration.PoolCount_B;
+import static simblock.settings.NetworkConfiguration.PoolProportion_A;
+import static simblock.settings.NetworkConfiguration.PoolProportion_B;
 import static simblock.simulator.Network.getDegreeDistribution;
-import static simblock.simulator.Network.getRegionDistribution;
-import static simblock.simulator.Network.printRegion;
-import static simblock.simulator.Simulator.addNode;
-import static simblock.simulator.Simulator.getSimulatedNodes;
-import static simblock.simulator.Simulator.printAllPropagation;
-import static simblock.simulator.Simulator.initPrint;
-import static simblock.simulator.Simulator.setTargetInterval;
-import static simblock.simulator.Simulator.resetNodeList;
-import static simblock.simulator.Simulator.resetPropagationLists;
-import static simblock.simulator.Timer.getCurrentTime;
-import static simblock.simulator.Timer.getTask;
-import static simblock.simulator.Timer.runTask;
-import static simblock.simulator.Timer.TASK_COUNTS;
-import static simblock.simulator.Timer.resetTimer;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -42,41 +31,29 @@ import java.io.PrintWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import simblock.block.Block;
 import simblock.node.AdversarialNode;
 import simblock.node.Node;
 import simblock.node.propagation.Cbr;
-import simblock.task.AbstractMintingTask;
+import simblock.settings.LocationModel;
+import simblock.settings.NetworkConfiguration;
+import simblock.settings.SimulationConfiguration;
+import simblock.simulator.stop.StopCondition;
 
 /**
  * The type Main represents the entry point.
  */
 public class Main {
 
-  /**
-   * The constant to be used as the simulation seed.
-   */
-  public static Random random = new Random(10);
-
-  /**
-   * The initial simulation time.
-   */
-  public static long simulationTime = 0;
-
-  /**
-   * internal variables for experiment 2(zeronodes) and experiment 3(miningpools)
-   */
-  public static int internalSmallMinerNumber = 0;
-  public static boolean internalMinerNodesCreatedFlag = false;
-  public static int internalZeroNodesNumber = 0;
-  public static boolean interalZeroNodesCreatedFlag = false;
-
   /**
    * Path to config file.
    */
@@ -85,7 +62,6 @@ public class Main {
    * Output path.
    */
   public static URI OUT_FILE_URI;
-  public static PrintWriter OUT_STAT_FILE;
 
   static {
     try {
@@ -96,27 +72,6 @@ public class Main {
     }
   }
 
-  /**
-   * The output writer.
-   */
-  public static PrintWriter OUT_JSON_FILE;
-
-  /**
-   * The constant STATIC_JSON_FILE.
-   */
-  public static PrintWriter STATIC_JSON_FILE;
-
-  static {
-    try {
-      OUT_JSON_FILE = new PrintWriter(
-          new BufferedWriter(new FileWriter(new File(OUT_FILE_URI.resolve("./output.json")))));
-      STATIC_JSON_FILE = new PrintWriter(
-          new BufferedWriter(new FileWriter(new File(OUT_FILE_URI.resolve("./static.json")))));
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-  }
-
   private static boolean validOption(String value, String[] options) {
     for (String s : options) {
       if (value.toLowerCase().equals(s))
@@ -140,6 +95,13 @@ public class Main {
   private static final String[] miningDistrs = {"default", "default_z", "zeronodes", "miningpools"};
   private static final String[] cryptos = {"btc", "eth", "doge", "monero", "cardano"};
   private static final String[] matchingProp = {"cbr", "hybrid", "cbr", "monero", "cardano"};
+  /**
+   * The routing table of each crypto, Ethereum clients find their peers by the Kademlia table of
+   * discv5.
+   */
+  private static final String[] matchingTables = {
+      "BitcoinCoreTable", "KademliaTable", "BitcoinCoreTable", "BitcoinCoreTable",
+      "BitcoinCoreTable"};
 
   public static final long[] transactionSizes = {60000, 40, 30, 390, 101};
   public static final long[] blockSizes = {1700000, 1200, 15000, 79900, 31000};
@@ -161,159 +123,463 @@ public class Main {
   public static final long[] ConnectionTimeouts = {600000, 5000, 60000, 0, 20000};
   public static final int[] networksizes ={10,100,1000,10000, 100000};// ,500000};
 
+  private static final String[] futureEventLists = {"heap", "ladder"};
+  private static final String[] futureEventListClasses = {
+      "HeapFutureEventList", "LadderFutureEventList"};
+
+  private static final String[] routingTables = {"bitcoin", "kademlia"};
+  private static final String[] routingTableClasses = {"BitcoinCoreTable", "KademliaTable"};
+
+  /**
+   * The options that can be changed when a run is resumed from a checkpoint.
+   */
+  private static final List<String> resumeOptions = Arrays.asList(
+      "checkpoint-time", "checkpoint-blocks", "adversary-q", "adversary-m");
+
+  /**
+   * Applies an optional argument of the form --name=value to the configuration of a run.
+   *
+   * @param option        the argument
+   * @param config        the configuration of the run
+   * @param networkConfig the network configuration of the run
+   * @return false if the option is unknown or its value is invalid
+   */
+  static boolean applyOption(String option, SimulationConfiguration config,
+      NetworkConfiguration networkConfig) {
+    String[] pair = option.substring(2).split("=", 2);
+    if (pair.length != 2) {
+      System.out.println("Error, expecting --name=value but got " + option);
+      return false;
+    }
+    switch (pair[0]) {
+      case "fel": {
+        int id = optionId(pair[1], futureEventLists);
+        if (id < 0) {
+          return false;
+        }
+        config.FUTURE_EVENT_LIST = "simblock.simulator.fel." + futureEventListClasses[id];
+        return true;
+      }
+      case "routing-table": {
+        int id = optionId(pair[1], routingTables);
+        if (id < 0) {
+          return false;
+        }
+        config.TABLE = "simblock.node.routing." + routingTableClasses[id];
+        return true;
+      }
+      case "aggregated-mining":
+        config.AGGREGATED_MINING = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "dynamic-high-bandwidth":
+        config.CBR_DYNAMIC_HIGH_BW = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "inv-filter":
+        config.INV_FILTER = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "upload-priorities":
+        config.UPLOAD_PRIORITIES = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "max-uploads":
+        try {
+          config.MAX_CONCURRENT_UPLOADS = Math.max(1, Integer.parseInt(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number of uploads " + option);
+          return false;
+        }
+        return true;
+      case "checkpoint-time":
+      case "checkpoint-blocks":
+      case "adversary-q":
+      case "adversary-m":
+        try {
+          if (pair[0].equals("checkpoint-time")) {
+            config.CHECKPOINT_TIME = Math.max(0, Long.parseLong(pair[1]));
+          } else if (pair[0].equals("checkpoint-blocks")) {
+            config.CHECKPOINT_BLOCKS = Math.max(0, Integer.parseInt(pair[1]));
+          } else if (pair[0].equals("adversary-q")) {
+            networkConfig.Q = Double.parseDouble(pair[1]);
+          } else {
+            networkConfig.M = Long.parseLong(pair[1]);
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number " + option);
+          return false;
+        }
+        return true;
+      case "latency-table":
+        try {
+          networkConfig.LATENCY_TABLE_RESOLUTION = Math.max(0, Integer.parseInt(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid resolution " + option);
+          return false;
+        }
+        return true;
+      case "link-latency":
+        networkConfig.LINK_LATENCY = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "link-jitter":
+        try {
+          networkConfig.LINK_JITTER = Math.max(0, Double.parseDouble(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid jitter " + option);
+          return false;
+        }
+        return true;
+      case "locations":
+        try {
+          networkConfig.setLocationModel(LocationModel.load(pair[1]));
+        } catch (IOException | IllegalArgumentException e) {
+          System.out.println("Error, cannot load the locations " + option + ": " + e.getMessage());
+          return false;
+        }
+        return true;
+      case "node-coordinates":
+        networkConfig.NODE_COORDINATES = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "coordinate-spread":
+      case "access-delay":
+        try {
+          double value = Math.max(0, Double.parseDouble(pair[1]));
+          if (pair[0].equals("coordinate-spread")) {
+            networkConfig.COORDINATE_SPREAD = value;
+          } else {
+            networkConfig.ACCESS_DELAY = value;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid delay " + option);
+          return false;
+        }
+        return true;
+      case "shuffled-peer-selection":
+        config.SHUFFLED_PEER_SELECTION = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "construction-threads":
+        try {
+          config.CONSTRUCTION_THREADS = Math.max(1, Integer.parseInt(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number of threads " + option);
+          return false;
+        }
+        return true;
+      case "propagation-bound":
+        try {
+          config.PROPAGATION_BOUND_SOURCES = Math.max(0, Integer.parseInt(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number of sources " + option);
+          return false;
+        }
+        return true;
+      case "churn-session":
+      case "churn-downtime":
+        try {
+          ChurnModel.parseDistribution(pair[1]);
+        } catch (IllegalArgumentException e) {
+          System.out.println("Error, invalid distribution " + option + ": " + e.getMessage());
+          return false;
+        }
+        if (pair[0].equals("churn-session")) {
+          config.CHURN_SESSION = pair[1];
+        } else {
+          config.CHURN_DOWNTIME = pair[1];
+        }
+        return true;
+      case "topology":
+        config.TOPOLOGY_DIRECTORY = pair[1];
+        return true;
+      case "bandwidth-sharing":
+        networkConfig.BANDWIDTH_SHARING = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "stop":
+        try {
+          StopCondition.parse(pair[1]);
+        } catch (IllegalArgumentException e) {
+          System.out.println("Error, invalid stop condition " + option + ": " + e.getMessage());
+          return false;
+        }
+        config.STOP_CONDITION = pair[1];
+        return true;
+      case "profile":
+        config.PROFILE_TASKS = Boolean.parseBoolean(pair[1]);
+        return true;
+      case "partitions":
+        try {
+          config.PARTITIONS = Math.max(1, Integer.parseInt(pair[1]));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number of partitions " + option);
+          return false;
+        }
+        return true;
+      default:
+        System.out.println("Error, unknown option " + option);
+        return false;
+    }
+  }
+
+  /**
+   * Parses the run numbers, either a single number, a comma separated list or a range like 1-8.
+   *
+   * @param value the argument
+   * @return the run numbers or null if the argument is invalid
+   */
+  private static List<Integer> parseRunNumbers(String value) {
+    List<Integer> runNumbers = new ArrayList<>();
+    try {
+      for (String part : value.split(",")) {
+        int dash = part.indexOf('-', 1);
+        if (dash > 0) {
+          int first = Integer.parseInt(part.substring(0, dash));
+          int last = Integer.parseInt(part.substring(dash + 1));
+          for (int runNumber = first; runNumber <= last; runNumber++) {
+            runNumbers.add(runNumber);
+          }
+        } else {
+          runNumbers.add(Integer.parseInt(part));
+        }
+      }
+    } catch (NumberFormatException e) {
+      System.out.println("Error, invalid run number " + value);
+      return null;
+    }
+    return runNumbers;
+  }
+
+  /**
+   * Opens a writer in the output directory.
+   *
+   * @param name the file name
+   * @return the writer or null if the file cannot be created
+   */
+  private static PrintWriter openOutputFile(String name) {
+    return openOutputFile(name, false);
+  }
+
   /**
-   * The entry point.
+   * Opens a writer of a file in the output directory.
+   *
+   * @param name   the file name
+   * @param append whether to append to an existing file
+   * @return the writer or null if the file cannot be opened
+   */
+  private static PrintWriter openOutputFile(String name, boolean append) {
+    try {
+      return new PrintWriter(new BufferedWriter(
+          new FileWriter(new File(OUT_FILE_URI.resolve("./" + name)), append)));
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * The entry point. Every run number is an independent simulation with its own
+   * {@link SimulationContext}, several runs are executed in parallel with --threads=n.
    *
    * @param args the input arguments
    */
   public static void main(String[] args) {
+    // Split optional --name=value arguments from the positional ones
+    ArrayList<String> positional = new ArrayList<>();
+    ArrayList<String> options = new ArrayList<>();
+    int threads = 1;
+    String resume = null;
+    for (String arg : args) {
+      if (arg.startsWith("--threads=")) {
+        try {
+          threads = Math.max(1, Integer.parseInt(arg.substring("--threads=".length())));
+        } catch (NumberFormatException e) {
+          System.out.println("Error, invalid number of threads " + arg);
+          return;
+        }
+      } else if (arg.startsWith("--resume=")) {
+        resume = arg.substring("--resume=".length());
+      } else if (arg.startsWith("--")) {
+        if (!applyOption(arg, new SimulationConfiguration(), new NetworkConfiguration())) {
+          return;
+        }
+        options.add(arg);
+      } else {
+        positional.add(arg);
+      }
+    }
+    args = positional.toArray(new String[0]);
+    if (resume != null) {
+      if (args.length > 0) {
+        System.out.println("Error, a resumed run takes its arguments from the checkpoint");
+        return;
+      }
+      resumeSimulation(resume, options);
+      return;
+    }
     if (args.length != 7 && args.length != 10) {
       System.out.println("Error, expecting 7 or 10 arguments (version mining_distr [default,zeronodes,miningpools], propagation_mech [adv,hybrid,push,cbr], run_number, useTransactions,filterMiningTasks,(opt) P, (opt) Q, (opt) M)");
       return;
     }
+    if (!(validOption(args[1], miningDistrs) && validOption(args[2], cryptos))) {
+      System.out.println("invalid parameter, expecting 7 or 10 arguments (version mining distr [default,zeronodes,miningpools], propagation mech [adv,hybrid,push,cbr], run number, useTransactions,filterMiningtasks,(opt) P, (opt) Q, (opt) M)");
+      return;
+    }
+    List<Integer> runNumbers = parseRunNumbers(args[3]);
+    if (runNumbers == null || runNumbers.isEmpty()) {
+      return;
+    }
+    if (runNumbers.size() == 1) {
+      runSimulations(args, options, false);
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, runNumbers.size()));
+    for (int runNumber : runNumbers) {
+      String[] runArgs = args.clone();
+      runArgs[3] = String.valueOf(runNumber);
+      pool.execute(() -> {
+        try {
+          runSimulations(runArgs, options, true);
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      });
+    }
+    pool.shutdown();
+    try {
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Runs the simulations of a single run number in its own {@link SimulationContext}.
+   *
+   * @param args        the positional arguments with a single run number
+   * @param options     the optional --name=value arguments
+   * @param concurrent  whether other runs write to the output directory at the same time
+   */
+  private static void runSimulations(String[] args, List<String> options, boolean concurrent) {
+    SimulationConfiguration config = new SimulationConfiguration();
+    NetworkConfiguration networkConfig = new NetworkConfiguration();
+    // Before the options, so --routing-table overrides the table of the crypto
+    config.TABLE = "simblock.node.routing." + matchingTables[optionId(args[2], cryptos)];
+    for (String option : options) {
+      applyOption(option, config, networkConfig);
+    }
     String version = args[0];
     if (version.equals("debug")) {
-      DEBUG_MODE = true;
+      config.DEBUG_MODE = true;
     }
-    if (!DEBUG_MODE){
+    if (!config.DEBUG_MODE){
       System.out.println("Logging is disabled");
-      OUT_JSON_FILE = null;
     }
 
     String miningDistr = args[1];
     String crypto = args[2];
     int id = optionId(crypto, cryptos);
     String propagation = matchingProp[id];
-    BLOCK_SIZE = blockSizes[id];
-    COMPACT_BLOCK_SIZE = CBRblockSizes[id];
-    INTERVAL = blockInterval[id];
-    TRANSACTION_SIZE = transactionSizes[id];
-    T = ConnectionTimeouts[id];
-    Propagation = "simblock.node.propagation." + propagation.substring(0, 1).toUpperCase() + propagation.substring(1).toLowerCase();
+    config.BLOCK_SIZE = blockSizes[id];
+    config.COMPACT_BLOCK_SIZE = CBRblockSizes[id];
+    config.INTERVAL = blockInterval[id];
+    config.TRANSACTION_SIZE = transactionSizes[id];
+    networkConfig.T = ConnectionTimeouts[id];
+    config.Propagation = "simblock.node.propagation." + propagation.substring(0, 1).toUpperCase() + propagation.substring(1).toLowerCase();
     int RUN_NUMBER = Integer.parseInt(args[3]);
-    USE_TRANSACTIONS = Boolean.parseBoolean(args[4]);
-    FILTER_MINING_TASKS = Boolean.parseBoolean(args[5]);
-    FIXED_SIZE = Boolean.parseBoolean(args[6]);
-    if (FIXED_SIZE) {
-      BLOCK_SIZE=blockSizes[0];
-      COMPACT_BLOCK_SIZE = CBRblockSizes[0];
-    }
-    if (!(validOption(miningDistr, miningDistrs) && validOption(crypto, cryptos))) {
-      System.out.println("invalid parameter, expecting 7 or 10 arguments (version mining distr [default,zeronodes,miningpools], propagation mech [adv,hybrid,push,cbr], run number, useTransactions,filterMiningtasks,(opt) P, (opt) Q, (opt) M)");
-      return;
+    config.USE_TRANSACTIONS = Boolean.parseBoolean(args[4]);
+    config.FILTER_MINING_TASKS = Boolean.parseBoolean(args[5]);
+    config.FIXED_SIZE = Boolean.parseBoolean(args[6]);
+    if (config.FIXED_SIZE) {
+      config.BLOCK_SIZE=blockSizes[0];
+      config.COMPACT_BLOCK_SIZE = CBRblockSizes[0];
     }
     if (args.length == 10) {
       // probability of a node to be adverserial
-      P = Double.parseDouble(args[7]);
+      networkConfig.P = Double.parseDouble(args[7]);
       // propability of a connection between a adversarial node and a regular node to be affected by M
-      Q = Double.parseDouble(args[8]);
+      networkConfig.Q = Double.parseDouble(args[8]);
       // delay by which a block gets delayed in ms
-      M = Long.parseLong(args[9]);
+      networkConfig.M = Long.parseLong(args[9]);
+    }
+    if (config.PARTITIONS > 1 && ParallelEngine.checkConfiguration(config, networkConfig) != null) {
+      System.out.println(ParallelEngine.checkConfiguration(config, networkConfig));
+      return;
+    }
+    SimulationContext context = new SimulationContext(config, networkConfig, RUN_NUMBER);
+    // Concurrent runs must not share the files that are not named after the configuration
+    String suffix = concurrent ? "_" + RUN_NUMBER : "";
+    if (config.DEBUG_MODE) {
+      context.setOutJsonFile(openOutputFile("output" + suffix + ".json"));
     }
-    random = new Random(RUN_NUMBER);
+    context.setStaticJsonFile(openOutputFile("static" + suffix + ".json"));
+    Timer timer = context.getTimer();
+    Simulator simulator = context.getSimulator();
+    // internal variables for experiment 2(zeronodes) and experiment 3(miningpools)
+    int internalSmallMinerNumber;
+    int internalZeroNodesNumber;
+    long simulationTime = 0;
     System.out.println("Starting new run with run number: " + RUN_NUMBER);
     final long start = System.currentTimeMillis();
     for (int i = 0; i < 2; i++) {
       for (int sizeIndex = 0; sizeIndex < networksizes.length; sizeIndex++) {
         int n = networksizes[sizeIndex];
-        setTargetInterval(INTERVAL);
-        resetTimer();
+        simulator.setTargetInterval(config.INTERVAL);
+        timer.resetTimer();
+        context.resetStopCondition();
+        context.getFlowNetwork().reset();
+        context.getAggregatedMiningScheduler().reset();
+        context.getChurnModel().reset();
+        // The partitions have to exist before the nodes are constructed
+        ParallelEngine engine = config.PARTITIONS > 1
+            ? new ParallelEngine(context, config.PARTITIONS) : null;
         // Log regions
-        printRegion();
+        context.getNetwork().printRegion();
         // Setup network
         if (miningDistr.equals("zeronodes")) {
-          setUSEMININGPOOLS(false);
-          setPoolCount(0);
+          networkConfig.setUSEMININGPOOLS(false);
+          networkConfig.setPoolCount(0);
           if (i == 0) {
             internalZeroNodesNumber = 5000;
           } else {
             internalZeroNodesNumber = 500000;
           }
           args[1] = "zeronodes-" + internalZeroNodesNumber;
-          constructNetwork(n, internalZeroNodesNumber, false);
+          constructNetwork(context, n, internalZeroNodesNumber, false);
         } else if (miningDistr.equals("default_z")) {
-          setUSEMININGPOOLS(false);
+          networkConfig.setUSEMININGPOOLS(false);
           internalZeroNodesNumber = 10000;
           if (i > 0) {
             continue;
           }
           args[1] = "defaultz-" + internalZeroNodesNumber;
-          constructNetwork(n, internalZeroNodesNumber, false);
+          constructNetwork(context, n, internalZeroNodesNumber, false);
         } else if (miningDistr.equals("miningpools")) {
-          setUSEMININGPOOLS(true);
+          networkConfig.setUSEMININGPOOLS(true);
           if (i == 0) {
-            setPoolCount(PoolCount_B);
-            setPoolProportions(PoolProportion_B);
+            networkConfig.setPoolCount(PoolCount_B);
+            networkConfig.setPoolProportions(PoolProportion_B);
             internalSmallMinerNumber = 0;
           } else {
-            setPoolCount(PoolCount_A);
-            setPoolProportions(PoolProportion_A);
+            networkConfig.setPoolCount(PoolCount_A);
+            networkConfig.setPoolProportions(PoolProportion_A);
             internalSmallMinerNumber = 10000;
           }
-          args[1] = "miningpools-" + (getPoolCount() + internalSmallMinerNumber);
-          constructNetwork(getPoolCount() + internalSmallMinerNumber, n, true);
+          args[1] = "miningpools-" + (networkConfig.getPoolCount() + internalSmallMinerNumber);
+          constructNetwork(context, networkConfig.getPoolCount() + internalSmallMinerNumber, n, true);
         } else {
-          setUSEMININGPOOLS(false);
+          networkConfig.setUSEMININGPOOLS(false);
           if (i > 0) {
             continue;
           }
-          constructNetwork(n, 0, false);
+          constructNetwork(context, n, 0, false);
         }
         String configname = String.join("_", args);
-        try {
-          OUT_STAT_FILE = new PrintWriter(
-              new BufferedWriter(new FileWriter(new File(OUT_FILE_URI.resolve(configname + "_Nodes_" + n + "_propagation.json")))));
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-        initPrint(OUT_STAT_FILE);
-        // Initial block height, we stop at END_BLOCK_HEIGHT
-        int currentBlockHeight = 1;
-        // Iterate over tasks and handle
-        while (getTask() != null) {
-          if (getTask() instanceof AbstractMintingTask) {
-            AbstractMintingTask task = (AbstractMintingTask) getTask();
-            if (task.getParent().getHeight() == currentBlockHeight) {
-              currentBlockHeight++;
-            }
-            if (currentBlockHeight > END_BLOCK_HEIGHT) {
-              break;
-            }
-          }
-          // Execute task
-          runTask();
-        }
-        // Print propagation information about all blocks
-        printAllPropagation(OUT_STAT_FILE);
-
-        System.out.println();
-        Set<Block> blocks = new HashSet<>();
-        // Get the latest block from the first simulated node
-        Block block = getSimulatedNodes().get(0).getBlock();
-        //Update the list of known blocks by adding the parents of the aforementioned block
-        while (block.getParent() != null) {
-          blocks.add(block);
-          block = block.getParent();
+        if (config.PROPAGATION_BOUND_SOURCES > 0) {
+          writePropagationBound(context, configname, n);
         }
-        Set<Block> orphans = new HashSet<>();
-        int averageOrphansSize = 0;
-        // Gather all known orphans
-        for (Node node : getSimulatedNodes()) {
-          orphans.addAll(node.getOrphans());
-          averageOrphansSize += node.getOrphans().size();
-        }
-        averageOrphansSize = averageOrphansSize / getSimulatedNodes().size();
-        // Record orphans to the list of all known blocks
-        blocks.addAll(orphans);
-        ArrayList<Block> blockList = new ArrayList<>(blocks);
+        simulate(context, engine, args, n);
         long end = System.currentTimeMillis();
         simulationTime += end - start;
         // Log simulation time in milliseconds
         System.out.println("Time spent : " + (int)(simulationTime/1000) + "s N=" + networksizes[sizeIndex] + ", conf: " + configname);
-        System.out.println("Simulation time: " + getCurrentTime());
-        System.out.println("Number of tasks: " + TASK_COUNTS);
-        resetPropagationLists();
-        resetNodeList();
+        printStatistics(context, engine, configname, n);
+        simulator.resetPropagationLists();
+        simulator.resetNodeList();
       }
       try {
         String configname = String.join("_", args);
@@ -325,14 +591,230 @@ public class Main {
     }
   }
 
+  /**
+   * Runs the simulation of a network until its stop condition is met and prints the
+   * propagation of all blocks. The sequential engine writes checkpoints as configured in
+   * {@link SimulationConfiguration#CHECKPOINT_TIME} and
+   * {@link SimulationConfiguration#CHECKPOINT_BLOCKS}.
+   *
+   * @param context the simulation
+   * @param engine  the parallel engine or null to run the sequential engine
+   * @param args    the positional arguments of the run
+   * @param n       the network size
+   */
+  private static void simulate(SimulationContext context, ParallelEngine engine, String[] args,
+      int n) {
+    SimulationConfiguration config = context.getConfig();
+    Timer timer = context.getTimer();
+    Simulator simulator = context.getSimulator();
+    String configname = String.join("_", args);
+    PrintWriter OUT_STAT_FILE = openOutputFile(configname + "_Nodes_" + n + "_propagation.json");
+    context.setOutStatFile(OUT_STAT_FILE);
+    simulator.initPrint(OUT_STAT_FILE);
+    if (engine != null) {
+      engine.run();
+    } else {
+      context.getStopCondition().start(context);
+    }
+    File checkpointFile = new File(OUT_FILE_URI.resolve(configname + "_Nodes_" + n + "_checkpoint.bin"));
+    long nextCheckpointTime = nextCheckpoint(timer.getCurrentTime(), config.CHECKPOINT_TIME);
+    long nextCheckpointHeight = nextCheckpoint(context.getMintingHeight(), config.CHECKPOINT_BLOCKS);
+    // Execute tasks until the stop condition stops the timer
+    while (engine == null && timer.runTask()) {
+      if (!timer.isStopped() && (timer.getCurrentTime() >= nextCheckpointTime
+          || context.getMintingHeight() >= nextCheckpointHeight)) {
+        try {
+          new Checkpoint(context, args, n).write(checkpointFile);
+          System.out.println("Checkpoint at simulation time " + timer.getCurrentTime() + ", block height " + context.getMintingHeight());
+        } catch (IOException e) {
+          System.out.println("Error, cannot write checkpoint " + checkpointFile + ": " + e.getMessage());
+        }
+        nextCheckpointTime = nextCheckpoint(timer.getCurrentTime(), config.CHECKPOINT_TIME);
+        nextCheckpointHeight = nextCheckpoint(context.getMintingHeight(), config.CHECKPOINT_BLOCKS);
+      }
+    }
+    // Print propagation information about all blocks
+    simulator.printAllPropagation(OUT_STAT_FILE);
+
+    System.out.println();
+    Set<Block> blocks = new HashSet<>();
+    // Get the latest block from the first simulated node
+    Block block = simulator.getSimulatedNodes().get(0).getBlock();
+    //Update the list of known blocks by adding the parents of the aforementioned block
+    while (block.getParent() != null) {
+      blocks.add(block);
+      block = block.getParent();
+    }
+    Set<Block> orphans = new HashSet<>();
+    int averageOrphansSize = 0;
+    // Gather all known orphans
+    for (Node node : simulator.getSimulatedNodes()) {
+      orphans.addAll(node.getOrphans());
+      averageOrphansSize += node.getOrphans().size();
+    }
+    averageOrphansSize = averageOrphansSize / simulator.getSimulatedNodes().size();
+    // Record orphans to the list of all known blocks
+    blocks.addAll(orphans);
+    ArrayList<Block> blockList = new ArrayList<>(blocks);
+  }
+
+  /**
+   * Writes the lower bound of the block propagation from
+   * {@link SimulationConfiguration#PROPAGATION_BOUND_SOURCES} miners of the constructed network
+   * next to the propagation file.
+   *
+   * @param context    the simulation
+   * @param configname the name of the configuration
+   * @param n          the network size
+   */
+  private static void writePropagationBound(SimulationContext context, String configname,
+      int n) {
+    long begin = System.currentTimeMillis();
+    PropagationBound bound = new PropagationBound(context);
+    int[] sources = bound.drawSources(context.getConfig().PROPAGATION_BOUND_SOURCES, context.getSeed());
+    PrintWriter boundFile = openOutputFile(configname + "_Nodes_" + n + "_bound.json");
+    bound.print(boundFile, sources);
+    boundFile.close();
+    System.out.println("Propagation bound from " + sources.length + " miners computed in "
+        + (System.currentTimeMillis() - begin) + " ms");
+  }
+
+  /**
+   * Gets the next multiple of a checkpoint interval.
+   *
+   * @param current  the current simulation time or block height
+   * @param interval the checkpoint interval, 0 if disabled
+   * @return the next multiple or {@link Long#MAX_VALUE} if disabled
+   */
+  private static long nextCheckpoint(long current, long interval) {
+    return interval > 0 ? (current / interval + 1) * interval : Long.MAX_VALUE;
+  }
+
+  /**
+   * Prints the statistics of the tasks of a simulation.
+   *
+   * @param context    the simulation
+   * @param engine     the parallel engine or null if the sequential engine was used
+   * @param configname the name of the configuration
+   * @param n          the network size
+   */
+  private static void printStatistics(SimulationContext context, ParallelEngine engine,
+      String configname, int n) {
+    Timer timer = context.getTimer();
+    if (engine != null) {
+      System.out.println("Simulation time: " + engine.getCurrentTime());
+      System.out.println("Number of tasks: " + engine.getTaskCounts());
+      System.out.println("Number of cancelled tasks: " + engine.getCancelledTasks()
+          + " (" + engine.getLiveTombstones() + " still queued)");
+      System.out.println("Partitions: " + engine.getPartitionCount() + ", lookahead: "
+          + engine.getLookahead() + " ms, time windows: " + engine.getWindows());
+    } else {
+      System.out.println("Simulation time: " + timer.getCurrentTime());
+      System.out.println("Number of tasks: " + timer.getTaskCounts());
+      System.out.println("Number of cancelled tasks: " + timer.getCancelledTasks()
+          + " (" + timer.getLiveTombstones() + " still queued)");
+    }
+    if (context.getNetworkConfig().BANDWIDTH_SHARING) {
+      FlowNetwork flowNetwork = context.getFlowNetwork();
+      System.out.println("Number of flows: " + flowNetwork.getFlows() + " ("
+          + flowNetwork.getRescheduledFlows() + " completions rescheduled)");
+    }
+    ChurnModel churn = context.getChurnModel();
+    if (churn.isEnabled()) {
+      System.out.println("Churn: " + churn.getDepartures() + " departures, " + churn.getJoins()
+          + " rejoins, " + churn.getClosedLinks() + " connections closed, "
+          + churn.getOpenedLinks() + " opened, " + churn.getDroppedMessages()
+          + " messages dropped");
+    }
+    if (context.getConfig().INV_FILTER) {
+      long suppressed = 0;
+      for (Node node : context.getSimulator().getSimulatedNodes()) {
+        suppressed += node.getSuppressedInvs();
+      }
+      System.out.println("Number of suppressed invs: " + suppressed);
+    }
+    if (context.getConfig().FILTER_MINING_TASKS) {
+      System.out.println("Number of filtered mining tasks: " + (engine != null
+          ? engine.getFilteredMiningTasks() : timer.getMiningTaskFilter().getFiltered()));
+    }
+    TaskProfiler profiler = engine != null ? engine.getProfiler() : timer.getProfiler();
+    if (profiler != null) {
+      profiler.print(System.out);
+      PrintWriter profileFile = openOutputFile(configname + "_Nodes_" + n + "_profile.json");
+      profiler.printJson(profileFile);
+      profileFile.close();
+    }
+  }
+
+  /**
+   * Resumes the simulation of a checkpoint and finishes the network size it was taken in. The
+   * adversarial parameters Q and M can be changed to fork what-if runs from the same state,
+   * the configuration name then contains the new values.
+   *
+   * @param path    the checkpoint file
+   * @param options the optional --name=value arguments
+   */
+  private static void resumeSimulation(String path, List<String> options) {
+    for (String option : options) {
+      if (!resumeOptions.contains(option.substring(2).split("=", 2)[0])) {
+        System.out.println("Error, " + option + " cannot be changed when resuming");
+        return;
+      }
+    }
+    Checkpoint checkpoint;
+    try {
+      checkpoint = Checkpoint.read(new File(path));
+    } catch (IOException e) {
+      System.out.println("Error, cannot read checkpoint " + path + ": " + e.getMessage());
+      return;
+    }
+    SimulationContext context = checkpoint.getContext();
+    NetworkConfiguration networkConfig = context.getNetworkConfig();
+    double q = networkConfig.Q;
+    long m = networkConfig.M;
+    for (String option : options) {
+      if (!applyOption(option, context.getConfig(), networkConfig)) {
+        return;
+      }
+    }
+    String[] args = checkpoint.getArgs();
+    if (networkConfig.Q != q || networkConfig.M != m) {
+      if (networkConfig.Q != q) {
+        for (Node node : context.getSimulator().getSimulatedNodes()) {
+          if (node.IsAdversarial()) {
+            ((AdversarialNode) node).calculateDelayedLinks();
+          }
+        }
+      }
+      // Name the fork after its parameters
+      args = Arrays.copyOf(args, 10);
+      args[7] = String.valueOf(networkConfig.P);
+      args[8] = String.valueOf(networkConfig.Q);
+      args[9] = String.valueOf(networkConfig.M);
+    }
+    if (context.getConfig().DEBUG_MODE) {
+      context.setOutJsonFile(openOutputFile("output.json", true));
+    }
+    int n = checkpoint.getNumOfNodes();
+    String configname = String.join("_", args);
+    System.out.println("Resuming run number " + args[3] + " at simulation time "
+        + context.getTimer().getCurrentTime() + ", block height " + context.getMintingHeight());
+    final long start = System.currentTimeMillis();
+    simulate(context, null, args, n);
+    long simulationTime = System.currentTimeMillis() - start;
+    System.out.println("Time spent : " + (int)(simulationTime/1000) + "s N=" + n + ", conf: " + configname);
+    printStatistics(context, null, configname, n);
+  }
+
   /**
    * Populate the list using the distribution.
    *
+   * @param context      the simulation
    * @param distribution the distribution
    * @param facum        whether the distribution is cumulative distribution
    * @return array list
    */
-  public static ArrayList<Integer> makeRandomListFollowDistribution(double[] distribution, boolean facum, int size) {
+  public static ArrayList<Integer> makeRandomListFollowDistribution(SimulationContext context, double[] distribution, boolean facum, int size) {
     ArrayList<Integer> list = new ArrayList<>();
     int index = 0;
     if (facum) {
@@ -356,22 +838,23 @@ public class Main {
         list.add(index);
       }
     }
-    Collections.shuffle(list, random);
+    Collections.shuffle(list, context.getRandom());
     return list;
   }
 
   /**
    * Populate the list using the rate.
    *
-   * @param rate the rate of true
+   * @param context the simulation
+   * @param rate    the rate of true
    * @return array list
    */
-  public static ArrayList<Boolean> makeRandomList(float rate, int size) {
+  public static ArrayList<Boolean> makeRandomList(SimulationContext context, float rate, int size) {
     ArrayList<Boolean> list = new ArrayList<Boolean>();
     for (int i = 0; i < size; i++) {
       list.add(i < size * rate);
     }
-    Collections.shuffle(list, random);
+    Collections.shuffle(list, context.getRandom());
     return list;
   }
 
@@ -379,96 +862,153 @@ public class Main {
    * Generates a random mining power expressed as Hash Rate, and is the number of mining (hash
    * calculation) executed per millisecond.
    *
+   * @param context the simulation
    * @return the number of hash  calculations executed per millisecond.
    */
-  public static int genMiningPower() {
-    double r = random.nextGaussian();
+  public static int genMiningPower(SimulationContext context) {
+    double r = context.getRandom().nextGaussian();
     return Math.max((int) (r * STDEV_OF_MINING_POWER + AVERAGE_MINING_POWER), 1);
   }
 
   /**
+   * @param networkConfig the network parameters
    * @param numNodes
    * @return return the mining power every regular node receives
    */
-  public static long calcMiningPower(int numNodes) {
-    if (getUSEMINGPOOLS()) {
+  public static long calcMiningPower(NetworkConfiguration networkConfig, int numNodes) {
+    if (networkConfig.getUSEMINGPOOLS()) {
       Double allPools = 0.0;
-      for (int i = 0; i < getPoolProportion().length; i++) {
-        allPools += getPoolProportion()[i];
+      for (int i = 0; i < networkConfig.getPoolProportion().length; i++) {
+        allPools += networkConfig.getPoolProportion()[i];
       }
-      long poolPower = Math.round((getNetworkMiningPower() / 100) * allPools);
-      if (numNodes != PoolCount) {
-        return (getNetworkMiningPower() - poolPower) / (numNodes - PoolCount);
+      long poolPower = Math.round((networkConfig.getNetworkMiningPower() / 100) * allPools);
+      if (numNodes != networkConfig.PoolCount) {
+        return (networkConfig.getNetworkMiningPower() - poolPower) / (numNodes - networkConfig.PoolCount);
       } else {
         return 0;
       }
     } else {
-      return getNetworkMiningPower() / (numNodes);
+      return networkConfig.getNetworkMiningPower() / (numNodes);
     }
   }
 
-  public static void constructNetwork(int miners, int zeronodes, boolean connectedMiners) {
-    double[] regionDistribution = getRegionDistribution();
-    List<Integer> regionList = makeRandomListFollowDistribution(regionDistribution, false, miners + zeronodes);
-    // Random distribution of node degrees
-    double[] degreeDistribution = getDegreeDistribution();
-    List<Integer> degreeList = makeRandomListFollowDistribution(degreeDistribution, true, miners + zeronodes);
-    // List of churn nodes.
-    List<Boolean> churnNodes = makeRandomList(CHURN_NODE_RATE, miners + zeronodes);
-    long miningPower;
-    long avg_miningPower = calcMiningPower(miners);
-    Collections.shuffle(degreeList);
-    Collections.shuffle(regionList);
-    Collections.shuffle(churnNodes);
-    for (int id = 1; id <= miners + zeronodes; id++) {
-      if (id <= zeronodes) {
-        miningPower = 0;
-      } else {
-        miningPower = avg_miningPower;
+  /**
+   * Constructs a network of nodes and connects them, or loads it from
+   * {@link SimulationConfiguration#TOPOLOGY_DIRECTORY} if a network of the same parameters has
+   * been stored there. A constructed network is stored in that directory.
+   *
+   * @param context         the simulation
+   * @param miners          the number of nodes with mining power
+   * @param zeronodes       the number of nodes without mining power
+   * @param connectedMiners whether miners connect to other miners first
+   */
+  public static void constructNetwork(SimulationContext context, int miners, int zeronodes, boolean connectedMiners) {
+    SimulationConfiguration config = context.getConfig();
+    NetworkConfiguration networkConfig = context.getNetworkConfig();
+    ArrayList<Node> simulatedNodes = context.getSimulator().getSimulatedNodes();
+    NetworkBuilder builder = new NetworkBuilder(context, config.CONSTRUCTION_THREADS);
+    String description = null;
+    File topologyFile = null;
+    boolean loaded = false;
+    if (config.TOPOLOGY_DIRECTORY != null) {
+      description = Topology.describe(context, miners, zeronodes, connectedMiners);
+      topologyFile = Topology.getFile(config.TOPOLOGY_DIRECTORY, description);
+      if (topologyFile.isFile()) {
+        try {
+          long seed = Topology.read(context, description, topologyFile);
+          System.out.println("Loaded the network constructed with seed " + seed + " from " + topologyFile);
+          loaded = true;
+        } catch (IOException e) {
+          System.out.println("Error, cannot load the network, constructing it: " + e.getMessage());
+          context.getSimulator().resetNodeList();
+        }
       }
-      if (random.nextDouble() < P) {
-        AdversarialNode node = new AdversarialNode(
-            getSimulatedNodes().size() + 1, degreeList.get(id - 1) + 1, regionList.get(id - 1), miningPower, TABLE,
-            ALGO, Propagation, churnNodes.get(id - 1)
-        );
-        addNode(node);
-      } else {
-        Node node = new Node(
-            getSimulatedNodes().size() + 1, degreeList.get(id - 1) + 1, regionList.get(id - 1), miningPower, TABLE,
-            ALGO, Propagation, churnNodes.get(id - 1)
+    }
+    if (!loaded) {
+      double[] regionDistribution = context.getNetwork().getRegionDistribution();
+      List<Integer> regionList = makeRandomListFollowDistribution(context, regionDistribution, false, miners + zeronodes);
+      // Random distribution of node degrees
+      double[] degreeDistribution = getDegreeDistribution();
+      List<Integer> degreeList = makeRandomListFollowDistribution(context, degreeDistribution, true, miners + zeronodes);
+      // List of churn nodes.
+      List<Boolean> churnNodes = makeRandomList(context, CHURN_NODE_RATE, miners + zeronodes);
+      long avg_miningPower = calcMiningPower(networkConfig, miners);
+      Collections.shuffle(degreeList, context.getRandom());
+      Collections.shuffle(regionList, context.getRandom());
+      Collections.shuffle(churnNodes, context.getRandom());
+      boolean[] adversarial = new boolean[miners + zeronodes];
+      for (int id = 1; id <= miners + zeronodes; id++) {
+        adversarial[id - 1] = context.getRandom().nextDouble() < networkConfig.P;
+      }
+      int firstId = simulatedNodes.size() + 1;
+      Node[] nodes = builder.createNodes(miners + zeronodes, index -> {
+        int id = index + 1;
+        long miningPower = id <= zeronodes ? 0 : avg_miningPower;
+        if (adversarial[index]) {
+          return new AdversarialNode(
+              context.getNodeContext(regionList.get(id - 1)), firstId + index, degreeList.get(id - 1) + 1, regionList.get(id - 1), miningPower, config.TABLE,
+              ALGO, config.Propagation, churnNodes.get(id - 1)
+          );
+        }
+        return new Node(
+            context.getNodeContext(regionList.get(id - 1)), firstId + index, degreeList.get(id - 1) + 1, regionList.get(id - 1), miningPower, config.TABLE,
+            ALGO, config.Propagation, churnNodes.get(id - 1)
         );
-        addNode(node);
+      });
+      for (Node node : nodes) {
+        context.getSimulator().addNode(node);
       }
-    }
-    //set miningpower for pools
-    if (getUSEMINGPOOLS()) {
-      int count = 0;
-      HashSet<Integer> used = new HashSet<>();
-      while (count < getPoolCount()) {
-        int rand = random.nextInt(getSimulatedNodes().size());
-        if (!used.contains(rand)) {
-          if ((avg_miningPower > 0 && getSimulatedNodes().get(rand).getMiningPower() > 0) || avg_miningPower == 0) {
-            getSimulatedNodes().get(rand).setMiningPower(Math.round((getNetworkMiningPower() / 100) * getPoolProportion()[count]));
-            count++;
-            getSimulatedNodes().get(rand).isMiningPool = true;
-            used.add(rand);
+      //set miningpower for pools
+      if (networkConfig.getUSEMINGPOOLS()) {
+        int count = 0;
+        HashSet<Integer> used = new HashSet<>();
+        while (count < networkConfig.getPoolCount()) {
+          int rand = context.getRandom().nextInt(simulatedNodes.size());
+          if (!used.contains(rand)) {
+            if ((avg_miningPower > 0 && simulatedNodes.get(rand).getMiningPower() > 0) || avg_miningPower == 0) {
+              simulatedNodes.get(rand).setMiningPower(Math.round((networkConfig.getNetworkMiningPower() / 100) * networkConfig.getPoolProportion()[count]));
+              count++;
+              simulatedNodes.get(rand).isMiningPool = true;
+              used.add(rand);
+            }
           }
         }
       }
     }
+    //draw the positions of the nodes within their regions
+    for (Node node : simulatedNodes) {
+      context.getNetwork().placeNode(node);
+    }
     //connect nodes
-    for (Node node : getSimulatedNodes()) {
-      node.resetNode();
-      node.joinNetwork(connectedMiners);
-      //set new delayed connections
-      if (node.IsAdversarial()) {
-        ((AdversarialNode) node).calculateDelayedLinks();
+    if (config.CONSTRUCTION_THREADS > 1) {
+      builder.connect(simulatedNodes, connectedMiners, !loaded);
+    } else {
+      for (Node node : simulatedNodes) {
+        node.resetNode();
+        if (!loaded) {
+          node.joinNetwork(connectedMiners);
+        }
+        //set new delayed connections
+        if (node.IsAdversarial()) {
+          ((AdversarialNode) node).calculateDelayedLinks();
+        }
+        //choose new highbandwidth connections
+        if (node.getPropagationProtocol() instanceof Cbr) {
+          ((Cbr) node.getPropagationProtocol()).chooseHighBandwidthModeConenctions();
+        }
       }
-      //choose new highbandwidth connections
-      if (node.getPropagationProtocol() instanceof Cbr) {
-        ((Cbr) node.getPropagationProtocol()).chooseHighBandwidthModeConenctions();
+    }
+    for (Node node : simulatedNodes) {
+      node.getRoutingTable().freeze();
+    }
+    if (topologyFile != null && !loaded) {
+      try {
+        Topology.write(context, description, context.getSeed(), topologyFile);
+      } catch (IOException e) {
+        System.out.println("Error, cannot store the network " + topologyFile + ": " + e.getMessage());
       }
     }
-    getSimulatedNodes().get(0).genesisBlock();
+    simulatedNodes.get(0).genesisBlock();
+    context.getChurnModel().start(connectedMiners);
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import simblock.block.Block;
+import simblock.settings.SimulationConfiguration;
+
+/**
+ * The type Mining task filter limits the number of mining tasks on the same parent block, see
+ * {@link SimulationConfiguration#FILTER_MINING_TASKS}. The number of admitted tasks and the
+ * earliest mining time are kept in primitive arrays indexed by the block id. Block ids grow in
+ * the order blocks are mined, so the table holds the most recent {@link #CAPACITY} blocks, far
+ * more than any fork. The entry of an older block is evicted once a newer block takes its slot.
+ */
+public class MiningTaskFilter implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Number of blocks tracked, a power of two.
+   */
+  static final int CAPACITY = 1024;
+
+  private static final int MASK = CAPACITY - 1;
+
+  /**
+   * The id of the block tracked in each slot, -1 if the slot is empty.
+   */
+  private final int[] blockIds = new int[CAPACITY];
+  private final int[] counts = new int[CAPACITY];
+  private final long[] earliestTimes = new long[CAPACITY];
+
+  private long admitted = 0;
+  private long filtered = 0;
+  private long evicted = 0;
+
+  /**
+   * Instantiates a new empty Mining task filter.
+   */
+  public MiningTaskFilter() {
+    Arrays.fill(this.blockIds, -1);
+  }
+
+  /**
+   * Decides whether a new mining task on the block is added to the task queue. The first
+   * {@code maxTasks} tasks after the first are admitted, later ones only if the earliest
+   * recorded time is before the time of the new task.
+   *
+   * @param block       the parent block of the mining task
+   * @param time        the time the mining task is executed at
+   * @param currentTime the current simulation time
+   * @param maxTasks    the number of tasks that are always admitted
+   * @return whether the mining task is added
+   */
+  public boolean admit(Block block, long time, long currentTime, int maxTasks) {
+    int slot = block.getId() & MASK;
+    if (this.blockIds[slot] != block.getId()) {
+      if (this.blockIds[slot] != -1) {
+        this.evicted++;
+      }
+      this.blockIds[slot] = block.getId();
+      this.counts[slot] = 0;
+      this.earliestTimes[slot] = currentTime + time;
+      this.admitted++;
+      return true;
+    }
+    if (this.counts[slot] < maxTasks || this.earliestTimes[slot] < time) {
+      this.counts[slot]++;
+      this.earliestTimes[slot] = Math.min(this.earliestTimes[slot], time);
+      this.admitted++;
+      return true;
+    }
+    this.filtered++;
+    return false;
+  }
+
+  /**
+   * Removes all blocks and resets the statistics.
+   */
+  public void reset() {
+    Arrays.fill(this.blockIds, -1);
+    this.admitted = 0;
+    this.filtered = 0;
+    this.evicted = 0;
+  }
+
+  /**
+   * Gets the number of admitted mining tasks.
+   *
+   * @return the number of admitted tasks
+   */
+  public long getAdmitted() {
+    return this.admitted;
+  }
+
+  /**
+   * Gets the number of mining tasks that were not added to the task queue.
+   *
+   * @return the number of filtered tasks
+   */
+  public long getFiltered() {
+    return this.filtered;
+  }
+
+  /**
+   * Gets the number of blocks whose entry was evicted by a newer block.
+   *
+   * @return the number of evicted blocks
+   */
+  public long getEvicted() {
+    return this.evicted;
+  }
+}
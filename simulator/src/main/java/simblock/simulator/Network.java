@@ -17,58 +17,205 @@
 package simblock.simulator;
 
 import static simblock.settings.NetworkConfiguration.DEGREE_DISTRIBUTION;
-import static simblock.settings.NetworkConfiguration.DOWNLOAD_BANDWIDTH;
-import static simblock.settings.NetworkConfiguration.LATENCY;
-import static simblock.settings.NetworkConfiguration.REGION_DISTRIBUTION;
-import static simblock.settings.NetworkConfiguration.REGION_LIST;
-import static simblock.settings.NetworkConfiguration.UPLOAD_BANDWIDTH;
-import static simblock.simulator.Main.STATIC_JSON_FILE;
-import static simblock.simulator.Main.random;
 
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.List;
+import simblock.node.Node;
 import simblock.settings.NetworkConfiguration;
 
 /**
  * The type Network represents a network split in regions, each node belonging to a region with
  * an upload bandwidth
- * and a download bandwidth. Node degrees follow a predefined degree distribution.
+ * and a download bandwidth. Node degrees follow a predefined degree distribution. The regions
+ * are the ones compiled into {@link NetworkConfiguration} or the locations of a
+ * {@link simblock.settings.LocationModel}.
  */
-public class Network {
+public class Network implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   /**
-   * Gets latency according with 20% variance pallet distribution.
+   * The simulation the network belongs to.
+   */
+  private final SimulationContext context;
+
+  /**
+   * The quantile tables of the latency by mean latency, created when a mean is first sampled.
+   * The distribution only depends on the mean, so all region pairs with the same mean share a
+   * table, which keeps the number of tables small for models with thousands of locations.
+   */
+  private transient ParetoLatencyTable[] latencyTables;
+
+  /**
+   * The positions and access delays of the nodes, shared by the networks of all partitions of a
+   * simulation.
+   */
+  private final NodeCoordinates coordinates;
+
+  /**
+   * Instantiates a new Network.
+   *
+   * @param context the simulation the network belongs to
+   */
+  public Network(SimulationContext context) {
+    this.context = context;
+    this.coordinates = new NodeCoordinates();
+  }
+
+  /**
+   * Instantiates the network of a partition, which shares the node coordinates of the network of
+   * the whole simulation.
+   *
+   * @param context the partition the network belongs to
+   * @param parent  the network of the whole simulation
+   */
+  Network(SimulationContext context, Network parent) {
+    this.context = context;
+    this.coordinates = parent.coordinates;
+  }
+
+  /**
+   * Draws the coordinates of a new node if {@link NetworkConfiguration#NODE_COORDINATES} is
+   * enabled.
+   *
+   * @param node the node
+   */
+  public void placeNode(Node node) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
+    if (networkConfig.NODE_COORDINATES) {
+      this.coordinates.place(node, this.context.getRandom(), networkConfig.COORDINATE_SPREAD,
+          networkConfig.ACCESS_DELAY);
+    }
+  }
+
+  /**
+   * Gets latency according with 20% variance pallet distribution. The distribution is sampled
+   * from a {@link ParetoLatencyTable} unless
+   * {@link NetworkConfiguration#LATENCY_TABLE_RESOLUTION} is 0.
    *
    * @param from the from latency
    * @param to   the to latency
    * @return the calculated latency
    */
-  public static final long getLatency(int from, int to) {
-    long mean = LATENCY[from][to];
+  public final long getLatency(int from, int to) {
+    return sampleLatency(this.context.getNetworkConfig().getMeanLatency(from, to));
+  }
+
+  /**
+   * Draws a latency between two nodes from the distribution of their mean latency, see
+   * {@link #getMeanLatency(Node, Node)}. Unlike {@link #getLatency(Node, Node)} the base latency
+   * of a connection is not used.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the latency in milliseconds
+   */
+  public final long drawLatency(Node from, Node to) {
+    return sampleLatency(getMeanLatency(from, to));
+  }
+
+  /**
+   * Gets the mean latency between two nodes, the mean latency of their regions plus the delay of
+   * their {@link NodeCoordinates} if {@link NetworkConfiguration#NODE_COORDINATES} is enabled.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the mean latency in milliseconds
+   */
+  public final long getMeanLatency(Node from, Node to) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
+    long mean = networkConfig.getMeanLatency(from.getRegion(), to.getRegion());
+    if (networkConfig.NODE_COORDINATES) {
+      mean += Math.round(this.coordinates.getDelay(from, to));
+    }
+    return mean;
+  }
+
+  /**
+   * Draws a latency from the Pareto distribution of a mean latency.
+   *
+   * @param mean the mean latency in milliseconds
+   * @return the latency in milliseconds
+   */
+  private long sampleLatency(long mean) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
     double shape = 0.2 * mean;
     double scale = mean - 5;
-    return Math.round(scale / Math.pow(random.nextDouble(), 1.0 / shape));
+    if (networkConfig.LATENCY_TABLE_RESOLUTION <= 0 || mean < 0) {
+      return Math.round(scale / Math.pow(this.context.getRandom().nextDouble(), 1.0 / shape));
+    }
+    if (this.latencyTables == null) {
+      this.latencyTables = new ParetoLatencyTable[(int) mean + 1];
+    } else if (mean >= this.latencyTables.length) {
+      this.latencyTables = Arrays.copyOf(this.latencyTables,
+          (int) Math.max(mean + 1, 2L * this.latencyTables.length));
+    }
+    ParetoLatencyTable table = this.latencyTables[(int) mean];
+    if (table == null) {
+      table = new ParetoLatencyTable(scale, shape, networkConfig.LATENCY_TABLE_RESOLUTION);
+      this.latencyTables[(int) mean] = table;
+    }
+    return table.sample(this.context.getRandom());
+  }
+
+  /**
+   * Gets the latency of a message between two nodes. If
+   * {@link NetworkConfiguration#LINK_LATENCY} is enabled, the latency of a connection is its
+   * base latency plus a uniform jitter of up to {@link NetworkConfiguration#LINK_JITTER} of it,
+   * other messages draw a latency of the nodes, see {@link #drawLatency(Node, Node)}.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the latency in milliseconds
+   */
+  public final long getLatency(Node from, Node to) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
+    if (networkConfig.LINK_LATENCY) {
+      long base = from.getRoutingTable().getLinkLatency(to);
+      if (base >= 0) {
+        return base + Math.round(
+            this.context.getRandom().nextDouble() * networkConfig.LINK_JITTER * base);
+      }
+    }
+    return drawLatency(from, to);
+  }
+
+  /**
+   * Gets a lower bound of the latency between two regions, the scale of the Pareto distribution
+   * of {@link #getLatency(int, int)}. The coordinate delay of two nodes is never negative, so it
+   * is a lower bound of the latency of their nodes as well.
+   *
+   * @param from the from latency
+   * @param to   the to latency
+   * @return the lower bound in milliseconds
+   */
+  public final long getMinimumLatency(int from, int to) {
+    return this.context.getNetworkConfig().getMeanLatency(from, to) - 5;
   }
 
   /**
    * Gets the minimum between the <em>from</em> upload bandwidth and <em>to</em> download
    * bandwidth.
    *
-   * @param from the from index in the {@link NetworkConfiguration#UPLOAD_BANDWIDTH} array.
-   * @param to   the to index in the {@link NetworkConfiguration#UPLOAD_BANDWIDTH} array.
+   * @param from the region of the sender
+   * @param to   the region of the receiver
    * @return the bandwidth
    */
 
-  public static final long getBandwidth(int from, int to) {
-    return Math.min(UPLOAD_BANDWIDTH[from], DOWNLOAD_BANDWIDTH[to]);
+  public final long getBandwidth(int from, int to) {
+    NetworkConfiguration networkConfig = this.context.getNetworkConfig();
+    return Math.min(networkConfig.getUploadBandwidth(from),
+        networkConfig.getDownloadBandwidth(to));
   }
 
   /**
    * Gets region list.
    *
-   * @return the {@link NetworkConfiguration#REGION_LIST} list.
+   * @return the {@link NetworkConfiguration#getRegionList()} list.
    */
-  public static List<String> getRegionList() {
-    return REGION_LIST;
+  public List<String> getRegionList() {
+    return this.context.getNetworkConfig().getRegionList();
   }
 
   /**
@@ -76,8 +223,8 @@ public class Network {
    *
    * @return an array the distribution
    */
-  public static double[] getRegionDistribution() {
-    return REGION_DISTRIBUTION;
+  public double[] getRegionDistribution() {
+    return this.context.getNetworkConfig().getRegionDistribution();
   }
 
   /**
@@ -92,23 +239,25 @@ public class Network {
   /**
    * Prints the currently active regions to outfile.
    */
-  public static void printRegion() {
-    STATIC_JSON_FILE.print("{\"region\":[");
+  public void printRegion() {
+    PrintWriter staticJsonFile = this.context.getStaticJsonFile();
+    List<String> regionList = getRegionList();
+    staticJsonFile.print("{\"region\":[");
 
     int id = 0;
-    for (; id < REGION_LIST.size() - 1; id++) {
-      STATIC_JSON_FILE.print("{");
-      STATIC_JSON_FILE.print("\"id\":" + id + ",");
-      STATIC_JSON_FILE.print("\"name\":\"" + REGION_LIST.get(id) + "\"");
-      STATIC_JSON_FILE.print("},");
+    for (; id < regionList.size() - 1; id++) {
+      staticJsonFile.print("{");
+      staticJsonFile.print("\"id\":" + id + ",");
+      staticJsonFile.print("\"name\":\"" + regionList.get(id) + "\"");
+      staticJsonFile.print("},");
     }
 
-    STATIC_JSON_FILE.print("{");
-    STATIC_JSON_FILE.print("\"id\":" + id + ",");
-    STATIC_JSON_FILE.print("\"name\":\"" + REGION_LIST.get(id) + "\"");
-    STATIC_JSON_FILE.print("}");
-    STATIC_JSON_FILE.print("]}");
-    STATIC_JSON_FILE.flush();
-    STATIC_JSON_FILE.close();
+    staticJsonFile.print("{");
+    staticJsonFile.print("\"id\":" + id + ",");
+    staticJsonFile.print("\"name\":\"" + regionList.get(id) + "\"");
+    staticJsonFile.print("}");
+    staticJsonFile.print("]}");
+    staticJsonFile.flush();
+    staticJsonFile.close();
   }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.simulator;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import simblock.node.AdversarialNode;
+import simblock.node.Node;
+import simblock.node.propagation.Cbr;
+
+/**
+ * The type Network builder runs the steps of {@link Main#constructNetwork} that are independent
+ * per node on a fork-join pool. Everything that draws from the random number generator of the
+ * simulation or changes other nodes is done in node order on the calling thread, so the same
+ * seed yields the same network for any number of threads.
+ *
+ * <p>The outbound connections are built in three passes: every routing table proposes its
+ * neighbors in parallel with a random number generator of its own, derived from the seed of the
+ * simulation and the node id (see
+ * {@link simblock.node.routing.AbstractRoutingTable#proposeOutbound}). The proposals are then
+ * added in node order, which drops a proposal if the two nodes are already connected, and the
+ * few tables that are not full afterwards are completed by
+ * {@link simblock.node.routing.AbstractRoutingTable#initTable}.
+ */
+public class NetworkBuilder {
+
+  /**
+   * The increment between the seeds of the random number generators of two nodes.
+   */
+  private static final long SEED_INCREMENT = 0x9e3779b97f4a7c15L;
+
+  private final SimulationContext context;
+  private final int threads;
+
+  /**
+   * Instantiates a new Network builder.
+   *
+   * @param context the simulation
+   * @param threads the number of threads, 1 runs all steps on the calling thread
+   */
+  public NetworkBuilder(SimulationContext context, int threads) {
+    this.context = context;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Runs a task for every index, in parallel if the builder has more than one thread.
+   *
+   * @param count the number of indices
+   * @param task  the task
+   */
+  private void forEach(int count, IntConsumer task) {
+    if (this.threads == 1) {
+      for (int i = 0; i < count; i++) {
+        task.accept(i);
+      }
+      return;
+    }
+    ForkJoinPool pool = new ForkJoinPool(this.threads);
+    try {
+      pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while constructing the network", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to construct the network", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Instantiates nodes. The factory must not draw from the random number generator of the
+   * simulation.
+   *
+   * @param count   the number of nodes
+   * @param factory creates the node of an index
+   * @return the nodes
+   */
+  public Node[] createNodes(int count, IntFunction<Node> factory) {
+    Node[] nodes = new Node[count];
+    forEach(count, i -> nodes[i] = factory.apply(i));
+    return nodes;
+  }
+
+  /**
+   * Resets the nodes, connects them and chooses the delayed links of the adversarial nodes and
+   * the high bandwidth peers of the compact block relay.
+   *
+   * @param nodes           the simulated nodes
+   * @param connectToMiners whether miners connect to other miners first
+   * @param connect         whether to connect the nodes, false if the connections are loaded
+   */
+  public void connect(List<Node> nodes, boolean connectToMiners, boolean connect) {
+    int count = nodes.size();
+    forEach(count, i -> nodes.get(i).resetNode());
+    if (connect) {
+      // The pools have to exist before the tables read them concurrently
+      this.context.getSimulator().getPeerSampler().getAll();
+      long seed = this.context.getRandom().nextLong();
+      int[][] proposals = new int[count][];
+      forEach(count, i -> proposals[i] = nodes.get(i).getRoutingTable().proposeOutbound(
+          connectToMiners, new SplittableRandom(seed + SEED_INCREMENT * i)));
+      for (int i = 0; i < count; i++) {
+        Node node = nodes.get(i);
+        for (int index : proposals[i]) {
+          node.addNeighbor(nodes.get(index));
+        }
+      }
+      for (Node node : nodes) {
+        if (node.getRoutingTable().getOutboundNeighbors().size() < node.getNumConnection()) {
+          node.joinNetwork(connectToMiners);
+        }
+      }
+    }
+    for (Node node : nodes) {
+      if (node.IsAdversarial()) {
+        ((AdversarialNode) node).calculateDelayedLinks();
+      }
+    }
+    @SuppressWarnings("unchecked")
+    List<Node>[] candidates = (List<Node>[]) new List<?>[count];
+    forEach(count, i -> {
+      if (nodes.get(i).getPropagationProtocol() instanceof Cbr) {
+        candidates[i] = ((Cbr) nodes.get(i).getPropagationProtocol())
+            .getHighBandwidthModeCandidates();
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      if (candidates[i] != null) {
+        ((Cbr) nodes.get(i).getPropagationProtocol()).setHighBandwidthModePeers(candidates[i]);
+      }
+    }
+  }
+}
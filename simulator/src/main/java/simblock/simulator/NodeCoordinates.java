@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.simulator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import simblock.node.Node;
+
+/**
+ * The type Node coordinates gives every node a position in a synthetic latency space and an
+ * access delay, so the latency varies between the nodes of a region instead of only between
+ * regions. The positions are drawn uniformly from a disk around the origin of the region of
+ * the node whose radius is the spread in milliseconds, the access delays, the delay of the last
+ * mile, are exponentially distributed.
+ *
+ * <p>The delay between two nodes is the distance of their positions plus both access delays. It
+ * is computed on demand from three primitive arrays indexed by node id, so the memory grows
+ * linearly with the number of nodes instead of with the number of node pairs.
+ */
+public class NodeCoordinates implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private float[] x = new float[0];
+  private float[] y = new float[0];
+  private float[] access = new float[0];
+
+  /**
+   * Draws the position and the access delay of a node.
+   *
+   * @param node        the node
+   * @param random      the random number generator
+   * @param spread      the radius of the disk of positions in milliseconds
+   * @param accessDelay the mean access delay in milliseconds
+   */
+  public void place(Node node, Random random, double spread, double accessDelay) {
+    int index = node.getNodeID() - 1;
+    if (index >= this.x.length) {
+      int length = Math.max(index + 1, 2 * this.x.length);
+      this.x = Arrays.copyOf(this.x, length);
+      this.y = Arrays.copyOf(this.y, length);
+      this.access = Arrays.copyOf(this.access, length);
+    }
+    double radius = spread * Math.sqrt(random.nextDouble());
+    double angle = 2 * Math.PI * random.nextDouble();
+    this.x[index] = (float) (radius * Math.cos(angle));
+    this.y[index] = (float) (radius * Math.sin(angle));
+    this.access[index] = (float) (-accessDelay * Math.log(1 - random.nextDouble()));
+  }
+
+  /**
+   * Gets the delay between two nodes on top of the latency between their regions.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the distance of the nodes plus both access delays in milliseconds, 0 for a node that
+   *     has not been placed
+   */
+  public double getDelay(Node from, Node to) {
+    int i = from.getNodeID() - 1;
+    int j = to.getNodeID() - 1;
+    if (i >= this.x.length || j >= this.x.length) {
+      return 0;
+    }
+    double dx = this.x[i] - this.x[j];
+    double dy = this.y[i] - this.y[j];
+    return Math.sqrt(dx * dx + dy * dy) + this.access[i] + this.access[j];
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import simblock.settings.NetworkConfiguration;
+import simblock.settings.SimulationConfiguration;
+import simblock.simulator.fel.ScheduledTask;
+import simblock.simulator.stop.StopCondition;
+import simblock.task.AbstractMessageTask;
+
+/**
+ * The type Parallel engine runs a simulation on several threads. The regions are distributed
+ * over partitions, each partition simulates the nodes of its regions with a context, and thus a
+ * {@link Timer}, of its own and is run by a thread of its own.
+ *
+ * <p>The partitions are synchronized conservatively in time windows. A message between nodes of
+ * different partitions is delayed by at least the minimum latency between their regions, the
+ * lookahead. Starting at the earliest scheduled task of all partitions, every partition runs
+ * its tasks of the next lookahead milliseconds independently, as no message sent in the window
+ * can be received in it. Afterwards the messages between partitions are delivered and the block
+ * arrivals are passed to the {@link Simulator} of the whole network in the order of their time.
+ *
+ * <p>A run is reproducible for the same seed and number of partitions, but differs from the run
+ * of the sequential engine as every partition draws from a random number generator of its own.
+ * Debug logging, transactions, aggregated mining and bandwidth sharing rely on state shared by
+ * all nodes and are not supported, neither are checkpoints. Every partition evaluates the stop
+ * condition on its own events, so coverage conditions, which count the arrivals at all nodes,
+ * are not supported either.
+ */
+public class ParallelEngine {
+
+  /**
+   * The context of the whole simulation.
+   */
+  private final SimulationContext context;
+
+  /**
+   * The contexts of the partitions.
+   */
+  private final SimulationContext[] partitions;
+
+  /**
+   * The minimum latency between nodes of different partitions in milliseconds.
+   */
+  private final long lookahead;
+
+  /**
+   * The time of the last executed task in milliseconds.
+   */
+  private long currentTime = 0;
+
+  /**
+   * Number of time windows run since the engine was created.
+   */
+  private long windows = 0;
+
+  /**
+   * Instantiates a new Parallel engine and lets the context simulate the nodes of each region in
+   * the context of its partition. Has to be called before the network is constructed.
+   *
+   * @param context    the context of the whole simulation
+   * @param partitions the requested number of partitions, at most one per region is used
+   */
+  public ParallelEngine(SimulationContext context, int partitions) {
+    String unsupported = checkConfiguration(context.getConfig(), context.getNetworkConfig());
+    if (unsupported != null) {
+      throw new IllegalArgumentException(unsupported);
+    }
+    this.context = context;
+    double[] distribution = context.getNetwork().getRegionDistribution();
+    int[] regionPartitions = assignRegions(distribution,
+        Math.min(partitions, context.getNetwork().getRegionList().size()));
+    int count = Arrays.stream(regionPartitions).max().orElse(0) + 1;
+    this.partitions = new SimulationContext[count];
+    for (int i = 0; i < count; i++) {
+      this.partitions[i] = new SimulationContext(context, i, count);
+    }
+    SimulationContext[] regionContexts = new SimulationContext[regionPartitions.length];
+    long minimumLatency = Long.MAX_VALUE;
+    for (int from = 0; from < regionPartitions.length; from++) {
+      regionContexts[from] = this.partitions[regionPartitions[from]];
+      for (int to = 0; to < regionPartitions.length; to++) {
+        if (regionPartitions[from] != regionPartitions[to] && distribution[from] > 0
+            && distribution[to] > 0) {
+          minimumLatency = Math.min(minimumLatency,
+              context.getNetwork().getMinimumLatency(from, to));
+        }
+      }
+    }
+    this.lookahead = minimumLatency;
+    if (count > 1 && this.lookahead < 1) {
+      throw new IllegalArgumentException("The latency between regions of different partitions "
+          + "has no positive lower bound");
+    }
+    for (SimulationContext partition : this.partitions) {
+      partition.getTimer().enablePartitioning(this.lookahead);
+    }
+    context.setRegionContexts(regionContexts);
+  }
+
+  /**
+   * Checks whether a simulation can be run by the engine.
+   *
+   * @param config        the simulation parameters
+   * @param networkConfig the network parameters
+   * @return the reason why the simulation is not supported or null if it is supported
+   */
+  public static String checkConfiguration(SimulationConfiguration config,
+      NetworkConfiguration networkConfig) {
+    if (config.DEBUG_MODE) {
+      return "The parallel engine does not support debug logging";
+    }
+    if (config.USE_TRANSACTIONS) {
+      return "The parallel engine does not support transactions";
+    }
+    if (config.AGGREGATED_MINING) {
+      return "The parallel engine does not support aggregated mining";
+    }
+    if (config.CHECKPOINT_TIME > 0 || config.CHECKPOINT_BLOCKS > 0) {
+      return "The parallel engine does not support checkpoints";
+    }
+    if (config.CHURN_SESSION != null) {
+      return "The parallel engine does not support churn";
+    }
+    if (networkConfig.BANDWIDTH_SHARING) {
+      return "The parallel engine does not support bandwidth sharing";
+    }
+    if (config.CBR_DYNAMIC_HIGH_BW) {
+      // The selecting node changes the state of its neighbors, which may be in other partitions
+      return "The parallel engine does not support dynamic high bandwidth peers";
+    }
+    if (StopCondition.parse(config.STOP_CONDITION).needsAllArrivals()) {
+      return "The parallel engine does not support coverage stop conditions";
+    }
+    return null;
+  }
+
+  /**
+   * Distributes the regions over the partitions, every region is assigned to the partition with
+   * the smallest share of nodes so far, starting with the largest region.
+   *
+   * @param distribution the share of nodes by region
+   * @param partitions   the number of partitions
+   * @return the partition by region
+   */
+  private static int[] assignRegions(double[] distribution, int partitions) {
+    Integer[] regions = new Integer[distribution.length];
+    for (int i = 0; i < regions.length; i++) {
+      regions[i] = i;
+    }
+    Arrays.sort(regions, Comparator.comparingDouble((Integer region) -> -distribution[region]));
+    double[] shares = new double[partitions];
+    int[] regionPartitions = new int[distribution.length];
+    for (int region : regions) {
+      int partition = 0;
+      for (int i = 1; i < partitions; i++) {
+        if (shares[i] < shares[partition]) {
+          partition = i;
+        }
+      }
+      regionPartitions[region] = partition;
+      shares[partition] += distribution[region];
+    }
+    return regionPartitions;
+  }
+
+  /**
+   * Runs the simulation until the stop condition of a partition is met or no task is left, and
+   * shuts the engine down.
+   */
+  public void run() {
+    for (SimulationContext partition : this.partitions) {
+      partition.getStopCondition().start(partition);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(this.partitions.length);
+    try {
+      while (true) {
+        deliverMessages();
+        long windowStart = Long.MAX_VALUE;
+        for (SimulationContext partition : this.partitions) {
+          windowStart = Math.min(windowStart, partition.getTimer().getNextTaskTime());
+        }
+        if (windowStart == Long.MAX_VALUE) {
+          break;
+        }
+        long windowEnd = windowStart > Long.MAX_VALUE - this.lookahead
+            ? Long.MAX_VALUE : windowStart + this.lookahead;
+        List<Callable<Long>> windowTasks = new ArrayList<>();
+        for (SimulationContext partition : this.partitions) {
+          windowTasks.add(() -> runWindow(partition.getTimer(), windowEnd));
+        }
+        long stopTime = Long.MAX_VALUE;
+        for (Future<Long> result : executor.invokeAll(windowTasks)) {
+          stopTime = Math.min(stopTime, result.get());
+        }
+        this.windows++;
+        passArrivals(stopTime);
+        if (stopTime != Long.MAX_VALUE) {
+          this.currentTime = stopTime;
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("The parallel simulation was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A partition of the parallel simulation failed",
+          e.getCause());
+    } finally {
+      executor.shutdownNow();
+      this.context.setRegionContexts(null);
+    }
+  }
+
+  /**
+   * Runs the tasks of a partition scheduled before the end of the window.
+   *
+   * @param timer     the timer of the partition
+   * @param windowEnd the end of the window in milliseconds, exclusive
+   * @return the time the stop condition of the partition was met or {@link Long#MAX_VALUE} if
+   *     it was not met
+   */
+  private static long runWindow(Timer timer, long windowEnd) {
+    while (timer.getNextTaskTime() < windowEnd && timer.runTask()) {
+      // Run the tasks of the window
+    }
+    return timer.isStopped() ? timer.getCurrentTime() : Long.MAX_VALUE;
+  }
+
+  /**
+   * Schedules the messages sent in the last window at the partitions of their receivers. The
+   * messages are delivered in the order of their sending partition and sending, so ties are
+   * broken the same way in every run.
+   */
+  private void deliverMessages() {
+    for (SimulationContext partition : this.partitions) {
+      for (ScheduledTask message : partition.getTimer().drainOutbox()) {
+        ((AbstractMessageTask) message.getTask()).getTo().getContext().getTimer()
+            .putReceivedTask(message.getTask(), message.getScheduledTime());
+      }
+    }
+  }
+
+  /**
+   * Passes the block arrivals of the last window to the simulator of the whole network in the
+   * order of their time and partition. Arrivals after the end of the simulation are dropped.
+   *
+   * @param stopTime the end of the simulation in milliseconds
+   */
+  private void passArrivals(long stopTime) {
+    List<Simulator.Arrival> arrivals = new ArrayList<>();
+    for (SimulationContext partition : this.partitions) {
+      arrivals.addAll(partition.getSimulator().drainArrivals());
+      this.currentTime = Math.max(this.currentTime, partition.getTimer().getCurrentTime());
+    }
+    // The sort is stable, arrivals of the same time stay in the order of their partition
+    arrivals.sort(Comparator.comparingLong(arrival -> arrival.time));
+    Simulator simulator = this.context.getSimulator();
+    for (Simulator.Arrival arrival : arrivals) {
+      if (arrival.time <= stopTime) {
+        simulator.arriveBlock(arrival.block, arrival.node, arrival.time);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of partitions.
+   *
+   * @return the number of partitions
+   */
+  public int getPartitionCount() {
+    return this.partitions.length;
+  }
+
+  /**
+   * Gets the minimum latency between nodes of different partitions.
+   *
+   * @return the lookahead in milliseconds
+   */
+  public long getLookahead() {
+    return this.lookahead;
+  }
+
+  /**
+   * Gets the number of time windows run.
+   *
+   * @return the number of windows
+   */
+  public long getWindows() {
+    return this.windows;
+  }
+
+  /**
+   * Gets the simulation time, the end of the simulation once it has been run.
+   *
+   * @return the time in milliseconds
+   */
+  public long getCurrentTime() {
+    return this.currentTime;
+  }
+
+  /**
+   * Gets the number of tasks scheduled by all partitions.
+   *
+   * @return the number of scheduled tasks
+   */
+  public long getTaskCounts() {
+    return Arrays.stream(this.partitions).mapToLong(p -> p.getTimer().getTaskCounts()).sum();
+  }
+
+  /**
+   * Gets the number of tasks cancelled by all partitions.
+   *
+   * @return the number of cancelled tasks
+   */
+  public long getCancelledTasks() {
+    return Arrays.stream(this.partitions).mapToLong(p -> p.getTimer().getCancelledTasks())
+        .sum();
+  }
+
+  /**
+   * Gets the number of cancelled tasks that are still stored in the task queues.
+   *
+   * @return the number of tombstones
+   */
+  public long getLiveTombstones() {
+    return Arrays.stream(this.partitions).mapToLong(p -> p.getTimer().getLiveTombstones())
+        .sum();
+  }
+
+  /**
+   * Gets the number of mining tasks filtered by all partitions.
+   *
+   * @return the number of filtered mining tasks
+   */
+  public long getFilteredMiningTasks() {
+    return Arrays.stream(this.partitions)
+        .mapToLong(p -> p.getTimer().getMiningTaskFilter().getFiltered()).sum();
+  }
+
+  /**
+   * Gets the statistics of the profilers of all partitions.
+   *
+   * @return the merged profiler or null if the tasks are not profiled
+   */
+  public TaskProfiler getProfiler() {
+    if (!this.context.getConfig().PROFILE_TASKS) {
+      return null;
+    }
+    TaskProfiler profiler = new TaskProfiler();
+    for (SimulationContext partition : this.partitions) {
+      profiler.add(partition.getTimer().getProfiler());
+    }
+    return profiler;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.util.Random;
+
+/**
+ * The type Pareto latency table samples the Pareto distribution of the latency between two
+ * regions from a precomputed table of its quantiles. A sample takes one random number and a
+ * linear interpolation between two quantiles instead of a call of {@link Math#pow}.
+ *
+ * <p>The table holds the quantiles at the random numbers <code>i / resolution</code>. The
+ * quantile function grows without bound towards 0, so the first cell, which is hit with
+ * probability <code>1 / resolution</code>, is sampled with the closed form instead.
+ */
+public class ParetoLatencyTable {
+  private final double scale;
+  private final double shape;
+  private final int resolution;
+
+  /**
+   * The quantiles at the random numbers <code>i / resolution</code>, the entry at 0 is unused.
+   */
+  private final double[] quantiles;
+
+  /**
+   * Instantiates a new Pareto latency table.
+   *
+   * @param scale      the scale, the lower bound of the latency in milliseconds
+   * @param shape      the shape
+   * @param resolution the number of cells of the table
+   */
+  public ParetoLatencyTable(double scale, double shape, int resolution) {
+    this.scale = scale;
+    this.shape = shape;
+    this.resolution = resolution;
+    this.quantiles = new double[resolution + 1];
+    for (int i = 1; i <= resolution; i++) {
+      this.quantiles[i] = quantile((double) i / resolution);
+    }
+  }
+
+  /**
+   * Gets the latency of a random number with the closed form of the distribution.
+   *
+   * @param random the random number in [0, 1)
+   * @return the latency in milliseconds
+   */
+  public double quantile(double random) {
+    return this.scale / Math.pow(random, 1.0 / this.shape);
+  }
+
+  /**
+   * Gets the latency of a random number from the table.
+   *
+   * @param random the random number in [0, 1)
+   * @return the latency in milliseconds
+   */
+  public double lookup(double random) {
+    double position = random * this.resolution;
+    int cell = (int) position;
+    if (cell == 0) {
+      return quantile(random);
+    }
+    double lower = this.quantiles[cell];
+    return lower + (position - cell) * (this.quantiles[cell + 1] - lower);
+  }
+
+  /**
+   * Samples a latency.
+   *
+   * @param random the random number generator
+   * @return the latency rounded to milliseconds
+   */
+  public long sample(Random random) {
+    return Math.round(lookup(random.nextDouble()));
+  }
+}
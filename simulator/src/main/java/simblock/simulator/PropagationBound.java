@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.simulator;
+
+import static simblock.settings.SimulationConfiguration.delta_cutoff;
+import static simblock.settings.SimulationConfiguration.delta_one;
+import static simblock.settings.SimulationConfiguration.delta_two;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import simblock.node.Node;
+import simblock.node.routing.AbstractRoutingTable;
+
+/**
+ * The type Propagation bound computes how fast a block could reach every node of the constructed
+ * network if it was sent along the fastest paths without any protocol overhead: a shortest path
+ * search from the miner of the block over the peer graph whose edges weigh the mean latency of
+ * the connection plus the transmission time of a full block. It takes seconds instead of the
+ * hours of a simulation and gives the baseline the propagation protocols are compared with.
+ *
+ * <p>The graph is copied once into compressed sparse row form with the weights of the edges.
+ * The searches from different sources run in parallel on the common fork-join pool, each with
+ * arrays of its own, and are printed in the order of the sources, so the output does not depend
+ * on the number of threads.
+ */
+public class PropagationBound {
+
+  /**
+   * The simulated nodes, by index.
+   */
+  private final Node[] nodes;
+
+  /**
+   * The edges of node i are at offsets[i] to offsets[i + 1] of targets and weights.
+   */
+  private final int[] offsets;
+  private final int[] targets;
+  private final long[] weights;
+
+  /**
+   * Copies the peer graph of the simulated nodes. The weight of the edge from a node to a
+   * neighbor is the base latency of the connection if
+   * {@link simblock.settings.NetworkConfiguration#LINK_LATENCY} is enabled or the mean latency of
+   * the nodes otherwise, plus the time to transmit {@link
+   * simblock.settings.SimulationConfiguration#BLOCK_SIZE} bytes at the bandwidth of the nodes.
+   *
+   * @param context the simulation
+   */
+  public PropagationBound(SimulationContext context) {
+    List<Node> simulatedNodes = context.getSimulator().getSimulatedNodes();
+    Network network = context.getNetwork();
+    long blockSize = context.getConfig().BLOCK_SIZE;
+    this.nodes = simulatedNodes.toArray(new Node[0]);
+    this.offsets = new int[this.nodes.length + 1];
+    for (int i = 0; i < this.nodes.length; i++) {
+      this.offsets[i + 1] = this.offsets[i] + this.nodes[i].getNeighborCount();
+    }
+    this.targets = new int[this.offsets[this.nodes.length]];
+    this.weights = new long[this.targets.length];
+    for (int i = 0; i < this.nodes.length; i++) {
+      Node from = this.nodes[i];
+      AbstractRoutingTable table = from.getRoutingTable();
+      for (int j = 0, count = from.getNeighborCount(); j < count; j++) {
+        Node to = from.getNeighbor(j);
+        long latency = table.getLinkLatency(to);
+        if (latency < 0) {
+          latency = network.getMeanLatency(from, to);
+        }
+        long bandwidth = Math.max(1, network.getBandwidth(from.getRegion(), to.getRegion()) / 1000);
+        this.targets[this.offsets[i] + j] = to.getNodeID() - 1;
+        this.weights[this.offsets[i] + j] = latency + blockSize / bandwidth;
+      }
+    }
+  }
+
+  /**
+   * Draws the miners the bound is computed for, with probabilities proportional to their mining
+   * power like the miners of blocks, without drawing a miner twice. The draw uses a random number
+   * generator of its own seeded with the seed of the simulation, so computing the bound does not
+   * change the simulation.
+   *
+   * @param count the number of sources
+   * @param seed  the seed
+   * @return the indices of the sources in ascending order, all miners if there are at most count
+   */
+  public int[] drawSources(int count, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    List<double[]> keys = new ArrayList<>();
+    for (int i = 0; i < this.nodes.length; i++) {
+      long miningPower = this.nodes[i].getMiningPower();
+      if (miningPower > 0) {
+        // The largest keys u^(1/w) are a weighted sample without replacement
+        keys.add(new double[] {Math.pow(random.nextDouble(), 1.0 / miningPower), i});
+      }
+    }
+    keys.sort((a, b) -> Double.compare(b[0], a[0]));
+    int[] sources = new int[Math.min(count, keys.size())];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = (int) keys.get(i)[1];
+    }
+    Arrays.sort(sources);
+    return sources;
+  }
+
+  /**
+   * Computes the bound of every source and prints it in the format of
+   * {@link Simulator#printAllPropagation(PrintWriter)}, keyed by the node id of the source
+   * instead of a block id.
+   *
+   * @param pw      the writer
+   * @param sources the indices of the sources
+   */
+  public void print(PrintWriter pw, int[] sources) {
+    long[][] coverages = IntStream.range(0, sources.length).parallel()
+        .mapToObj(i -> getCoverage(sources[i])).toArray(long[][]::new);
+    pw.print("{");
+    for (int i = 0; i < sources.length; i++) {
+      if (i > 0) {
+        pw.println(",");
+      }
+      pw.print("\"" + this.nodes[sources[i]].getNodeID() + "\": [");
+      long[] coverage = coverages[i];
+      for (int j = 0; j < coverage.length; j += 3) {
+        if (j > 0) {
+          pw.print(",");
+        }
+        pw.print("[" + coverage[j] + "," + coverage[j + 1] + "," + coverage[j + 2] + "]");
+      }
+      pw.print("]");
+    }
+    pw.print("}");
+    pw.flush();
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from a source. The nodes are settled in the order of their arrival
+   * time, so they are counted like the arrivals of a simulated block: an arrival within the delta
+   * of the last recorded time is added to it, otherwise it starts a new time.
+   *
+   * @param source the index of the source
+   * @return the triples of time in milliseconds, count and mining power, starting with 0, 0, 0
+   */
+  long[] getCoverage(int source) {
+    long[] arrival = new long[this.nodes.length];
+    Arrays.fill(arrival, Long.MAX_VALUE);
+    boolean[] settled = new boolean[this.nodes.length];
+    Heap heap = new Heap();
+    arrival[source] = 0;
+    heap.add(0, source);
+    long[] coverage = new long[48];
+    int size = 3;
+    while (!heap.isEmpty()) {
+      long time = heap.peekTime();
+      int node = heap.poll();
+      if (settled[node]) {
+        continue;
+      }
+      settled[node] = true;
+      if (node != source) {
+        int delta = time < delta_cutoff ? delta_one : delta_two;
+        if (time - coverage[size - 3] < delta) {
+          coverage[size - 2]++;
+          coverage[size - 1] += this.nodes[node].getMiningPower();
+        } else {
+          if (size + 3 > coverage.length) {
+            coverage = Arrays.copyOf(coverage, coverage.length * 2);
+          }
+          coverage[size] = time;
+          coverage[size + 1] = 1;
+          coverage[size + 2] = this.nodes[node].getMiningPower();
+          size += 3;
+        }
+      }
+      for (int edge = this.offsets[node]; edge < this.offsets[node + 1]; edge++) {
+        int target = this.targets[edge];
+        long candidate = time + this.weights[edge];
+        if (candidate < arrival[target]) {
+          arrival[target] = candidate;
+          heap.add(candidate, target);
+        }
+      }
+    }
+    return Arrays.copyOf(coverage, size);
+  }
+
+  /**
+   * A binary min-heap of nodes by time on primitive arrays. A node is added again when its time
+   * decreases, the outdated entries are skipped when they are polled.
+   */
+  private static final class Heap {
+    private long[] times = new long[64];
+    private int[] nodes = new int[64];
+    private int size = 0;
+
+    private boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    private long peekTime() {
+      return this.times[0];
+    }
+
+    private void add(long time, int node) {
+      if (this.size == this.times.length) {
+        this.times = Arrays.copyOf(this.times, this.size * 2);
+        this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+      }
+      int i = this.size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (this.times[parent] <= time) {
+          break;
+        }
+        this.times[i] = this.times[parent];
+        this.nodes[i] = this.nodes[parent];
+        i = parent;
+      }
+      this.times[i] = time;
+      this.nodes[i] = node;
+    }
+
+    private int poll() {
+      int top = this.nodes[0];
+      long time = this.times[--this.size];
+      int node = this.nodes[this.size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= this.size) {
+          break;
+        }
+        if (child + 1 < this.size && this.times[child + 1] < this.times[child]) {
+          child++;
+        }
+        if (this.times[child] >= time) {
+          break;
+        }
+        this.times[i] = this.times[child];
+        this.nodes[i] = this.nodes[child];
+        i = child;
+      }
+      this.times[i] = time;
+      this.nodes[i] = node;
+      return top;
+    }
+  }
+}
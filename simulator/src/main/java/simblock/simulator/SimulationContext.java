@@ -0,0 +1,418 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Random;
+import simblock.block.Block;
+import simblock.node.Node;
+import simblock.node.consensus.AggregatedMiningScheduler;
+import simblock.settings.NetworkConfiguration;
+import simblock.settings.SimulationConfiguration;
+import simblock.simulator.stop.StopCondition;
+import simblock.task.AbstractMintingTask;
+
+/**
+ * The type Simulation context owns the complete state of a single simulation: the configuration,
+ * the random number generator, the {@link Timer}, the {@link Simulator}, the {@link Network} and
+ * the output writers. Every node knows the context it belongs to, so independent simulations
+ * can run concurrently in the same JVM as long as each uses its own context. A context itself
+ * is not thread safe.
+ *
+ * <p>If a simulation is run by a {@link ParallelEngine}, every partition has a context of its
+ * own with its own random number generator, timer and network, sharing the configuration and
+ * the node list with the context of the whole simulation.
+ */
+public class SimulationContext implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation parameters.
+   */
+  private final SimulationConfiguration config;
+
+  /**
+   * The network parameters.
+   */
+  private final NetworkConfiguration networkConfig;
+
+  /**
+   * The only source of randomness of the simulation, a simulation is reproducible with the same
+   * seed.
+   */
+  private final Random random;
+
+  /**
+   * The seed of the random number generator.
+   */
+  private final long seed;
+
+  private final Timer timer;
+  private final Simulator simulator;
+  private final Network network;
+  private final FlowNetwork flowNetwork;
+  private final ChurnModel churnModel;
+  private final AggregatedMiningScheduler aggregatedMiningScheduler;
+
+  /**
+   * The condition that ends the simulation, see
+   * {@link SimulationConfiguration#STOP_CONDITION}.
+   */
+  private StopCondition stopCondition;
+
+  /**
+   * The height of the blocks mined next, one more than the highest block a miner has started
+   * to mine on.
+   */
+  private int mintingHeight = 1;
+
+  /**
+   * The partition contexts by region, null unless the simulation is run by a
+   * {@link ParallelEngine}.
+   */
+  private SimulationContext[] regionContexts = null;
+
+  /**
+   * Ids are handed out in steps of the partition count, offset by the partition index, so they
+   * are unique across partitions.
+   */
+  private final int idStride;
+  private final int idOffset;
+
+  /**
+   * Latest known block id.
+   */
+  private int latestBlockId = 0;
+
+  /**
+   * Latest known transaction id.
+   */
+  private int latestTransactionId = 0;
+
+  /**
+   * The output writer, only used in debug mode.
+   */
+  private transient PrintWriter outJsonFile;
+
+  /**
+   * The writer of the region list.
+   */
+  private transient PrintWriter staticJsonFile;
+
+  /**
+   * The writer of the propagation statistics.
+   */
+  private transient PrintWriter outStatFile;
+
+  /**
+   * Instantiates a new Simulation context.
+   *
+   * @param config        the simulation parameters
+   * @param networkConfig the network parameters
+   * @param seed          the seed of the random number generator
+   */
+  public SimulationContext(
+      SimulationConfiguration config, NetworkConfiguration networkConfig, long seed) {
+    this.config = config;
+    this.networkConfig = networkConfig;
+    this.seed = seed;
+    this.random = new Random(seed);
+    this.idStride = 1;
+    this.idOffset = 0;
+    this.timer = new Timer(this);
+    this.simulator = new Simulator(this);
+    this.network = new Network(this);
+    this.flowNetwork = new FlowNetwork(this);
+    this.churnModel = new ChurnModel(this);
+    this.aggregatedMiningScheduler = new AggregatedMiningScheduler(this);
+    this.stopCondition = StopCondition.parse(config.STOP_CONDITION);
+  }
+
+  /**
+   * Instantiates the context of a partition. The partition draws its seed from the random
+   * number generator of the whole simulation.
+   *
+   * @param parent     the context of the whole simulation
+   * @param partition  the index of the partition
+   * @param partitions the number of partitions
+   */
+  SimulationContext(SimulationContext parent, int partition, int partitions) {
+    this.config = parent.config;
+    this.networkConfig = parent.networkConfig;
+    this.seed = parent.random.nextLong();
+    this.random = new Random(this.seed);
+    this.idStride = partitions;
+    this.idOffset = partition;
+    this.timer = new Timer(this);
+    this.simulator = new Simulator(this, parent.simulator);
+    this.network = new Network(this, parent.network);
+    this.flowNetwork = new FlowNetwork(this);
+    this.churnModel = new ChurnModel(this);
+    this.aggregatedMiningScheduler = new AggregatedMiningScheduler(this);
+    this.stopCondition = StopCondition.parse(config.STOP_CONDITION);
+  }
+
+  /**
+   * Gets the simulation parameters.
+   *
+   * @return the simulation configuration
+   */
+  public SimulationConfiguration getConfig() {
+    return this.config;
+  }
+
+  /**
+   * Gets the network parameters.
+   *
+   * @return the network configuration
+   */
+  public NetworkConfiguration getNetworkConfig() {
+    return this.networkConfig;
+  }
+
+  /**
+   * Gets the random number generator of the simulation.
+   *
+   * @return the random number generator
+   */
+  public Random getRandom() {
+    return this.random;
+  }
+
+  /**
+   * Gets the seed of the random number generator.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return this.seed;
+  }
+
+  /**
+   * Gets the timer.
+   *
+   * @return the timer
+   */
+  public Timer getTimer() {
+    return this.timer;
+  }
+
+  /**
+   * Gets the simulator.
+   *
+   * @return the simulator
+   */
+  public Simulator getSimulator() {
+    return this.simulator;
+  }
+
+  /**
+   * Gets the network.
+   *
+   * @return the network
+   */
+  public Network getNetwork() {
+    return this.network;
+  }
+
+  /**
+   * Gets the fluid-flow model of the bandwidth.
+   *
+   * @return the flow network
+   */
+  public FlowNetwork getFlowNetwork() {
+    return this.flowNetwork;
+  }
+
+  /**
+   * Gets the churn of the nodes.
+   *
+   * @return the churn model
+   */
+  public ChurnModel getChurnModel() {
+    return this.churnModel;
+  }
+
+  /**
+   * Gets the network wide mining scheduler.
+   *
+   * @return the aggregated mining scheduler
+   */
+  public AggregatedMiningScheduler getAggregatedMiningScheduler() {
+    return this.aggregatedMiningScheduler;
+  }
+
+  /**
+   * Gets the condition that ends the simulation.
+   *
+   * @return the stop condition
+   */
+  public StopCondition getStopCondition() {
+    return this.stopCondition;
+  }
+
+  /**
+   * Replaces the stop condition by a new one of {@link SimulationConfiguration#STOP_CONDITION}
+   * before another simulation is run in this context.
+   */
+  public void resetStopCondition() {
+    this.stopCondition = StopCondition.parse(this.config.STOP_CONDITION);
+    this.mintingHeight = 1;
+  }
+
+  /**
+   * Gets the height of the blocks mined next.
+   *
+   * @return one more than the height of the highest block a miner has started to mine on
+   */
+  public int getMintingHeight() {
+    return this.mintingHeight;
+  }
+
+  /**
+   * Notifies the stop condition that a minting task is about to mine.
+   *
+   * @param task the minting task
+   * @return true if the simulation stops and the task must not mine
+   */
+  public boolean stopBeforeMinting(AbstractMintingTask task) {
+    Block parent = task.getParent();
+    if (parent == null) {
+      return false;
+    }
+    this.mintingHeight = Math.max(this.mintingHeight, parent.getHeight() + 1);
+    this.stopCondition.onMinting(parent);
+    return checkStopCondition();
+  }
+
+  /**
+   * Notifies the stop condition that a block has arrived at a node.
+   *
+   * @param block the block
+   * @param node  the node
+   */
+  public void blockArrived(Block block, Node node) {
+    this.stopCondition.onArrival(block, node);
+    checkStopCondition();
+  }
+
+  /**
+   * Stops the timer if the stop condition is met.
+   *
+   * @return true if the simulation stops
+   */
+  public boolean checkStopCondition() {
+    if (this.stopCondition.isMet()) {
+      this.timer.stop();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the context the nodes of a region are simulated in.
+   *
+   * @param region the region
+   * @return the partition context of the region or this context if the simulation is not
+   *     partitioned
+   */
+  public SimulationContext getNodeContext(int region) {
+    return this.regionContexts == null ? this : this.regionContexts[region];
+  }
+
+  /**
+   * Sets the partition contexts by region.
+   *
+   * @param regionContexts the contexts or null to simulate all nodes in this context
+   */
+  void setRegionContexts(SimulationContext[] regionContexts) {
+    this.regionContexts = regionContexts;
+  }
+
+  /**
+   * Gets a new block id.
+   *
+   * @return the block id
+   */
+  public int nextBlockId() {
+    return this.latestBlockId++ * this.idStride + this.idOffset;
+  }
+
+  /**
+   * Gets a new transaction id.
+   *
+   * @return the transaction id
+   */
+  public int nextTransactionId() {
+    return this.latestTransactionId++ * this.idStride + this.idOffset;
+  }
+
+  /**
+   * Gets the output writer.
+   *
+   * @return the writer or null if logging is disabled
+   */
+  public PrintWriter getOutJsonFile() {
+    return this.outJsonFile;
+  }
+
+  /**
+   * Sets the output writer.
+   *
+   * @param outJsonFile the writer
+   */
+  public void setOutJsonFile(PrintWriter outJsonFile) {
+    this.outJsonFile = outJsonFile;
+  }
+
+  /**
+   * Gets the writer of the region list.
+   *
+   * @return the writer
+   */
+  public PrintWriter getStaticJsonFile() {
+    return this.staticJsonFile;
+  }
+
+  /**
+   * Sets the writer of the region list.
+   *
+   * @param staticJsonFile the writer
+   */
+  public void setStaticJsonFile(PrintWriter staticJsonFile) {
+    this.staticJsonFile = staticJsonFile;
+  }
+
+  /**
+   * Gets the writer of the propagation statistics.
+   *
+   * @return the writer
+   */
+  public PrintWriter getOutStatFile() {
+    return this.outStatFile;
+  }
+
+  /**
+   * Sets the writer of the propagation statistics.
+   *
+   * @param outStatFile the writer
+   */
+  public void setOutStatFile(PrintWriter outStatFile) {
+    this.outStatFile = outStatFile;
+  }
+}
@@ -16,15 +16,16 @@
 
 package simblock.simulator;
 
-import static simblock.simulator.Timer.getCurrentTime;
-
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import simblock.block.Block;
 import simblock.node.Node;
+import simblock.node.routing.PeerSampler;
 
 import static simblock.settings.SimulationConfiguration.delta_one;
 import static simblock.settings.SimulationConfiguration.delta_two;
@@ -34,34 +35,94 @@ import static simblock.settings.SimulationConfiguration.delta_cutoff;;
  * The type Simulator is tasked with maintaining the list of simulated nodes and managing the
  * block interval. It observes and manages the arrival of new blocks at the simulation level.
  */
-public class Simulator {
+public class Simulator implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the simulator belongs to.
+   */
+  private final SimulationContext context;
 
-  private static boolean first = true;
+  private boolean first = true;
 
   /**
    * A list of nodes that will be used in a simulation.
    */
-  private static final ArrayList<Node> simulatedNodes = new ArrayList<>();
+  private final ArrayList<Node> simulatedNodes = new ArrayList<>();
 
   /**
    * The target block interval in milliseconds.
    */
-  private static long targetInterval;
+  private long targetInterval;
+
+  /**
+   * The simulator of the whole network if this simulator belongs to a partition of a
+   * {@link ParallelEngine}, null otherwise. A partition shares the node list of the whole
+   * network and only buffers the block arrivals it observes.
+   */
+  private final Simulator parent;
+
+  /**
+   * The block arrivals observed by a partition that have not been passed to the parent yet.
+   */
+  private final ArrayList<Arrival> arrivals = new ArrayList<>();
+
+  /**
+   * The pools the routing tables draw their peers from, created when a network is first
+   * connected.
+   */
+  private transient PeerSampler peerSampler;
+
+  /**
+   * Instantiates a new Simulator.
+   *
+   * @param context the simulation the simulator belongs to
+   */
+  public Simulator(SimulationContext context) {
+    this(context, null);
+  }
+
+  /**
+   * Instantiates a new Simulator of a partition.
+   *
+   * @param context the partition the simulator belongs to
+   * @param parent  the simulator of the whole network
+   */
+  Simulator(SimulationContext context, Simulator parent) {
+    this.context = context;
+    this.parent = parent;
+  }
 
   /**
    * Get simulated nodes list.
    *
    * @return the array list
    */
-  public static ArrayList<Node> getSimulatedNodes() {
-    return simulatedNodes;
+  public ArrayList<Node> getSimulatedNodes() {
+    return parent != null ? parent.getSimulatedNodes() : simulatedNodes;
   }
 
-  public static void resetNodeList() {
+  public void resetNodeList() {
     simulatedNodes.clear();
+    peerSampler = null;
   }
 
-  public static void resetPropagationLists() {
+  /**
+   * Gets the pools the routing tables draw their peers from.
+   *
+   * @return the peer sampler of the simulated nodes
+   */
+  public PeerSampler getPeerSampler() {
+    if (parent != null) {
+      return parent.getPeerSampler();
+    }
+    if (peerSampler == null) {
+      peerSampler = new PeerSampler(simulatedNodes, this.context.getSeed());
+    }
+    return peerSampler;
+  }
+
+  public void resetPropagationLists() {
     propagationCount.clear();
     propagationCountMP.clear();
     propagationTimes.clear();
@@ -73,8 +134,8 @@ public class Simulator {
    *
    * @return the target block interval in milliseconds
    */
-  public static long getTargetInterval() {
-    return targetInterval;
+  public long getTargetInterval() {
+    return parent != null ? parent.getTargetInterval() : targetInterval;
   }
 
   /**
@@ -82,7 +143,7 @@ public class Simulator {
    *
    * @param interval - block interval in milliseconds
    */
-  public static void setTargetInterval(long interval) {
+  public void setTargetInterval(long interval) {
     targetInterval = interval;
   }
 
@@ -91,7 +152,7 @@ public class Simulator {
    *
    * @param node the node
    */
-  public static void addNode(Node node) {
+  public void addNode(Node node) {
     simulatedNodes.add(node);
   }
 
@@ -101,7 +162,7 @@ public class Simulator {
    * @param node the node
    */
   @SuppressWarnings("unused")
-  public static void removeNode(Node node) {
+  public void removeNode(Node node) {
     simulatedNodes.remove(node);
   }
 
@@ -116,7 +177,7 @@ public class Simulator {
   /**
    * A list of observed {@link Block} instances.
    */
-  private static final ArrayList<Block> observedBlocks = new ArrayList<>();
+  private final ArrayList<Block> observedBlocks = new ArrayList<>();
 
   /**
    * A list of observed block propagation times. The map key represents the id of the node that
@@ -125,14 +186,14 @@ public class Simulator {
    * time, effectively
    * recording the absolute time it took for a node to witness the block.
    */
-  private static final ArrayList<LinkedHashMap<Integer, Long>> observedPropagations =
+  private final ArrayList<LinkedHashMap<Integer, Long>> observedPropagations =
       new ArrayList<>();
 
-  private static ArrayList<ArrayList<Integer>> propagationCount = new ArrayList<>();
+  private final ArrayList<ArrayList<Integer>> propagationCount = new ArrayList<>();
 
-  private static ArrayList<ArrayList<Long>> propagationCountMP = new ArrayList<>();
+  private final ArrayList<ArrayList<Long>> propagationCountMP = new ArrayList<>();
 
-  private static ArrayList<ArrayList<Long>> propagationTimes = new ArrayList<>();
+  private final ArrayList<ArrayList<Long>> propagationTimes = new ArrayList<>();
 
   /*
    * function updates the propagation listes
@@ -140,9 +201,9 @@ public class Simulator {
    * if a propagtion time is within the delta the count gets updated
    * otherwise a the new longest propagtion time is added in propagtionTimes and a zero is added in propagtionCount
    */
-  private static void addToList(Block block, Node node) {
+  private void addToList(Block block, Node node, long time) {
     int index = observedBlocks.indexOf(block);
-    long propagation_time = getCurrentTime() - block.getTime();
+    long propagation_time = time - block.getTime();
     int delta = propagation_time < delta_cutoff ? delta_one : delta_two;
     if (propagation_time - propagationTimes.get(index).get(propagationTimes.get(index).size() - 1) < delta) {
       propagationCount.get(index).set(propagationCount.get(index).size() - 1, propagationCount.get(index).get(propagationCount.get(index).size() - 1) + 1);
@@ -162,10 +223,28 @@ public class Simulator {
    * @param block the block
    * @param node  the node
    */
-  public static void arriveBlock(Block block, Node node) {
+  public void arriveBlock(Block block, Node node) {
+    long time = this.context.getTimer().getCurrentTime();
+    if (parent != null) {
+      arrivals.add(new Arrival(block, node, time));
+    } else {
+      arriveBlock(block, node, time);
+    }
+    this.context.blockArrived(block, node);
+  }
+
+  /**
+   * Handle the arrival of a new block at the provided time. Arrivals have to be passed in the
+   * order of their time.
+   *
+   * @param block the block
+   * @param node  the node
+   * @param time  the arrival time in milliseconds
+   */
+  void arriveBlock(Block block, Node node, long time) {
     // If block is already seen by any node
     if (observedBlocks.contains(block)) {
-      addToList(block,node);
+      addToList(block, node, time);
     } else {
       // If the block has not been seen by any node
       observedBlocks.add(block);
@@ -175,6 +254,34 @@ public class Simulator {
     }
   }
 
+  /**
+   * Removes the buffered block arrivals of a partition.
+   *
+   * @return the arrivals in the order they were observed
+   */
+  List<Arrival> drainArrivals() {
+    List<Arrival> drained = new ArrayList<>(arrivals);
+    arrivals.clear();
+    return drained;
+  }
+
+  /**
+   * A block arrival buffered by a partition.
+   */
+  static final class Arrival implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final Block block;
+    final Node node;
+    final long time;
+
+    Arrival(Block block, Node node, long time) {
+      this.block = block;
+      this.node = node;
+      this.time = time;
+    }
+  }
+
   /**
    * Print propagation information about the propagation of the provided block  in the format:
    *
@@ -187,9 +294,9 @@ public class Simulator {
    *
    * @param block     the block
    */
-  private static void printPropagation(PrintWriter pw, Block block, ArrayList<Integer> count, ArrayList<Long> mpCount,  ArrayList<Long> times) {
-    // Print block and its height
-    pw.print("\"" + block + "\": [");
+  private void printPropagation(PrintWriter pw, Block block, ArrayList<Integer> count, ArrayList<Long> mpCount,  ArrayList<Long> times) {
+    // Print the block id, it is unique within a run unlike the default toString
+    pw.print("\"" + block.getId() + "\": [");
     boolean first = true;
     for (int i = 0; i < count.size(); i++) {
       if (!first)
@@ -210,7 +317,7 @@ public class Simulator {
    * Print propagation information about all blocks, internally relying on
    * {@link Simulator#printPropagation(Block, LinkedHashMap)}.
    */
-  public static void printAllPropagation(PrintWriter pw) {
+  public void printAllPropagation(PrintWriter pw) {
     for (int i = 0; i < observedBlocks.size(); i++) {
       if (!first)
         pw.println(",");
@@ -221,7 +328,7 @@ public class Simulator {
     pw.flush();
   }
 
-  public static void initPrint(PrintWriter pw) {
+  public void initPrint(PrintWriter pw) {
     first = true;
     pw.print("{");
   }
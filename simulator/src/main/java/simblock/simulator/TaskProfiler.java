@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The type Task profiler records per concrete task class how many tasks were scheduled,
+ * executed and cancelled and the wall time spent running them, as well as the peak depth of the
+ * task queue. A {@link Timer} only profiles if
+ * {@link simblock.settings.SimulationConfiguration#PROFILE_TASKS} is enabled. Message
+ * records are recorded under the class of the message task they stand for and count towards the
+ * queue depth.
+ */
+public class TaskProfiler implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The statistics of a task class.
+   */
+  private static final class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    long scheduled = 0;
+    long executed = 0;
+    long cancelled = 0;
+    long nanos = 0;
+  }
+
+  private final Map<Class<?>, Entry> entries = new LinkedHashMap<>();
+
+  /**
+   * The maximum number of tasks in the task queue, including cancelled tasks that have not been
+   * removed yet.
+   */
+  private long peakQueueDepth = 0;
+
+  private Entry entry(Class<?> taskClass) {
+    Entry entry = this.entries.get(taskClass);
+    if (entry == null) {
+      entry = new Entry();
+      this.entries.put(taskClass, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Records a scheduled task.
+   *
+   * @param taskClass  the class of the task
+   * @param queueDepth the number of tasks in the queue afterwards
+   */
+  public void scheduled(Class<?> taskClass, long queueDepth) {
+    entry(taskClass).scheduled++;
+    this.peakQueueDepth = Math.max(this.peakQueueDepth, queueDepth);
+  }
+
+  /**
+   * Records an executed task.
+   *
+   * @param taskClass the class of the task
+   * @param nanos     the wall time spent in its run method in nanoseconds
+   */
+  public void executed(Class<?> taskClass, long nanos) {
+    Entry entry = entry(taskClass);
+    entry.executed++;
+    entry.nanos += nanos;
+  }
+
+  /**
+   * Records a cancelled task.
+   *
+   * @param taskClass the class of the task
+   */
+  public void cancelled(Class<?> taskClass) {
+    entry(taskClass).cancelled++;
+  }
+
+  /**
+   * Adds the statistics of another profiler, the peak queue depths are summed.
+   *
+   * @param other the other profiler
+   */
+  public void add(TaskProfiler other) {
+    for (Map.Entry<Class<?>, Entry> otherEntry : other.entries.entrySet()) {
+      Entry entry = entry(otherEntry.getKey());
+      entry.scheduled += otherEntry.getValue().scheduled;
+      entry.executed += otherEntry.getValue().executed;
+      entry.cancelled += otherEntry.getValue().cancelled;
+      entry.nanos += otherEntry.getValue().nanos;
+    }
+    this.peakQueueDepth += other.peakQueueDepth;
+  }
+
+  /**
+   * Removes all statistics.
+   */
+  public void reset() {
+    this.entries.clear();
+    this.peakQueueDepth = 0;
+  }
+
+  /**
+   * Gets the peak depth of the task queue.
+   *
+   * @return the maximum number of queued tasks
+   */
+  public long getPeakQueueDepth() {
+    return this.peakQueueDepth;
+  }
+
+  /**
+   * Prints a table of the statistics, one line per task class.
+   *
+   * @param out the stream
+   */
+  public void print(PrintStream out) {
+    out.println(String.format("%-24s %12s %12s %12s %12s", "Task", "scheduled", "executed",
+        "cancelled", "run ms"));
+    for (Map.Entry<Class<?>, Entry> entry : this.entries.entrySet()) {
+      Entry stats = entry.getValue();
+      out.println(String.format("%-24s %12d %12d %12d %12d", entry.getKey().getSimpleName(),
+          stats.scheduled, stats.executed, stats.cancelled, stats.nanos / 1000000));
+    }
+    out.println("Peak task queue depth: " + this.peakQueueDepth);
+  }
+
+  /**
+   * Writes the statistics as JSON.
+   *
+   * @param pw the writer
+   */
+  public void printJson(PrintWriter pw) {
+    pw.print("{\"peak-queue-depth\":" + this.peakQueueDepth + ",\"tasks\":{");
+    boolean first = true;
+    for (Map.Entry<Class<?>, Entry> entry : this.entries.entrySet()) {
+      if (!first) {
+        pw.print(",");
+      }
+      first = false;
+      Entry stats = entry.getValue();
+      pw.print("\"" + entry.getKey().getSimpleName() + "\":{");
+      pw.print("\"scheduled\":" + stats.scheduled + ",");
+      pw.print("\"executed\":" + stats.executed + ",");
+      pw.print("\"cancelled\":" + stats.cancelled + ",");
+      pw.print("\"run-nanos\":" + stats.nanos);
+      pw.print("}");
+    }
+    pw.print("}}");
+    pw.flush();
+  }
+}
@@ -16,112 +16,232 @@
 
 package simblock.simulator;
 
-import static simblock.settings.SimulationConfiguration.FILTER_MINING_TASKS;
-import static simblock.settings.SimulationConfiguration.MAX_MINING_TASKS;
-
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 
+import simblock.settings.SimulationConfiguration;
+import simblock.simulator.fel.AbstractFutureEventList;
+import simblock.simulator.fel.MessageRecords;
+import simblock.simulator.fel.ScheduledTask;
+import simblock.task.AbstractMessageTask;
+import simblock.task.BlockMessageTask;
+import simblock.task.CmpctBlockMessageTask;
+import simblock.task.InvMessageTask;
+import simblock.task.RecMessageTask;
 import simblock.task.Task;
+import simblock.task.TransactionTask;
 import simblock.block.Block;
+import simblock.block.Transaction;
+import simblock.node.Node;
 
 /**
  * The type Timer schedules the execution of simulation tasks stored in a Future Event List (FEL)
  * . Each {@link Task}
- * can be scheduled for execution. Tasks that have been run get removed from the FEL.
+ * can be scheduled for execution. Tasks that have been run get removed from the FEL. Inv, rec,
+ * block, compact block and transaction messages are stored as {@link MessageRecords} instead and
+ * run in the same order as if they were tasks of the FEL.
  */
-public class Timer {
+public class Timer implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The simulation the timer belongs to.
+   */
+  private final SimulationContext context;
+
+  /**
+   * A sorted queue of scheduled tasks, see {@link SimulationConfiguration#FUTURE_EVENT_LIST}.
+   */
+  private final AbstractFutureEventList taskQueue;
 
   /**
-   * A sorted queue of scheduled tasks.
+   * The scheduled messages, stored as packed records instead of tasks. They share the insertion
+   * numbers with the task queue, so both are run in the same order as a single queue.
    */
-  private static final PriorityQueue<ScheduledTask> taskQueue = new PriorityQueue<>();
+  private final MessageRecords messages = new MessageRecords();
+
+  /**
+   * The blocks of the scheduled messages by their id.
+   */
+  private Block[] blocks = new Block[1024];
+
+  /**
+   * The transactions of the scheduled messages by their id.
+   */
+  private Transaction[] transactions = new Transaction[1024];
 
   /**
    * A map containing a mapping of all tasks to their ScheduledTask counterparts. When
    * executed, the key - value
    * pair is to be removed from the mapping.
    */
-  private static final Map<Task, ScheduledTask> taskMap = new HashMap<>();
+  private final Map<Task, ScheduledTask> taskMap = new HashMap<>();
 
   /**
    * Initial simulation time in milliseconds.
    */
-  private static long currentTime = 0L;
-  public static long TASK_COUNTS = 0;
-
-  public static final Map<Block,Long[]> BlockMiningTaksMap = new HashMap<>();
-
-  /**
-   * Represents a {@link Task} that is scheduled to be executed.
-   */
-  private static class ScheduledTask implements Comparable<ScheduledTask> {
-    private final Task task;
-    private final long scheduledTime;
-
-    /**
-     * Instantiates a new ScheduledTask.
-     *
-     * @param task      - the task to be executed
-     * @param scheduledTime - the simulation time at which the task is to be executed
-     */
-    private ScheduledTask(Task task, long scheduledTime) {
-      this.task = task;
-      this.scheduledTime = scheduledTime;
-    }
-
-    /**
-     * Gets the task.
-     *
-     * @return the {@link Task} instance
-     */
-    private Task getTask() {
-      return this.task;
-    }
-
-    /**
-     * Gets the scheduled time at which the task is to be executed.
-     *
-     * @return the scheduled time
-     */
-    private long getScheduledTime() {
-      return this.scheduledTime;
-    }
-
-    /**
-     * Compares the two scheduled tasks.
-     *
-     * @param o other task
-     * @return 1 if self is executed later, 0 if concurrent and -1 if self is to be executed before.
-     */
-    @Override
-    public int compareTo(ScheduledTask o) {
-      if (this.equals(o)) {
-        return 0;
-      }
-      int order = Long.signum(this.scheduledTime - o.scheduledTime);
-      if (order != 0) {
-        return order;
-      }
-      order = System.identityHashCode(this) - System.identityHashCode(o);
-      return order;
+  private long currentTime = 0L;
+  private long taskCounts = 0;
+
+  /**
+   * Insertion number of the next scheduled task.
+   */
+  private long nextSequence = 0L;
+
+  /**
+   * Number of cancelled tasks that are still stored in the task queue.
+   */
+  private long liveTombstones = 0;
+
+  /**
+   * Number of tasks cancelled since the last reset.
+   */
+  private long cancelledTasks = 0;
+
+  /**
+   * The task queue is compacted once it holds more tombstones than this and they make up half
+   * of the queue.
+   */
+  private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+
+  /**
+   * Limits the mining tasks on the same block, see
+   * {@link SimulationConfiguration#FILTER_MINING_TASKS}.
+   */
+  private final MiningTaskFilter miningTaskFilter = new MiningTaskFilter();
+
+  /**
+   * The profiler of the executed tasks, null unless
+   * {@link SimulationConfiguration#PROFILE_TASKS} is enabled.
+   */
+  private final TaskProfiler profiler;
+
+  /**
+   * Messages to nodes of other partitions, null unless the timer belongs to a partition of a
+   * {@link ParallelEngine}.
+   */
+  private List<ScheduledTask> outbox = null;
+
+  /**
+   * The minimum delay of a message to another partition in milliseconds.
+   */
+  private long lookahead = 0;
+
+  /**
+   * Whether the stop condition of the simulation is met.
+   */
+  private boolean stopped = false;
+
+  /**
+   * Instantiates a new Timer.
+   *
+   * @param context the simulation the timer belongs to
+   */
+  public Timer(SimulationContext context) {
+    this.context = context;
+    this.taskQueue = createFutureEventList();
+    this.profiler = context.getConfig().PROFILE_TASKS ? new TaskProfiler() : null;
+  }
+
+  /**
+   * Instantiates the Future Event List configured in
+   * {@link SimulationConfiguration#FUTURE_EVENT_LIST}.
+   *
+   * @return the future event list
+   */
+  private AbstractFutureEventList createFutureEventList() {
+    String futureEventList = this.context.getConfig().FUTURE_EVENT_LIST;
+    try {
+      return (AbstractFutureEventList) Class.forName(futureEventList).getConstructor()
+          .newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unknown future event list " + futureEventList, e);
     }
   }
 
-  public static void resetTimer() {
+  public void resetTimer() {
     taskQueue.clear();
+    messages.clear();
+    Arrays.fill(blocks, null);
+    Arrays.fill(transactions, null);
     taskMap.clear();
     currentTime = 0;
-    TASK_COUNTS = 0;
+    taskCounts = 0;
+    nextSequence = 0;
+    liveTombstones = 0;
+    cancelledTasks = 0;
+    stopped = false;
+    miningTaskFilter.reset();
+    if (profiler != null) {
+      profiler.reset();
+    }
+    if (outbox != null) {
+      outbox.clear();
+    }
   }
 
   /**
-   * Runs a {@link ScheduledTask}.
+   * Lets the timer schedule only the tasks of the nodes in its own context, messages to nodes
+   * of other contexts are collected in an outbox instead.
+   *
+   * @param lookahead the minimum delay of a message to another partition in milliseconds
+   */
+  void enablePartitioning(long lookahead) {
+    this.outbox = new ArrayList<>();
+    this.lookahead = lookahead;
+  }
+
+  /**
+   * Gets the next scheduled task that has not been cancelled, discarding the cancelled tasks in
+   * front of it.
+   *
+   * @return the next scheduled task or null if task queue is empty
+   */
+  private ScheduledTask peekScheduledTask() {
+    ScheduledTask next = taskQueue.peek();
+    while (next != null && next.isCancelled()) {
+      taskQueue.poll();
+      liveTombstones--;
+      next = taskQueue.peek();
+    }
+    return next;
+  }
+
+  /**
+   * Whether the next message record has to be run before the given scheduled task.
+   *
+   * @param next the next scheduled task or null
+   * @return true if a message record is next
+   */
+  private boolean isMessageNext(ScheduledTask next) {
+    if (messages.isEmpty()) {
+      return false;
+    }
+    if (next == null) {
+      return true;
+    }
+    long time = messages.peekTime();
+    return time < next.getScheduledTime()
+        || time == next.getScheduledTime() && messages.peekSequence() < next.getSequence();
+  }
+
+  /**
+   * Runs a {@link ScheduledTask} or a message record, whichever is scheduled first.
+   *
+   * @return false if no task is left or the simulation is stopped
    */
-  public static void runTask() {
-    // If there are any tasks
-    if (taskQueue.size() > 0) {
+  public boolean runTask() {
+    if (stopped) {
+      return false;
+    }
+    ScheduledTask next = peekScheduledTask();
+    if (isMessageNext(next)) {
+      runMessage();
+    } else if (next != null) {
       // Get the next ScheduledTask
       ScheduledTask currentScheduledTask = taskQueue.poll();
       Task currentTask = currentScheduledTask.getTask();
@@ -129,35 +249,248 @@ public class Timer {
       // Remove the task from the mapping of all tasks
       taskMap.remove(currentTask, currentScheduledTask);
       // Execute
-      currentTask.run();
+      if (profiler == null) {
+        currentTask.run();
+      } else {
+        long begin = System.nanoTime();
+        currentTask.run();
+        profiler.executed(currentTask.getClass(), System.nanoTime() - begin);
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Stops the simulation, no further task is run until the timer is reset.
+   */
+  void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Whether the simulation is stopped.
+   *
+   * @return true if the stop condition is met
+   */
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Runs the next message record, the receiving node handles it like the message task it stands
+   * for.
+   */
+  private void runMessage() {
+    currentTime = messages.peekTime();
+    long sentTime = messages.peekSentTime();
+    int type = messages.peekType();
+    Node from = getNode(messages.peekFrom());
+    Node to = getNode(messages.peekTo());
+    int item = messages.peekItem();
+    messages.poll();
+    if (profiler == null) {
+      receiveMessage(type, from, to, item, sentTime);
+    } else {
+      long begin = System.nanoTime();
+      receiveMessage(type, from, to, item, sentTime);
+      profiler.executed(getMessageClass(type), System.nanoTime() - begin);
+    }
+  }
+
+  /**
+   * Lets a node receive a message record, a block message ends the transmission of the sender
+   * first.
+   *
+   * @param type     the message type
+   * @param from     the sending node
+   * @param to       the receiving node
+   * @param item     the id of the block or transaction
+   * @param sentTime the time the message was sent
+   */
+  private void receiveMessage(int type, Node from, Node to, int item, long sentTime) {
+    switch (type) {
+      case AbstractMessageTask.BLOCK:
+      case AbstractMessageTask.CMPCT_BLOCK:
+        from.getPropagationProtocol().endBlockTransmission();
+        BlockMessageTask.printFlow(from, to, blocks[item], sentTime);
+        to.receiveMessage(type, from, blocks[item]);
+        break;
+      case AbstractMessageTask.TRANSACTION:
+        to.receiveTransaction(from, transactions[item]);
+        break;
+      default:
+        to.receiveMessage(type, from, blocks[item]);
+    }
+  }
+
+  /**
+   * Creates the message task a block message record stands for.
+   *
+   * @param type     {@link AbstractMessageTask#INV}, {@link AbstractMessageTask#REC},
+   *                 {@link AbstractMessageTask#CMPCT_BLOCK} or {@link AbstractMessageTask#BLOCK}
+   * @param from     the sending node
+   * @param to       the receiving node
+   * @param block    the block
+   * @param interval the time from sending to receiving the message in milliseconds
+   * @return the message task
+   */
+  private static AbstractMessageTask createMessageTask(int type, Node from, Node to,
+      Block block, long interval) {
+    switch (type) {
+      case AbstractMessageTask.INV:
+        return new InvMessageTask(from, to, block);
+      case AbstractMessageTask.REC:
+        return new RecMessageTask(from, to, block);
+      case AbstractMessageTask.CMPCT_BLOCK:
+        // The interval already contains the latency, none is drawn
+        return new CmpctBlockMessageTask(from, to, block, interval, 0);
+      case AbstractMessageTask.BLOCK:
+        return new BlockMessageTask(from, to, block, interval, 0);
+      default:
+        throw new IllegalArgumentException("Message type " + type + " is not a block message");
+    }
+  }
+
+  /**
+   * Gets the class of the message task a message record stands for.
+   *
+   * @param type the message type
+   * @return the class
+   */
+  private static Class<? extends AbstractMessageTask> getMessageClass(int type) {
+    switch (type) {
+      case AbstractMessageTask.INV:
+        return InvMessageTask.class;
+      case AbstractMessageTask.REC:
+        return RecMessageTask.class;
+      case AbstractMessageTask.CMPCT_BLOCK:
+        return CmpctBlockMessageTask.class;
+      case AbstractMessageTask.BLOCK:
+        return BlockMessageTask.class;
+      default:
+        return TransactionTask.class;
     }
   }
 
   /**
-   * Remove task from the mapping of all tasks and from the execution queue.
+   * Gets a simulated node by its id.
+   *
+   * @param nodeID the node id
+   * @return the node
+   */
+  private Node getNode(int nodeID) {
+    return this.context.getSimulator().getSimulatedNodes().get(nodeID - 1);
+  }
+
+  /**
+   * Keeps a block to resolve the id of a message record.
+   *
+   * @param block the block
+   */
+  private void registerBlock(Block block) {
+    int id = block.getId();
+    if (id >= blocks.length) {
+      blocks = Arrays.copyOf(blocks, Math.max(id + 1, blocks.length * 2));
+    }
+    blocks[id] = block;
+  }
+
+  /**
+   * Keeps a transaction to resolve the id of a message record.
+   *
+   * @param transaction the transaction
+   */
+  private void registerTransaction(Transaction transaction) {
+    int id = transaction.getId();
+    if (id >= transactions.length) {
+      transactions = Arrays.copyOf(transactions, Math.max(id + 1, transactions.length * 2));
+    }
+    transactions[id] = transaction;
+  }
+
+  /**
+   * Records a scheduled task if the tasks are profiled.
+   *
+   * @param taskClass the class of the task
+   */
+  private void profileScheduled(Class<?> taskClass) {
+    if (profiler != null) {
+      profiler.scheduled(taskClass, taskQueue.size() + messages.size());
+    }
+  }
+
+  /**
+   * Remove task from the mapping of all tasks and from the execution queue. The task is only
+   * marked as cancelled and skipped once it is dequeued, the queue is compacted when the
+   * cancelled tasks make up half of it.
    *
    * @param task the task to be removed
    */
-  public static void removeTask(Task task) {
-    if (taskMap.containsKey(task)) {
-      ScheduledTask scheduledTask = taskMap.get(task);
-      taskQueue.remove(scheduledTask);
-      taskMap.remove(task, scheduledTask);
+  public void removeTask(Task task) {
+    ScheduledTask scheduledTask = taskMap.remove(task);
+    if (scheduledTask != null) {
+      scheduledTask.cancel();
+      if (profiler != null) {
+        profiler.cancelled(task.getClass());
+      }
+      liveTombstones++;
+      cancelledTasks++;
+      if (liveTombstones > MIN_TOMBSTONES_TO_COMPACT && liveTombstones * 2 > taskQueue.size()) {
+        taskQueue.removeCancelled();
+        liveTombstones = 0;
+      }
     }
   }
 
   /**
-   * Get the {@link Task} from the execution queue to be executed next.
+   * Gets the number of cancelled tasks that are still stored in the task queue.
+   *
+   * @return the number of tombstones
+   */
+  public long getLiveTombstones() {
+    return liveTombstones;
+  }
+
+  /**
+   * Gets the number of tasks cancelled since the last reset.
+   *
+   * @return the number of cancelled tasks
+   */
+  public long getCancelledTasks() {
+    return cancelledTasks;
+  }
+
+  /**
+   * Whether a task or message is left to be executed.
+   *
+   * @return true if a message record or a task that has not been cancelled is scheduled
+   */
+  public boolean hasNextTask() {
+    return !messages.isEmpty() || peekScheduledTask() != null;
+  }
+
+  /**
+   * Get the {@link Task} from the execution queue to be executed next. A message record has no
+   * task, the message task it stands for is created instead, so every call returns a new task for
+   * it.
    *
    * @return the task from the queue or null if task queue is empty.
    */
-  public static Task getTask() {
-    if (taskQueue.size() > 0) {
-      ScheduledTask currentTask = taskQueue.peek();
-      return currentTask.getTask();
-    } else {
-      return null;
+  public Task getTask() {
+    ScheduledTask currentTask = peekScheduledTask();
+    if (isMessageNext(currentTask)) {
+      int type = messages.peekType();
+      Node from = getNode(messages.peekFrom());
+      Node to = getNode(messages.peekTo());
+      long interval = messages.peekTime() - messages.peekSentTime();
+      if (type == AbstractMessageTask.TRANSACTION) {
+        return new TransactionTask(from, to, transactions[messages.peekItem()], interval, 0);
+      }
+      return createMessageTask(type, from, to, blocks[messages.peekItem()], interval);
     }
+    return currentTask != null ? currentTask.getTask() : null;
   }
 
   /**
@@ -165,10 +498,119 @@ public class Timer {
    *
    * @param task the task
    */
-  public static void putTask(Task task) {
-    ScheduledTask scheduledTask = new ScheduledTask(task, currentTime + task.getInterval());
-    taskQueue.add(scheduledTask);
-    TASK_COUNTS++;
+  public void putTask(Task task) {
+    long time = currentTime + task.getInterval();
+    if (outbox != null && task instanceof AbstractMessageTask
+        && ((AbstractMessageTask) task).getTo().getContext() != this.context) {
+      sendToPartition((AbstractMessageTask) task, time);
+    } else {
+      taskQueue.add(new ScheduledTask(task, time, nextSequence++));
+    }
+    taskCounts++;
+    profileScheduled(task.getClass());
+  }
+
+  /**
+   * Schedules an inv, rec, compact block or block message as a message record, the message is
+   * run like a task of the given interval without allocating a task. Messages to nodes of other
+   * partitions are sent as tasks.
+   *
+   * @param type     {@link AbstractMessageTask#INV}, {@link AbstractMessageTask#REC},
+   *                 {@link AbstractMessageTask#CMPCT_BLOCK} or {@link AbstractMessageTask#BLOCK}
+   * @param from     the sending node
+   * @param to       the receiving node
+   * @param block    the block
+   * @param interval the latency and the transmission time of the message in milliseconds
+   */
+  public void putMessage(int type, Node from, Node to, Block block, long interval) {
+    long time = currentTime + interval;
+    if (outbox != null && to.getContext() != this.context) {
+      sendToPartition(createMessageTask(type, from, to, block, interval), time);
+    } else {
+      registerBlock(block);
+      messages.add(time, nextSequence++, currentTime, type, from.getNodeID(), to.getNodeID(),
+          block.getId());
+    }
+    taskCounts++;
+    profileScheduled(getMessageClass(type));
+  }
+
+  /**
+   * Schedules a transaction message as a message record, like
+   * {@link #putMessage(int, Node, Node, Block, long)}.
+   *
+   * @param from        the sending node
+   * @param to          the receiving node
+   * @param transaction the transaction
+   * @param interval    the latency and the transmission time of the message in milliseconds
+   */
+  public void putTransaction(Node from, Node to, Transaction transaction, long interval) {
+    long time = currentTime + interval;
+    if (outbox != null && to.getContext() != this.context) {
+      sendToPartition(new TransactionTask(from, to, transaction, interval, 0), time);
+    } else {
+      registerTransaction(transaction);
+      messages.add(time, nextSequence++, currentTime, AbstractMessageTask.TRANSACTION,
+          from.getNodeID(), to.getNodeID(), transaction.getId());
+    }
+    taskCounts++;
+    profileScheduled(TransactionTask.class);
+  }
+
+  /**
+   * Puts a message to a node of another partition into the outbox. The part of the message that
+   * has to be run at the sender is scheduled locally at the time of the reception.
+   *
+   * @param message the message
+   * @param time    the time of the reception in milliseconds
+   */
+  private void sendToPartition(AbstractMessageTask message, long time) {
+    if (time - currentTime < lookahead) {
+      throw new IllegalStateException("Message to another partition is received after "
+          + (time - currentTime) + " ms, before the lookahead of " + lookahead + " ms");
+    }
+    outbox.add(new ScheduledTask(message, time, nextSequence++));
+    Task callback = message.detachSenderCallback();
+    if (callback != null) {
+      taskQueue.add(new ScheduledTask(callback, time, nextSequence++));
+      taskCounts++;
+      profileScheduled(callback.getClass());
+    }
+  }
+
+  /**
+   * Removes the messages to other partitions from the outbox.
+   *
+   * @return the messages in the order they were sent
+   */
+  List<ScheduledTask> drainOutbox() {
+    List<ScheduledTask> drained = new ArrayList<>(outbox);
+    outbox.clear();
+    return drained;
+  }
+
+  /**
+   * Schedules a message received from another partition. It has been counted by the timer of
+   * the sender.
+   *
+   * @param task the message
+   * @param time the time of the reception in milliseconds
+   */
+  void putReceivedTask(Task task, long time) {
+    taskQueue.add(new ScheduledTask(task, time, nextSequence++));
+  }
+
+  /**
+   * Gets the time of the next message record or scheduled task that has not been cancelled.
+   *
+   * @return the time in milliseconds or {@link Long#MAX_VALUE} if the task queue is empty
+   */
+  public long getNextTaskTime() {
+    ScheduledTask next = peekScheduledTask();
+    if (isMessageNext(next)) {
+      return messages.peekTime();
+    }
+    return next != null ? next.getScheduledTime() : Long.MAX_VALUE;
   }
 
   /**
@@ -176,11 +618,13 @@ public class Timer {
    *
    * @param task mining task
    */
-  public static void addRemovableTask(Task task) {
-    ScheduledTask scheduledTask = new ScheduledTask(task, currentTime + task.getInterval());
+  public void addRemovableTask(Task task) {
+    ScheduledTask scheduledTask = new ScheduledTask(
+        task, currentTime + task.getInterval(), nextSequence++);
     taskMap.put(task, scheduledTask);
     taskQueue.add(scheduledTask);
-    TASK_COUNTS++;
+    taskCounts++;
+    profileScheduled(task.getClass());
   }
 
   /**
@@ -190,10 +634,11 @@ public class Timer {
    * @param time the time in milliseconds
    */
   @SuppressWarnings("unused")
-  public static void putTaskAbsoluteTime(Task task, long time) {
-    ScheduledTask scheduledTask = new ScheduledTask(task, time);
+  public void putTaskAbsoluteTime(Task task, long time) {
+    ScheduledTask scheduledTask = new ScheduledTask(task, time, nextSequence++);
     taskMap.put(task, scheduledTask);
     taskQueue.add(scheduledTask);
+    profileScheduled(task.getClass());
   }
 
   /**
@@ -201,10 +646,19 @@ public class Timer {
    *
    * @return the time
    */
-  public static long getCurrentTime() {
+  public long getCurrentTime() {
     return currentTime;
   }
 
+  /**
+   * Gets the number of tasks scheduled since the last reset.
+   *
+   * @return the number of scheduled tasks
+   */
+  public long getTaskCounts() {
+    return taskCounts;
+  }
+
   /**
    * if the mining taks are filtered to reduce the size of the task queue
    * this function calcultes whether an new mining taskis added
@@ -212,20 +666,29 @@ public class Timer {
    * @param interval time until mining
    * @return if the mining task is added
    */
-  public static boolean checkMiningTask(Block block,long interval){
-    if(!FILTER_MINING_TASKS){
-      return true;
-    }
-    if(BlockMiningTaksMap.containsKey(block)){
-      if(BlockMiningTaksMap.get(block)[0]<MAX_MINING_TASKS || BlockMiningTaksMap.get(block)[1]< interval){
-        BlockMiningTaksMap.replace(block, new Long[]{BlockMiningTaksMap.get(block)[0]+1,Math.min(BlockMiningTaksMap.get(block)[1],interval)});
-        return true;
-      }else{
-        return false;
-      }
-    }else{
-      BlockMiningTaksMap.put(block,new Long[]{0L,getCurrentTime()+interval});
+  public boolean checkMiningTask(Block block,long interval){
+    if(!this.context.getConfig().FILTER_MINING_TASKS){
       return true;
     }
+    return miningTaskFilter.admit(block, interval, getCurrentTime(),
+        this.context.getConfig().MAX_MINING_TASKS);
+  }
+
+  /**
+   * Gets the profiler of the executed tasks.
+   *
+   * @return the profiler or null if the tasks are not profiled
+   */
+  public TaskProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Gets the filter of the mining tasks.
+   *
+   * @return the mining task filter
+   */
+  public MiningTaskFilter getMiningTaskFilter() {
+    return miningTaskFilter;
   }
-}
\ No newline at end of file
+}
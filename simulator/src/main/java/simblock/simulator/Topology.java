@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.simulator;
+
+import static simblock.settings.SimulationConfiguration.ALGO;
+import static simblock.settings.SimulationConfiguration.CHURN_NODE_RATE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import simblock.node.AdversarialNode;
+import simblock.node.Node;
+import simblock.settings.NetworkConfiguration;
+import simblock.settings.SimulationConfiguration;
+
+/**
+ * The type Topology stores a constructed network in a compact binary file, so that later runs
+ * load the exact same peer graph instead of constructing it again. This is faster for large
+ * networks and removes the variance of the graph when protocols or attacks are compared.
+ *
+ * <p>The file holds the attributes of every node (region, number of outbound connections,
+ * mining power and the churn, adversarial and mining pool flags) as primitive arrays and the
+ * outbound and inbound neighbors as two adjacency lists in compressed sparse row form, each an
+ * array of offsets into an array of node indices. The order of the neighbors is kept, so the
+ * loaded network is identical to the stored one.
+ *
+ * <p>A file is tied to the parameters that generated the network by their description (see
+ * {@link #describe}), which is stored in the file and compared when it is loaded, and the whole
+ * file is protected by a CRC32 checksum. The file name contains the checksum of the description,
+ * so the networks of different parameters are kept next to each other. The seed is not part of
+ * the parameters: a network constructed by one run can be loaded by runs of any other seed.
+ */
+public class Topology {
+  private static final int MAGIC = 0x53425447;
+  private static final int VERSION = 1;
+
+  private static final byte CHURN = 1;
+  private static final byte ADVERSARIAL = 2;
+  private static final byte MINING_POOL = 4;
+
+  private Topology() {
+  }
+
+  /**
+   * Describes the parameters that determine the network constructed by
+   * {@link Main#constructNetwork}.
+   *
+   * @param context         the simulation
+   * @param miners          the number of miners
+   * @param zeronodes       the number of nodes without mining power
+   * @param connectedMiners whether the miners connect to each other first
+   * @return the description
+   */
+  public static String describe(SimulationContext context, int miners, int zeronodes,
+      boolean connectedMiners) {
+    NetworkConfiguration networkConfig = context.getNetworkConfig();
+    StringBuilder description = new StringBuilder()
+        .append("miners=").append(miners)
+        .append(" zeronodes=").append(zeronodes)
+        .append(" connectedMiners=").append(connectedMiners)
+        .append(" table=").append(context.getConfig().TABLE)
+        .append(" regions=").append(networkConfig.getRegionList())
+        .append(" regionDistribution=")
+        .append(Arrays.toString(context.getNetwork().getRegionDistribution()))
+        .append(" degreeDistribution=").append(Arrays.toString(Network.getDegreeDistribution()))
+        .append(" churn=").append(CHURN_NODE_RATE)
+        .append(" p=").append(networkConfig.P)
+        .append(" miningPower=").append(networkConfig.getNetworkMiningPower());
+    if (networkConfig.getUSEMINGPOOLS()) {
+      description.append(" pools=")
+          .append(Arrays.toString(networkConfig.getPoolProportion()));
+    }
+    return description.toString();
+  }
+
+  /**
+   * Gets the file of the network of a description in a directory.
+   *
+   * @param directory   the directory
+   * @param description the description of the parameters
+   * @return the file
+   */
+  public static File getFile(String directory, String description) {
+    CRC32 crc = new CRC32();
+    crc.update(description.getBytes(StandardCharsets.UTF_8));
+    return new File(directory, String.format("topology_%08x.bin", crc.getValue()));
+  }
+
+  /**
+   * Writes the constructed network of a simulation. The file is written to a temporary file
+   * first, so runs started at the same time never load a partially written network.
+   *
+   * @param context     the simulation
+   * @param description the description of the parameters
+   * @param seed        the seed the network was constructed with, only for information
+   * @param file        the file
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(SimulationContext context, String description, long seed, File file)
+      throws IOException {
+    List<Node> nodes = context.getSimulator().getSimulatedNodes();
+    int n = nodes.size();
+    int[] outOffsets = new int[n + 1];
+    int[] inOffsets = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      outOffsets[i + 1] = outOffsets[i]
+          + nodes.get(i).getRoutingTable().getOutboundNeighbors().size();
+      inOffsets[i + 1] = inOffsets[i]
+          + nodes.get(i).getRoutingTable().getInboundNeighbors().size();
+    }
+    byte[] text = description.getBytes(StandardCharsets.UTF_8);
+    long size = 4L + 4 + 4 + text.length + 8 + 4 + (4 + 4 + 8 + 1) * (long) n
+        + 4 * (n + 1L) * 2 + 4L * outOffsets[n] + 4L * inOffsets[n] + 4;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("The network is too large to be stored");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(text.length).put(text).putLong(seed).putInt(n);
+    for (Node node : nodes) {
+      buffer.putInt(node.getRegion());
+    }
+    for (Node node : nodes) {
+      buffer.putInt(node.getNumConnection());
+    }
+    for (Node node : nodes) {
+      buffer.putLong(node.getMiningPower());
+    }
+    for (Node node : nodes) {
+      buffer.put((byte) ((node.isChurnNode ? CHURN : 0) | (node.IsAdversarial() ? ADVERSARIAL : 0)
+          | (node.isMiningPool ? MINING_POOL : 0)));
+    }
+    putNeighbors(buffer, nodes, outOffsets, true);
+    putNeighbors(buffer, nodes, inOffsets, false);
+    CRC32 crc = new CRC32();
+    buffer.flip();
+    crc.update(buffer.duplicate());
+    buffer.limit(buffer.capacity());
+    buffer.position(buffer.capacity() - 4);
+    buffer.putInt((int) crc.getValue());
+    buffer.flip();
+    Path target = file.toPath().toAbsolutePath();
+    Files.createDirectories(target.getParent());
+    Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(),
+        ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Writes one adjacency list of the nodes.
+   *
+   * @param buffer   the buffer
+   * @param nodes    the nodes, the index of a node is its id minus 1
+   * @param offsets  the offsets of the neighbors of every node
+   * @param outbound whether to write the outbound or the inbound neighbors
+   */
+  private static void putNeighbors(ByteBuffer buffer, List<Node> nodes, int[] offsets,
+      boolean outbound) {
+    for (int offset : offsets) {
+      buffer.putInt(offset);
+    }
+    for (Node node : nodes) {
+      List<Node> neighbors = outbound ? node.getRoutingTable().getOutboundNeighbors()
+          : node.getRoutingTable().getInboundNeighbors();
+      for (Node neighbor : neighbors) {
+        buffer.putInt(neighbor.getNodeID() - 1);
+      }
+    }
+  }
+
+  /**
+   * Loads a stored network into a simulation without nodes. The nodes are created with the
+   * stored attributes and the routing tables are restored, but nothing else happens: the
+   * caller resets the nodes and mints the genesis block as for a constructed network.
+   *
+   * @param context     the simulation
+   * @param description the description of the parameters of the run
+   * @param file        the file
+   * @return the seed the network was constructed with
+   * @throws IOException if the file cannot be read, is corrupt or belongs to other parameters
+   */
+  public static long read(SimulationContext context, String description, File file)
+      throws IOException {
+    SimulationConfiguration config = context.getConfig();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.capacity() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException(file + " is not a stored network of this version");
+      }
+      CRC32 crc = new CRC32();
+      ByteBuffer content = buffer.duplicate();
+      content.position(0).limit(buffer.capacity() - 4);
+      crc.update(content);
+      if ((int) crc.getValue() != buffer.getInt(buffer.capacity() - 4)) {
+        throw new IOException(file + " is corrupt, its checksum does not match");
+      }
+      byte[] text = new byte[buffer.getInt()];
+      buffer.get(text);
+      String stored = new String(text, StandardCharsets.UTF_8);
+      if (!stored.equals(description)) {
+        throw new IOException(file + " was constructed with other parameters: " + stored);
+      }
+      long seed = buffer.getLong();
+      int n = buffer.getInt();
+      int[] regions = getInts(buffer, n);
+      int[] degrees = getInts(buffer, n);
+      long[] miningPowers = new long[n];
+      buffer.asLongBuffer().get(miningPowers);
+      buffer.position(buffer.position() + 8 * n);
+      byte[] flags = new byte[n];
+      buffer.get(flags);
+      int[] outOffsets = getInts(buffer, n + 1);
+      int[] outTargets = getInts(buffer, outOffsets[n]);
+      int[] inOffsets = getInts(buffer, n + 1);
+      int[] inTargets = getInts(buffer, inOffsets[n]);
+
+      Simulator simulator = context.getSimulator();
+      List<Node> nodes = simulator.getSimulatedNodes();
+      for (int i = 0; i < n; i++) {
+        SimulationContext nodeContext = context.getNodeContext(regions[i]);
+        boolean churn = (flags[i] & CHURN) != 0;
+        Node node = (flags[i] & ADVERSARIAL) != 0
+            ? new AdversarialNode(nodeContext, i + 1, degrees[i], regions[i], miningPowers[i],
+                config.TABLE, ALGO, config.Propagation, churn)
+            : new Node(nodeContext, i + 1, degrees[i], regions[i], miningPowers[i], config.TABLE,
+                ALGO, config.Propagation, churn);
+        node.isMiningPool = (flags[i] & MINING_POOL) != 0;
+        simulator.addNode(node);
+      }
+      for (int i = 0; i < n; i++) {
+        nodes.get(i).getRoutingTable().restoreOutbound(
+            getNodes(nodes, outTargets, outOffsets[i], outOffsets[i + 1]));
+      }
+      for (int i = 0; i < n; i++) {
+        nodes.get(i).getRoutingTable().restoreInbound(
+            getNodes(nodes, inTargets, inOffsets[i], inOffsets[i + 1]));
+      }
+      return seed;
+    } catch (RuntimeException e) {
+      throw new IOException(file + " is corrupt: " + e, e);
+    }
+  }
+
+  /**
+   * Reads an array of integers.
+   *
+   * @param buffer the buffer
+   * @param length the number of integers
+   * @return the integers
+   */
+  private static int[] getInts(ByteBuffer buffer, int length) {
+    int[] values = new int[length];
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.get(values);
+    buffer.position(buffer.position() + 4 * length);
+    return values;
+  }
+
+  /**
+   * Resolves a range of node indices of an adjacency list.
+   *
+   * @param nodes   the nodes
+   * @param targets the node indices
+   * @param from    the first index of the range
+   * @param to      the index after the range
+   * @return the nodes
+   */
+  private static List<Node> getNodes(List<Node> nodes, int[] targets, int from, int to) {
+    List<Node> neighbors = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      neighbors.add(nodes.get(targets[i]));
+    }
+    return neighbors;
+  }
+}
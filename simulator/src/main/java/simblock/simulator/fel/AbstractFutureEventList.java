@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.fel;
+
+import java.io.Serializable;
+
+/**
+ * An abstraction of the Future Event List (FEL) used by the {@link simblock.simulator.Timer}.
+ * Implementations return the stored {@link ScheduledTask} instances ordered by scheduled time
+ * and, for concurrent tasks, by insertion order.
+ */
+public abstract class AbstractFutureEventList implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Adds a scheduled task to the list.
+   *
+   * @param scheduledTask the scheduled task
+   */
+  public abstract void add(ScheduledTask scheduledTask);
+
+  /**
+   * Retrieves and removes the task to be executed next.
+   *
+   * @return the next scheduled task or null if the list is empty
+   */
+  public abstract ScheduledTask poll();
+
+  /**
+   * Retrieves, but does not remove, the task to be executed next.
+   *
+   * @return the next scheduled task or null if the list is empty
+   */
+  public abstract ScheduledTask peek();
+
+  /**
+   * Removes all cancelled tasks from the list.
+   *
+   * @see ScheduledTask#cancel()
+   */
+  public abstract void removeCancelled();
+
+  /**
+   * Gets the number of stored tasks, including cancelled ones.
+   *
+   * @return the size
+   */
+  public abstract int size();
+
+  /**
+   * Removes all tasks from the list.
+   */
+  public abstract void clear();
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.fel;
+
+import java.util.PriorityQueue;
+
+/**
+ * The reference Future Event List backed by a binary heap. Enqueue and dequeue are O(log n).
+ */
+public class HeapFutureEventList extends AbstractFutureEventList {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * A sorted queue of scheduled tasks.
+   */
+  private final PriorityQueue<ScheduledTask> taskQueue = new PriorityQueue<>();
+
+  @Override
+  public void add(ScheduledTask scheduledTask) {
+    this.taskQueue.add(scheduledTask);
+  }
+
+  @Override
+  public ScheduledTask poll() {
+    return this.taskQueue.poll();
+  }
+
+  @Override
+  public ScheduledTask peek() {
+    return this.taskQueue.peek();
+  }
+
+  @Override
+  public void removeCancelled() {
+    this.taskQueue.removeIf(ScheduledTask::isCancelled);
+  }
+
+  @Override
+  public int size() {
+    return this.taskQueue.size();
+  }
+
+  @Override
+  public void clear() {
+    this.taskQueue.clear();
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.fel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * A Future Event List implementing the Ladder Queue of Tang, Goh and Thng, "Ladder Queue: An O(1)
+ * Priority Queue Structure for Large-Scale Discrete Event Simulation", 2005.
+ *
+ * <p>Tasks far in the future are appended to the unsorted <em>top</em> list. When the sorted
+ * <em>bottom</em> list runs empty, the top is spread over the buckets of a <em>rung</em>, and the
+ * next non empty bucket of the lowest rung is either sorted into the bottom or, if it holds too
+ * many tasks, split into a finer rung. Enqueue and dequeue are amortized O(1).
+ *
+ * <p>The time axis is partitioned into [topStart, inf) for the top, [current time of rung i,
+ * current time of rung i - 1) for rung i and (-inf, current time of the lowest rung) for the
+ * bottom, so the part a task is added to is found by its scheduled time only.
+ */
+public class LadderFutureEventList extends AbstractFutureEventList {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Buckets holding more tasks than this are split into a new rung instead of being sorted.
+   */
+  private static final int THRESHOLD = 50;
+
+  /**
+   * The maximum number of rungs.
+   */
+  private static final int MAX_RUNGS = 8;
+
+  /**
+   * The maximum number of buckets of a single rung.
+   */
+  private static final int MAX_BUCKETS = 1 << 16;
+
+  /**
+   * Unsorted tasks scheduled at or after topStart.
+   */
+  private final ArrayList<ScheduledTask> top = new ArrayList<>();
+  private long topStart = Long.MIN_VALUE;
+  private long topMin = Long.MAX_VALUE;
+  private long topMax = Long.MIN_VALUE;
+
+  /**
+   * The rungs of the ladder, rungs[numRungs - 1] being the lowest (finest) one.
+   */
+  private final Rung[] rungs = new Rung[MAX_RUNGS];
+  private int numRungs = 0;
+
+  /**
+   * Sorted tasks to be executed next, stored in bottom[bottomHead] to bottom[bottomTail - 1].
+   */
+  private ScheduledTask[] bottom = new ScheduledTask[2 * THRESHOLD];
+  private int bottomHead = 0;
+  private int bottomTail = 0;
+
+  private int size = 0;
+
+  /**
+   * A rung of the ladder, covering the time span [start, start + buckets.length * width).
+   */
+  private static class Rung implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long start;
+    private final long width;
+    private final ArrayList<ScheduledTask>[] buckets;
+
+    /**
+     * Index of the first bucket that has not been handed to a lower rung or the bottom yet.
+     */
+    private int current = 0;
+    private int count = 0;
+
+    private Rung(long start, long end, long width) {
+      long span = end - start;
+      width = Math.max(1, width);
+      if (ceilDiv(span, width) > MAX_BUCKETS) {
+        width = ceilDiv(span, MAX_BUCKETS);
+      }
+      this.start = start;
+      this.width = width;
+      @SuppressWarnings("unchecked")
+      ArrayList<ScheduledTask>[] buckets =
+          (ArrayList<ScheduledTask>[]) new ArrayList<?>[(int) ceilDiv(span, width)];
+      this.buckets = buckets;
+    }
+
+    /**
+     * The earliest time a task stored in this rung can have.
+     */
+    private long getCurrentTime() {
+      return this.start + this.current * this.width;
+    }
+
+    private void add(ScheduledTask scheduledTask) {
+      int index = (int) ((scheduledTask.getScheduledTime() - this.start) / this.width);
+      if (this.buckets[index] == null) {
+        this.buckets[index] = new ArrayList<>();
+      }
+      this.buckets[index].add(scheduledTask);
+      this.count++;
+    }
+
+    private void removeCancelled() {
+      for (int i = this.current; i < this.buckets.length; i++) {
+        if (this.buckets[i] != null) {
+          int before = this.buckets[i].size();
+          this.buckets[i].removeIf(ScheduledTask::isCancelled);
+          this.count -= before - this.buckets[i].size();
+        }
+      }
+    }
+
+    /**
+     * Removes and returns the next non empty bucket.
+     *
+     * @return the bucket or null if the rung is exhausted
+     */
+    private ArrayList<ScheduledTask> nextBucket() {
+      while (this.count > 0 && this.current < this.buckets.length) {
+        ArrayList<ScheduledTask> bucket = this.buckets[this.current];
+        this.buckets[this.current] = null;
+        this.current++;
+        if (bucket != null && bucket.size() > 0) {
+          this.count -= bucket.size();
+          return bucket;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static long ceilDiv(long x, long y) {
+    return (x + y - 1) / y;
+  }
+
+  @Override
+  public void add(ScheduledTask scheduledTask) {
+    this.size++;
+    long time = scheduledTask.getScheduledTime();
+    if (time >= this.topStart) {
+      this.top.add(scheduledTask);
+      this.topMin = Math.min(this.topMin, time);
+      this.topMax = Math.max(this.topMax, time);
+      return;
+    }
+    for (int i = 0; i < this.numRungs; i++) {
+      if (time >= this.rungs[i].getCurrentTime()) {
+        this.rungs[i].add(scheduledTask);
+        return;
+      }
+    }
+    this.insertBottom(scheduledTask);
+    if (this.bottomTail - this.bottomHead > 2 * THRESHOLD && this.numRungs < MAX_RUNGS) {
+      this.spawnRungFromBottom();
+    }
+  }
+
+  @Override
+  public ScheduledTask poll() {
+    if (this.size == 0) {
+      return null;
+    }
+    if (this.bottomHead == this.bottomTail) {
+      this.refillBottom();
+    }
+    ScheduledTask next = this.bottom[this.bottomHead];
+    this.bottom[this.bottomHead] = null;
+    this.bottomHead++;
+    if (this.bottomHead == this.bottomTail) {
+      this.bottomHead = 0;
+      this.bottomTail = 0;
+    }
+    this.size--;
+    return next;
+  }
+
+  @Override
+  public ScheduledTask peek() {
+    if (this.size == 0) {
+      return null;
+    }
+    if (this.bottomHead == this.bottomTail) {
+      this.refillBottom();
+    }
+    return this.bottom[this.bottomHead];
+  }
+
+  @Override
+  public void removeCancelled() {
+    this.top.removeIf(ScheduledTask::isCancelled);
+    this.topMin = Long.MAX_VALUE;
+    this.topMax = Long.MIN_VALUE;
+    for (ScheduledTask scheduledTask : this.top) {
+      this.topMin = Math.min(this.topMin, scheduledTask.getScheduledTime());
+      this.topMax = Math.max(this.topMax, scheduledTask.getScheduledTime());
+    }
+    int size = this.top.size();
+    for (int i = 0; i < this.numRungs; i++) {
+      this.rungs[i].removeCancelled();
+      size += this.rungs[i].count;
+    }
+    int tail = this.bottomHead;
+    for (int i = this.bottomHead; i < this.bottomTail; i++) {
+      if (!this.bottom[i].isCancelled()) {
+        this.bottom[tail++] = this.bottom[i];
+      }
+    }
+    Arrays.fill(this.bottom, tail, this.bottomTail, null);
+    this.bottomTail = tail;
+    if (this.bottomHead == this.bottomTail) {
+      this.bottomHead = 0;
+      this.bottomTail = 0;
+    }
+    this.size = size + this.bottomTail - this.bottomHead;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public void clear() {
+    this.top.clear();
+    this.topStart = Long.MIN_VALUE;
+    this.topMin = Long.MAX_VALUE;
+    this.topMax = Long.MIN_VALUE;
+    Arrays.fill(this.rungs, null);
+    this.numRungs = 0;
+    Arrays.fill(this.bottom, null);
+    this.bottomHead = 0;
+    this.bottomTail = 0;
+    this.size = 0;
+  }
+
+  /**
+   * Inserts a task into the sorted bottom list.
+   */
+  private void insertBottom(ScheduledTask scheduledTask) {
+    if (this.bottomTail == this.bottom.length) {
+      int length = this.bottomTail - this.bottomHead;
+      if (length * 2 > this.bottom.length) {
+        this.bottom = Arrays.copyOf(this.bottom, this.bottom.length * 2);
+      }
+      System.arraycopy(this.bottom, this.bottomHead, this.bottom, 0, length);
+      Arrays.fill(this.bottom, length, this.bottomTail, null);
+      this.bottomHead = 0;
+      this.bottomTail = length;
+    }
+    // Tasks are usually scheduled after most of the bottom, so search from the tail
+    int index = this.bottomTail;
+    while (index > this.bottomHead && this.bottom[index - 1].compareTo(scheduledTask) > 0) {
+      index--;
+    }
+    System.arraycopy(this.bottom, index, this.bottom, index + 1, this.bottomTail - index);
+    this.bottom[index] = scheduledTask;
+    this.bottomTail++;
+  }
+
+  /**
+   * Spreads an overfull bottom over a new lowest rung.
+   */
+  private void spawnRungFromBottom() {
+    long min = this.bottom[this.bottomHead].getScheduledTime();
+    long max = this.bottom[this.bottomTail - 1].getScheduledTime();
+    if (min == max) {
+      return;
+    }
+    long end = this.numRungs == 0 ? this.topStart : this.rungs[this.numRungs - 1].getCurrentTime();
+    Rung rung = new Rung(min, end, ceilDiv(max + 1 - min, this.bottomTail - this.bottomHead));
+    for (int i = this.bottomHead; i < this.bottomTail; i++) {
+      rung.add(this.bottom[i]);
+      this.bottom[i] = null;
+    }
+    this.bottomHead = 0;
+    this.bottomTail = 0;
+    this.rungs[this.numRungs++] = rung;
+  }
+
+  /**
+   * Moves the next tasks into the empty bottom list. Must only be called if the list is not
+   * empty.
+   */
+  private void refillBottom() {
+    while (true) {
+      if (this.numRungs == 0) {
+        // Only the top is left
+        long end = this.topMax + 1;
+        if (this.top.size() <= THRESHOLD || this.topMin == this.topMax) {
+          this.sortIntoBottom(this.top);
+        } else {
+          Rung rung = new Rung(this.topMin, end, ceilDiv(end - this.topMin, this.top.size()));
+          for (ScheduledTask scheduledTask : this.top) {
+            rung.add(scheduledTask);
+          }
+          this.rungs[this.numRungs++] = rung;
+        }
+        this.top.clear();
+        this.topStart = end;
+        this.topMin = Long.MAX_VALUE;
+        this.topMax = Long.MIN_VALUE;
+        if (this.numRungs == 0) {
+          return;
+        }
+        continue;
+      }
+      Rung rung = this.rungs[this.numRungs - 1];
+      ArrayList<ScheduledTask> bucket = rung.nextBucket();
+      if (bucket == null) {
+        this.rungs[--this.numRungs] = null;
+        continue;
+      }
+      if (bucket.size() > THRESHOLD && rung.width > 1 && this.numRungs < MAX_RUNGS) {
+        long start = rung.getCurrentTime() - rung.width;
+        Rung child = new Rung(start, start + rung.width, ceilDiv(rung.width, bucket.size()));
+        for (ScheduledTask scheduledTask : bucket) {
+          child.add(scheduledTask);
+        }
+        this.rungs[this.numRungs++] = child;
+        continue;
+      }
+      this.sortIntoBottom(bucket);
+      return;
+    }
+  }
+
+  private void sortIntoBottom(ArrayList<ScheduledTask> tasks) {
+    Collections.sort(tasks);
+    if (this.bottom.length < tasks.size()) {
+      this.bottom = new ScheduledTask[tasks.size()];
+    }
+    for (int i = 0; i < tasks.size(); i++) {
+      this.bottom[i] = tasks.get(i);
+    }
+    this.bottomHead = 0;
+    this.bottomTail = tasks.size();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.fel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Messages that are scheduled to be received, stored as packed records in parallel primitive
+ * arrays instead of a message task and a {@link ScheduledTask} per message. A record consists of
+ * the scheduled time, the insertion number, the time the message was sent, the message type, the
+ * ids of the sending and the receiving node and the id of the block or transaction. A record
+ * keeps its slot in the arrays until it is polled, a binary heap of slots orders the records like
+ * scheduled tasks, by time and then by insertion number. Freed slots are reused, so the arrays
+ * only grow with the number of records scheduled at the same time.
+ */
+public class MessageRecords implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private long[] times = new long[INITIAL_CAPACITY];
+  private long[] sequences = new long[INITIAL_CAPACITY];
+  private long[] sentTimes = new long[INITIAL_CAPACITY];
+  private int[] types = new int[INITIAL_CAPACITY];
+  private int[] from = new int[INITIAL_CAPACITY];
+  private int[] to = new int[INITIAL_CAPACITY];
+  private int[] items = new int[INITIAL_CAPACITY];
+
+  /**
+   * The slots of the scheduled records as a binary heap, the first record is at index 0.
+   */
+  private int[] heap = new int[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * The slots of polled records, which are used again before new slots.
+   */
+  private int[] freeSlots = new int[INITIAL_CAPACITY];
+  private int freeCount = 0;
+
+  /**
+   * The number of slots used so far.
+   */
+  private int usedSlots = 0;
+
+  /**
+   * Adds a record.
+   *
+   * @param time     the scheduled time
+   * @param sequence the insertion number
+   * @param sentTime the time the message was sent
+   * @param type     the message type
+   * @param from     the id of the sending node
+   * @param to       the id of the receiving node
+   * @param item     the id of the block or transaction
+   */
+  public void add(long time, long sequence, long sentTime, int type, int from, int to,
+      int item) {
+    int slot;
+    if (this.freeCount > 0) {
+      slot = this.freeSlots[--this.freeCount];
+    } else {
+      if (this.usedSlots == this.times.length) {
+        grow();
+      }
+      slot = this.usedSlots++;
+    }
+    this.times[slot] = time;
+    this.sequences[slot] = sequence;
+    this.sentTimes[slot] = sentTime;
+    this.types[slot] = type;
+    this.from[slot] = from;
+    this.to[slot] = to;
+    this.items[slot] = item;
+    // Sift up, moving parents down until the position of the new slot is found
+    int index = this.size++;
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!before(slot, this.heap[parent])) {
+        break;
+      }
+      this.heap[index] = this.heap[parent];
+      index = parent;
+    }
+    this.heap[index] = slot;
+  }
+
+  /**
+   * Removes the first record and frees its slot, its fields must be read before.
+   */
+  public void poll() {
+    this.freeSlots[this.freeCount++] = this.heap[0];
+    int last = this.heap[--this.size];
+    // Sift the last slot down from the root
+    int index = 0;
+    int half = this.size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      int right = child + 1;
+      if (right < this.size && before(this.heap[right], this.heap[child])) {
+        child = right;
+      }
+      if (!before(this.heap[child], last)) {
+        break;
+      }
+      this.heap[index] = this.heap[child];
+      index = child;
+    }
+    this.heap[index] = last;
+  }
+
+  /**
+   * Whether no record is scheduled.
+   *
+   * @return true if the list is empty
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Gets the number of scheduled records.
+   *
+   * @return the size
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Removes all records.
+   */
+  public void clear() {
+    this.size = 0;
+    this.freeCount = 0;
+    this.usedSlots = 0;
+  }
+
+  /**
+   * Gets the scheduled time of the first record.
+   *
+   * @return the time
+   */
+  public long peekTime() {
+    return this.times[this.heap[0]];
+  }
+
+  /**
+   * Gets the insertion number of the first record.
+   *
+   * @return the insertion number
+   */
+  public long peekSequence() {
+    return this.sequences[this.heap[0]];
+  }
+
+  /**
+   * Gets the time the first message was sent.
+   *
+   * @return the time
+   */
+  public long peekSentTime() {
+    return this.sentTimes[this.heap[0]];
+  }
+
+  /**
+   * Gets the type of the first message.
+   *
+   * @return the type
+   */
+  public int peekType() {
+    return this.types[this.heap[0]];
+  }
+
+  /**
+   * Gets the id of the sending node of the first message.
+   *
+   * @return the node id
+   */
+  public int peekFrom() {
+    return this.from[this.heap[0]];
+  }
+
+  /**
+   * Gets the id of the receiving node of the first message.
+   *
+   * @return the node id
+   */
+  public int peekTo() {
+    return this.to[this.heap[0]];
+  }
+
+  /**
+   * Gets the id of the block or transaction of the first message.
+   *
+   * @return the id
+   */
+  public int peekItem() {
+    return this.items[this.heap[0]];
+  }
+
+  /**
+   * Whether the record in a slot is scheduled before the record in another slot.
+   */
+  private boolean before(int slot, int other) {
+    long time = this.times[slot];
+    long otherTime = this.times[other];
+    return time < otherTime || time == otherTime && this.sequences[slot] < this.sequences[other];
+  }
+
+  private void grow() {
+    int capacity = this.times.length * 2;
+    this.times = Arrays.copyOf(this.times, capacity);
+    this.sequences = Arrays.copyOf(this.sequences, capacity);
+    this.sentTimes = Arrays.copyOf(this.sentTimes, capacity);
+    this.types = Arrays.copyOf(this.types, capacity);
+    this.from = Arrays.copyOf(this.from, capacity);
+    this.to = Arrays.copyOf(this.to, capacity);
+    this.items = Arrays.copyOf(this.items, capacity);
+    // At most every slot is scheduled or free
+    this.heap = Arrays.copyOf(this.heap, capacity);
+    this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+  }
+}
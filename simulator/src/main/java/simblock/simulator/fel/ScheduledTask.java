@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.fel;
+
+import java.io.Serializable;
+
+import simblock.task.Task;
+
+/**
+ * Represents a {@link Task} that is scheduled to be executed.
+ */
+public class ScheduledTask implements Comparable<ScheduledTask>, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Task task;
+  private final long scheduledTime;
+
+  /**
+   * Insertion number, used to execute concurrent tasks in the order they were scheduled.
+   */
+  private final long sequence;
+
+  /**
+   * Whether the task was cancelled and must be skipped when it is dequeued.
+   */
+  private boolean cancelled = false;
+
+  /**
+   * Instantiates a new ScheduledTask.
+   *
+   * @param task          - the task to be executed
+   * @param scheduledTime - the simulation time at which the task is to be executed
+   * @param sequence      - the insertion number of the task
+   */
+  public ScheduledTask(Task task, long scheduledTime, long sequence) {
+    this.task = task;
+    this.scheduledTime = scheduledTime;
+    this.sequence = sequence;
+  }
+
+  /**
+   * Gets the task.
+   *
+   * @return the {@link Task} instance
+   */
+  public Task getTask() {
+    return this.task;
+  }
+
+  /**
+   * Gets the scheduled time at which the task is to be executed.
+   *
+   * @return the scheduled time
+   */
+  public long getScheduledTime() {
+    return this.scheduledTime;
+  }
+
+  /**
+   * Gets the insertion number of the task.
+   *
+   * @return the sequence number
+   */
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+   * Marks the task as cancelled, it stays in the Future Event List until it is dequeued or the
+   * list is compacted.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Whether the task was cancelled.
+   *
+   * @return true if the task must not be executed
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Compares the two scheduled tasks.
+   *
+   * @param o other task
+   * @return 1 if self is executed later, 0 if concurrent and -1 if self is to be executed before.
+   */
+  @Override
+  public int compareTo(ScheduledTask o) {
+    if (this == o) {
+      return 0;
+    }
+    int order = Long.compare(this.scheduledTime, o.scheduledTime);
+    if (order != 0) {
+      return order;
+    }
+    return Long.compare(this.sequence, o.sequence);
+  }
+}
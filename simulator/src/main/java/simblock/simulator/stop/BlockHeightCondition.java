@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import simblock.block.Block;
+
+/**
+ * The type Block height condition is met once a miner starts to mine on a block of the given
+ * height, so the simulated chain ends at that height.
+ */
+public class BlockHeightCondition extends StopCondition {
+  private static final long serialVersionUID = 1L;
+
+  private final int height;
+  private boolean met = false;
+
+  /**
+   * Instantiates a new Block height condition.
+   *
+   * @param height the height of the last block
+   */
+  public BlockHeightCondition(int height) {
+    this.height = height;
+  }
+
+  @Override
+  public void onMinting(Block parent) {
+    if (parent.getHeight() >= this.height) {
+      this.met = true;
+    }
+  }
+
+  @Override
+  public boolean isMet() {
+    return this.met;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import java.util.List;
+import simblock.block.Block;
+import simblock.node.Node;
+import simblock.simulator.SimulationContext;
+
+/**
+ * The type Composite condition is met when all or any of its conditions are met. Every event is
+ * passed on to all conditions.
+ */
+public class CompositeCondition extends StopCondition {
+  private static final long serialVersionUID = 1L;
+
+  private final List<StopCondition> conditions;
+
+  /**
+   * Whether all conditions have to be met, otherwise any of them.
+   */
+  private final boolean all;
+
+  /**
+   * Instantiates a new Composite condition.
+   *
+   * @param conditions the conditions
+   * @param all        true if all conditions have to be met, false if any of them
+   */
+  public CompositeCondition(List<StopCondition> conditions, boolean all) {
+    this.conditions = conditions;
+    this.all = all;
+  }
+
+  @Override
+  public void start(SimulationContext context) {
+    for (StopCondition condition : this.conditions) {
+      condition.start(context);
+    }
+  }
+
+  @Override
+  public void onMinting(Block parent) {
+    for (StopCondition condition : this.conditions) {
+      condition.onMinting(parent);
+    }
+  }
+
+  @Override
+  public void onArrival(Block block, Node node) {
+    for (StopCondition condition : this.conditions) {
+      condition.onArrival(block, node);
+    }
+  }
+
+  @Override
+  public boolean isMet() {
+    for (StopCondition condition : this.conditions) {
+      if (condition.isMet() != this.all) {
+        return !this.all;
+      }
+    }
+    return this.all;
+  }
+
+  @Override
+  public boolean needsAllArrivals() {
+    for (StopCondition condition : this.conditions) {
+      if (condition.needsAllArrivals()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
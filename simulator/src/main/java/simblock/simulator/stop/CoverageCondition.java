@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import simblock.block.Block;
+import simblock.node.Node;
+
+/**
+ * The type Coverage condition is met once the given number of blocks have each arrived at the
+ * given percentage of the nodes. With 100 percent it stops after the given number of blocks
+ * are fully propagated. The genesis block is not counted.
+ */
+public class CoverageCondition extends StopCondition {
+  private static final long serialVersionUID = 1L;
+
+  private final int blocks;
+  private final double percent;
+
+  /**
+   * The number of nodes each block has arrived at, until the block reaches the coverage.
+   */
+  private final Map<Block, Integer> arrivals = new HashMap<>();
+
+  /**
+   * The ids of the blocks that have reached the coverage, so later arrivals are not counted
+   * again.
+   */
+  private final BitSet covered = new BitSet();
+
+  /**
+   * The number of blocks that have reached the coverage.
+   */
+  private int coveredBlocks = 0;
+
+  /**
+   * Instantiates a new Coverage condition.
+   *
+   * @param blocks  the number of blocks
+   * @param percent the percentage of the nodes a block has to reach
+   */
+  public CoverageCondition(int blocks, double percent) {
+    this.blocks = blocks;
+    this.percent = percent;
+  }
+
+  @Override
+  public void onArrival(Block block, Node node) {
+    if (block.getHeight() == 0 || this.covered.get(block.getId())) {
+      return;
+    }
+    int count = this.arrivals.merge(block, 1, Integer::sum);
+    int size = node.getContext().getSimulator().getSimulatedNodes().size();
+    if (count >= Math.ceil(size * this.percent / 100)) {
+      this.arrivals.remove(block);
+      this.covered.set(block.getId());
+      this.coveredBlocks++;
+    }
+  }
+
+  @Override
+  public boolean isMet() {
+    return this.coveredBlocks >= this.blocks;
+  }
+
+  @Override
+  public boolean needsAllArrivals() {
+    return true;
+  }
+}
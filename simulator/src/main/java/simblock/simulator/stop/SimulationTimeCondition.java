@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import simblock.simulator.SimulationContext;
+import simblock.task.Task;
+
+/**
+ * The type Simulation time condition is met once the simulation time has reached the given
+ * time. It schedules a task at that time instead of watching the clock.
+ */
+public class SimulationTimeCondition extends StopCondition {
+  private static final long serialVersionUID = 1L;
+
+  private final long time;
+  private boolean met = false;
+
+  /**
+   * Whether the task of the condition is scheduled, a simulation resumed from a checkpoint
+   * already has it in its task queue.
+   */
+  private boolean scheduled = false;
+
+  /**
+   * Instantiates a new Simulation time condition.
+   *
+   * @param time the simulation time in milliseconds
+   */
+  public SimulationTimeCondition(long time) {
+    this.time = time;
+  }
+
+  @Override
+  public void start(SimulationContext context) {
+    if (!this.scheduled) {
+      this.scheduled = true;
+      context.getTimer().putTaskAbsoluteTime(new TimeReachedTask(this, context), this.time);
+    }
+  }
+
+  @Override
+  public boolean isMet() {
+    return this.met;
+  }
+
+  /**
+   * The task run when the simulation time is reached.
+   */
+  private static class TimeReachedTask implements Task {
+    private static final long serialVersionUID = 1L;
+
+    private final SimulationTimeCondition condition;
+    private final SimulationContext context;
+
+    TimeReachedTask(SimulationTimeCondition condition, SimulationContext context) {
+      this.condition = condition;
+      this.context = context;
+    }
+
+    @Override
+    public long getInterval() {
+      return 0;
+    }
+
+    @Override
+    public void run() {
+      this.condition.met = true;
+      this.context.checkStopCondition();
+    }
+  }
+}
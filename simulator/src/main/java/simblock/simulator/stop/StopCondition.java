@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import simblock.block.Block;
+import simblock.node.Node;
+import simblock.simulator.SimulationContext;
+
+/**
+ * The type Stop condition decides when a simulation ends. A condition is not checked for every
+ * task, it is notified of the events it depends on instead: a miner starting to mine on a
+ * block, a block arriving at a node and the conditions' own scheduled tasks. The simulation
+ * stops as soon as the condition is met after such an event.
+ *
+ * <p>Conditions are written as <code>name:value</code>, see {@link #parse(String)}. Every
+ * condition stays met once it is met, so conditions can be combined freely.
+ */
+public abstract class StopCondition implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Prepares the condition before the simulation starts or resumes from a checkpoint.
+   *
+   * @param context the simulation
+   */
+  public void start(SimulationContext context) {
+  }
+
+  /**
+   * Notifies the condition that a miner is about to mine on a block. If the condition is met
+   * afterwards, the block is not mined.
+   *
+   * @param parent the block the miner mines on
+   */
+  public void onMinting(Block parent) {
+  }
+
+  /**
+   * Notifies the condition that a block has arrived at a node.
+   *
+   * @param block the block
+   * @param node  the node
+   */
+  public void onArrival(Block block, Node node) {
+  }
+
+  /**
+   * Whether the simulation has to stop.
+   *
+   * @return true if the condition is met
+   */
+  public abstract boolean isMet();
+
+  /**
+   * Whether the condition has to be notified of the arrivals at all nodes of the network, which
+   * the partitions of a parallel simulation do not see.
+   *
+   * @return true if the condition needs all arrivals
+   */
+  public boolean needsAllArrivals() {
+    return false;
+  }
+
+  /**
+   * Parses a stop condition. A condition is one of
+   * <ul>
+   *   <li><code>height:h</code>, the chain has reached height h,</li>
+   *   <li><code>time:t</code>, t milliseconds of simulation time have passed,</li>
+   *   <li><code>wallclock:s</code>, the simulation has run for s seconds,</li>
+   *   <li><code>coverage:n@p</code>, n blocks have reached p percent of the nodes.</li>
+   * </ul>
+   * Conditions joined by <code>+</code> stop when all of them are met, conditions separated by
+   * <code>,</code> stop when any of them is met, <code>+</code> binds tighter.
+   *
+   * @param spec the condition
+   * @return the condition
+   * @throws IllegalArgumentException if the condition is invalid
+   */
+  public static StopCondition parse(String spec) {
+    List<StopCondition> any = new ArrayList<>();
+    for (String group : spec.split(",")) {
+      List<StopCondition> all = new ArrayList<>();
+      for (String term : group.split("\\+")) {
+        all.add(parseTerm(term.trim()));
+      }
+      any.add(all.size() == 1 ? all.get(0) : new CompositeCondition(all, true));
+    }
+    return any.size() == 1 ? any.get(0) : new CompositeCondition(any, false);
+  }
+
+  /**
+   * Parses a single stop condition.
+   *
+   * @param term the condition of the form name:value
+   * @return the condition
+   */
+  private static StopCondition parseTerm(String term) {
+    String[] pair = term.split(":", 2);
+    if (pair.length != 2) {
+      throw new IllegalArgumentException("Expecting name:value but got " + term);
+    }
+    switch (pair[0]) {
+      case "height":
+        return new BlockHeightCondition(Integer.parseInt(pair[1]));
+      case "time":
+        return new SimulationTimeCondition(Long.parseLong(pair[1]));
+      case "wallclock":
+        return new WallClockCondition(Long.parseLong(pair[1]));
+      case "coverage":
+        String[] value = pair[1].split("@", 2);
+        if (value.length != 2) {
+          throw new IllegalArgumentException("Expecting coverage:blocks@percent but got " + term);
+        }
+        return new CoverageCondition(Integer.parseInt(value[0]), Double.parseDouble(value[1]));
+      default:
+        throw new IllegalArgumentException("Unknown stop condition " + term);
+    }
+  }
+}
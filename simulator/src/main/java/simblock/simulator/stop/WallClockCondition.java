@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.stop;
+
+import simblock.simulator.SimulationContext;
+
+/**
+ * The type Wall clock condition is met once the simulation has run for the given number of
+ * seconds since it was started or resumed. The clock is only looked at when another event is
+ * checked, so a simulation stopped by it is not reproducible.
+ */
+public class WallClockCondition extends StopCondition {
+  private static final long serialVersionUID = 1L;
+
+  private final long seconds;
+
+  /**
+   * The wall clock time in milliseconds to stop at, 0 before the simulation is started.
+   */
+  private transient long deadline = 0;
+
+  /**
+   * Instantiates a new Wall clock condition.
+   *
+   * @param seconds the wall clock budget in seconds
+   */
+  public WallClockCondition(long seconds) {
+    this.seconds = seconds;
+  }
+
+  @Override
+  public void start(SimulationContext context) {
+    this.deadline = System.currentTimeMillis() + this.seconds * 1000;
+  }
+
+  @Override
+  public boolean isMet() {
+    return this.deadline != 0 && System.currentTimeMillis() >= this.deadline;
+  }
+}
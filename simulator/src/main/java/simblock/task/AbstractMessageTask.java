@@ -16,14 +16,25 @@
 
 package simblock.task;
 
-import static simblock.simulator.Network.getLatency;
-
 import simblock.node.Node;
+import simblock.simulator.SimulationContext;
 
 /**
  * The type Abstract message task.
  */
 public abstract class AbstractMessageTask implements Task {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The message types, see {@link #getType()}.
+   */
+  public static final int INV = 0;
+  public static final int REC = 1;
+  public static final int GET_BLOCK_TXN = 2;
+  public static final int CMPCT_BLOCK = 3;
+  public static final int BLOCK = 4;
+  public static final int TRANSACTION = 5;
+
   /**
    * The sending entity.
    */
@@ -33,6 +44,11 @@ public abstract class AbstractMessageTask implements Task {
    */
   private final Node to;
 
+  /**
+   * The message delay, drawn when it is first asked for.
+   */
+  private long latency = -1;
+
   /**
    * Instantiates a new Abstract message task.
    *
@@ -63,13 +79,44 @@ public abstract class AbstractMessageTask implements Task {
   }
 
   /**
-   * Get the message delay with regards to respective regions.
+   * Gets the type of the message, the receiver dispatches the message by its type.
+   *
+   * @return the message type
+   */
+  public abstract int getType();
+
+  /**
+   * Gets the simulation the message is sent in.
+   *
+   * @return the simulation context of the sending node, or of the receiving node if the message
+   *     has no sender
+   */
+  public SimulationContext getContext() {
+    return this.from != null ? this.from.getContext() : this.to.getContext();
+  }
+
+  /**
+   * Detaches the part of the message that has to be executed at the sender when the message is
+   * received. Used by the {@link simblock.simulator.ParallelEngine} if sender and receiver are
+   * simulated by different partitions, the returned task is then scheduled at the sender instead.
+   *
+   * @return the task to be run at the sender or null if the message has no such part
+   */
+  public Task detachSenderCallback() {
+    return null;
+  }
+
+  /**
+   * Get the message delay with regards to respective regions. The delay is drawn once, so
+   * every call returns the same delay.
    *
    * @return the message sending interval
    */
   public long getInterval() {
-    long latency = getLatency(this.from.getRegion(), this.to.getRegion());
-    return latency ;
+    if (this.latency < 0) {
+      this.latency = getContext().getNetwork().getLatency(this.from, this.to);
+    }
+    return this.latency;
   }
 
   /**
@@ -23,6 +23,8 @@ import simblock.node.Node;
  * The type Abstract minting task represents .
  */
 public abstract class AbstractMintingTask implements Task {
+  private static final long serialVersionUID = 1L;
+
   /**
    * The node to mint the block.
    */
@@ -71,4 +73,19 @@ public abstract class AbstractMintingTask implements Task {
   public long getInterval() {
     return this.interval;
   }
+
+  /**
+   * Mines the block unless the stop condition of the simulation ends it first.
+   */
+  @Override
+  public void run() {
+    if (!this.minter.getContext().stopBeforeMinting(this)) {
+      this.mint();
+    }
+  }
+
+  /**
+   * Mints the block on the parent.
+   */
+  protected abstract void mint();
 }
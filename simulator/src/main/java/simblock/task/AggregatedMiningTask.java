@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import java.math.BigInteger;
+import simblock.block.Block;
+import simblock.node.Node;
+import simblock.node.consensus.AggregatedMiningScheduler;
+
+/**
+ * The network wide mining task scheduled by the {@link AggregatedMiningScheduler}. The drawn
+ * miner mines on the block it knows when the task is executed.
+ */
+public class AggregatedMiningTask extends AbstractMintingTask {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Instantiates a new Aggregated mining task.
+   *
+   * @param minter   the drawn miner
+   * @param interval the interval
+   */
+  public AggregatedMiningTask(Node minter, long interval) {
+    super(minter, interval);
+  }
+
+  /**
+   * Gets the current block of the miner.
+   *
+   * @return the parent or null if the miner does not know any block
+   */
+  @Override
+  public Block getParent() {
+    return this.getMinter().getBlock();
+  }
+
+  @Override
+  protected void mint() {
+    BigInteger difficulty = this.getMinter().getContext().getAggregatedMiningScheduler()
+        .mine(this);
+    if (difficulty != null) {
+      new MiningTask(this.getMinter(), 0, difficulty).mint();
+    }
+  }
+}
@@ -16,19 +16,18 @@
 
 package simblock.task;
 
-import static simblock.settings.SimulationConfiguration.DEBUG_MODE;
-import static simblock.simulator.Main.OUT_JSON_FILE;
-import static simblock.simulator.Network.getLatency;
-import static simblock.simulator.Timer.getCurrentTime;
-
+import java.io.PrintWriter;
 import simblock.block.Block;
 import simblock.node.Node;
+import simblock.simulator.SimulationContext;
 
 /**
  * The type Block message task.
  */
 // Bitcoin protocol Wiki: https://en.bitcoin.it/wiki/Protocol_documentation#block
 public class BlockMessageTask extends AbstractMessageTask {
+  private static final long serialVersionUID = 1L;
+
   /**
    * The {@link Block} that is sent.
    */
@@ -39,6 +38,11 @@ public class BlockMessageTask extends AbstractMessageTask {
    */
   private final long interval;
 
+  /**
+   * Whether the end of the transmission is signalled to the sender by a separate task.
+   */
+  private boolean senderCallbackDetached = false;
+
   /**
    * Instantiates a new Block message task.
    *
@@ -48,9 +52,27 @@ public class BlockMessageTask extends AbstractMessageTask {
    * @param delay the delay of the message transmission
    */
   public BlockMessageTask(Node from, Node to, Block block, long delay) {
+    this(from, to, block, delay, from.getContext().getNetwork().getLatency(from, to));
+  }
+
+  /**
+   * Instantiates a new Block message task with a latency that is already drawn.
+   *
+   * @param from    the sender
+   * @param to      the receiver
+   * @param block   the block instance
+   * @param delay   the delay of the message transmission
+   * @param latency the latency between sender and receiver
+   */
+  public BlockMessageTask(Node from, Node to, Block block, long delay, long latency) {
     super(from, to);
     this.block = block;
-    this.interval = getLatency(this.getFrom().getRegion(), this.getTo().getRegion()) + delay;
+    this.interval = latency + delay;
+  }
+
+  @Override
+  public int getType() {
+    return BLOCK;
   }
 
   @Override
@@ -58,29 +80,54 @@ public class BlockMessageTask extends AbstractMessageTask {
     return this.interval;
   }
 
+  @Override
+  public Task detachSenderCallback() {
+    this.senderCallbackDetached = true;
+    return new TransmissionEndTask(this.getFrom(), this.interval);
+  }
+
   /**
    * Sends a new block message from the sender to the receiver and logs the event.
    */
   @Override
   public void run() {
-    this.getFrom().getPropagationProtocol().endBlockTransmission();
-
-    if(DEBUG_MODE){
-      OUT_JSON_FILE.print("{");
-      OUT_JSON_FILE.print("\"kind\":\"flow-block\",");
-      OUT_JSON_FILE.print("\"content\":{");
-      OUT_JSON_FILE.print("\"transmission-timestamp\":" + (getCurrentTime() - this.interval) + ",");
-      OUT_JSON_FILE.print("\"reception-timestamp\":" + getCurrentTime() + ",");
-      OUT_JSON_FILE.print("\"begin-node-id\":" + getFrom().getNodeID() + ",");
-      OUT_JSON_FILE.print("\"end-node-id\":" + getTo().getNodeID() + ",");
-      OUT_JSON_FILE.print("\"block-id\":" + block.getId());
-      OUT_JSON_FILE.print("}");
-      OUT_JSON_FILE.print("},");
-      OUT_JSON_FILE.flush();
+    if (!this.senderCallbackDetached) {
+      this.getFrom().getPropagationProtocol().endBlockTransmission();
     }
+
+    printFlow(getFrom(), getTo(), this.block,
+        getTo().getContext().getTimer().getCurrentTime() - this.interval);
     super.run();
   }
 
+  /**
+   * Logs the transmission of a block or compact block if
+   * {@link simblock.settings.SimulationConfiguration#DEBUG_MODE} is set.
+   *
+   * @param from             the sender
+   * @param to               the receiver
+   * @param block            the block
+   * @param transmissionTime the time the transmission started
+   */
+  public static void printFlow(Node from, Node to, Block block, long transmissionTime) {
+    SimulationContext context = to.getContext();
+    if(context.getConfig().DEBUG_MODE){
+      PrintWriter outJsonFile = context.getOutJsonFile();
+      long currentTime = context.getTimer().getCurrentTime();
+      outJsonFile.print("{");
+      outJsonFile.print("\"kind\":\"flow-block\",");
+      outJsonFile.print("\"content\":{");
+      outJsonFile.print("\"transmission-timestamp\":" + transmissionTime + ",");
+      outJsonFile.print("\"reception-timestamp\":" + currentTime + ",");
+      outJsonFile.print("\"begin-node-id\":" + from.getNodeID() + ",");
+      outJsonFile.print("\"end-node-id\":" + to.getNodeID() + ",");
+      outJsonFile.print("\"block-id\":" + block.getId());
+      outJsonFile.print("}");
+      outJsonFile.print("},");
+      outJsonFile.flush();
+    }
+  }
+
   /**
    * Get block.
    *
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package simblock.task;
+
+import simblock.node.Node;
+import simblock.simulator.ChurnModel;
+
+/**
+ * Task that takes a churn node offline at the end of its session or brings it back online at
+ * the end of its downtime, see {@link ChurnModel}.
+ */
+public class ChurnTask implements Task {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The churn node.
+   */
+  private final Node node;
+
+  /**
+   * The time until the node leaves or rejoins.
+   */
+  private final long interval;
+
+  /**
+   * Instantiates a new Churn task.
+   *
+   * @param node     the churn node
+   * @param interval the time until the node leaves or rejoins
+   */
+  public ChurnTask(Node node, long interval) {
+    this.node = node;
+    this.interval = interval;
+  }
+
+  @Override
+  public long getInterval() {
+    return this.interval;
+  }
+
+  @Override
+  public void run() {
+    ChurnModel churn = this.node.getContext().getChurnModel();
+    if (this.node.isOnline()) {
+      churn.leave(this.node);
+    } else {
+      churn.join(this.node);
+    }
+  }
+}
@@ -16,11 +16,6 @@
 
 package simblock.task;
 
-import static simblock.settings.SimulationConfiguration.DEBUG_MODE;
-import static simblock.simulator.Main.OUT_JSON_FILE;
-import static simblock.simulator.Network.getLatency;
-import static simblock.simulator.Timer.getCurrentTime;
-
 import simblock.block.Block;
 import simblock.node.Node;
 
@@ -29,6 +24,8 @@ import simblock.node.Node;
  */
 // Compact block relay protocol Wiki: https://github.com/bitcoin/bips/blob/master/bip-0152.mediawiki
 public class CmpctBlockMessageTask extends AbstractMessageTask {
+  private static final long serialVersionUID = 1L;
+
   /**
    * The {@link Block} that is sent.
    */
@@ -39,6 +36,11 @@ public class CmpctBlockMessageTask extends AbstractMessageTask {
    */
   private final long interval;
 
+  /**
+   * Whether the end of the transmission is signalled to the sender by a separate task.
+   */
+  private boolean senderCallbackDetached = false;
+
   /**
    * Instantiates a new Compact block message task.
    *
@@ -48,9 +50,27 @@ public class CmpctBlockMessageTask extends AbstractMessageTask {
    * @param delay the delay of the message transmission
    */
   public CmpctBlockMessageTask(Node from, Node to, Block block, long delay) {
+    this(from, to, block, delay, from.getContext().getNetwork().getLatency(from, to));
+  }
+
+  /**
+   * Instantiates a new Compact block message task with a latency that is already drawn.
+   *
+   * @param from    the sender
+   * @param to      the receiver
+   * @param block   the block instance
+   * @param delay   the delay of the message transmission
+   * @param latency the latency between sender and receiver
+   */
+  public CmpctBlockMessageTask(Node from, Node to, Block block, long delay, long latency) {
     super(from, to);
     this.block = block;
-    this.interval = getLatency(this.getFrom().getRegion(), this.getTo().getRegion()) + delay;
+    this.interval = latency + delay;
+  }
+
+  @Override
+  public int getType() {
+    return CMPCT_BLOCK;
   }
 
 
@@ -59,26 +79,23 @@ public class CmpctBlockMessageTask extends AbstractMessageTask {
     return this.interval;
   }
 
+  @Override
+  public Task detachSenderCallback() {
+    this.senderCallbackDetached = true;
+    return new TransmissionEndTask(this.getFrom(), this.interval);
+  }
+
   /**
    * Sends a new compact block message from the sender to the receiver and logs the event.
    */
   @Override
   public void run() {
 
-    this.getFrom().getPropagationProtocol().endBlockTransmission();;
-    if(DEBUG_MODE){
-      OUT_JSON_FILE.print("{");
-      OUT_JSON_FILE.print("\"kind\":\"flow-block\",");
-      OUT_JSON_FILE.print("\"content\":{");
-      OUT_JSON_FILE.print("\"transmission-timestamp\":" + (getCurrentTime() - this.interval) + ",");
-      OUT_JSON_FILE.print("\"reception-timestamp\":" + getCurrentTime() + ",");
-      OUT_JSON_FILE.print("\"begin-node-id\":" + getFrom().getNodeID() + ",");
-      OUT_JSON_FILE.print("\"end-node-id\":" + getTo().getNodeID() + ",");
-      OUT_JSON_FILE.print("\"block-id\":" + block.getId());
-      OUT_JSON_FILE.print("}");
-      OUT_JSON_FILE.print("},");
-      OUT_JSON_FILE.flush();
+    if (!this.senderCallbackDetached) {
+      this.getFrom().getPropagationProtocol().endBlockTransmission();
     }
+    BlockMessageTask.printFlow(getFrom(), getTo(), this.block,
+        getTo().getContext().getTimer().getCurrentTime() - this.interval);
     super.run();
   }
 
@@ -4,6 +4,8 @@ import simblock.node.AdversarialNode;
  * Task to model an adversarialy delayed sending of a message
  */
 public class DelayTask implements Task{
+  private static final long serialVersionUID = 1L;
+
   long delay;
   AbstractMessageTask message;
   AdversarialNode node;
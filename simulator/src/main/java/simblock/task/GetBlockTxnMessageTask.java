@@ -24,6 +24,8 @@ import simblock.node.Node;
  */
 // Compact block relay protocol Wiki: https://github.com/bitcoin/bips/blob/master/bip-0152.mediawiki
 public class GetBlockTxnMessageTask extends AbstractMessageTask {
+ private static final long serialVersionUID = 1L;
+
 	/**
      * The {@link Block} that is sent by from as compact block.
      */
@@ -33,6 +35,11 @@ public class GetBlockTxnMessageTask extends AbstractMessageTask {
 		super(from, to);
 		this.block = block;
 	}
+
+	@Override
+	public int getType() {
+		return GET_BLOCK_TXN;
+	}
     
     /**
      * Get block.
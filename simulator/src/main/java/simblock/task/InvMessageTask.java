@@ -24,6 +24,7 @@ import simblock.node.Node;
  */
 // Bitcoin protocol Wiki: https://en.bitcoin.it/wiki/Protocol_documentation#inv
 public class InvMessageTask extends AbstractMessageTask {
+  private static final long serialVersionUID = 1L;
 
   /**
    * Block to be advertised.
@@ -42,6 +43,11 @@ public class InvMessageTask extends AbstractMessageTask {
     this.block = block;
   }
 
+  @Override
+  public int getType() {
+    return INV;
+  }
+
   /**
    * Gets block.
    *
@@ -16,23 +16,23 @@
 
 package simblock.task;
 
-import static simblock.simulator.Timer.getCurrentTime;
-import static simblock.simulator.Simulator.getSimulatedNodes;
-import static simblock.simulator.Timer.putTask;
-
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.stream.Collectors;
-import static simblock.settings.SimulationConfiguration.INTERVAL;
 
 import simblock.block.ProofOfWorkBlock;
 import simblock.block.Transaction;
 import simblock.node.Node;
+import simblock.simulator.SimulationContext;
 
 /**
  * The type Mining task.
  */
 public class MiningTask extends AbstractMintingTask {
+  private static final long serialVersionUID = 1L;
+
   private final BigInteger difficulty;
 
   /**
@@ -50,21 +50,24 @@ public class MiningTask extends AbstractMintingTask {
   HashSet<Transaction> transactions = new HashSet<>();
 
   @Override
-  public void run() {
+  protected void mint() {
+    SimulationContext context = this.getMinter().getContext();
     if (this.getMinter().getPropagationProtocol().useTransactions()) {
       // moves 10 Transactions from mempool of minter into the block
       System.out.println("mempool "+this.minter.mempool.size()+" "+this.minter.knownTransactions.size());
       transactions = new HashSet<>(this.getMinter().mempool.stream().limit(10).collect(Collectors.toSet()));
       // creates 10 new Transactions at random nodes anytime in the next 10 mins
+      ArrayList<Node> simulatedNodes = context.getSimulator().getSimulatedNodes();
+      Random random = context.getRandom();
       for (int i = 0; i <= 10 && i<=transactions.size(); i++) {
-        Transaction t = new Transaction();
-        TransactionTask task = new TransactionTask(null, getSimulatedNodes().get((int) (Math.random() * getSimulatedNodes().size())), t, (long) (Math.max(Math.random() * INTERVAL,1)));
-        putTask(task);
+        Transaction t = new Transaction(context.nextTransactionId());
+        TransactionTask task = new TransactionTask(null, simulatedNodes.get((int) (random.nextDouble() * simulatedNodes.size())), t, (long) (Math.max(random.nextDouble() * context.getConfig().INTERVAL,1)));
+        context.getTimer().putTask(task);
       }
     }
 
     ProofOfWorkBlock createdBlock = new ProofOfWorkBlock(
-        (ProofOfWorkBlock) this.getParent(), this.getMinter(), getCurrentTime(),
+        (ProofOfWorkBlock) this.getParent(), this.getMinter(), context.getTimer().getCurrentTime(),
         this.difficulty, transactions
     );
     this.getMinter().receiveBlock(createdBlock);
@@ -24,6 +24,7 @@ import simblock.node.Node;
  */
 
 public class RecMessageTask extends AbstractMessageTask {
+  private static final long serialVersionUID = 1L;
 
   /**
    * The block to  be received.
@@ -42,6 +43,11 @@ public class RecMessageTask extends AbstractMessageTask {
     this.block = block;
   }
 
+  @Override
+  public int getType() {
+    return REC;
+  }
+
   /**
    * Gets the block to be received.
    *
@@ -16,13 +16,13 @@
 
 package simblock.task;
 
-import static simblock.simulator.Timer.getCurrentTime;
-
 import java.math.BigInteger;
 import simblock.block.SamplePoSBlock;
 import simblock.node.Node;
 
 public class SampleStakingTask extends AbstractMintingTask {
+  private static final long serialVersionUID = 1L;
+
   private final BigInteger difficulty;
 
   public SampleStakingTask(Node minter, long interval, BigInteger difficulty) {
@@ -31,9 +31,10 @@ public class SampleStakingTask extends AbstractMintingTask {
   }
 
   @Override
-  public void run() {
+  protected void mint() {
     SamplePoSBlock createdBlock = new SamplePoSBlock(
-        (SamplePoSBlock) this.getParent(), this.getMinter(), getCurrentTime(),
+        (SamplePoSBlock) this.getParent(), this.getMinter(),
+        this.getMinter().getContext().getTimer().getCurrentTime(),
         this.difficulty
     );
     this.getMinter().receiveBlock(createdBlock);
@@ -16,10 +16,12 @@
 
 package simblock.task;
 
+import java.io.Serializable;
+
 /**
  * The interface Task. A task can be run and has its execution duration.
  */
-public interface Task {
+public interface Task extends Serializable {
   /**
    * Gets the execution duration of the task in milliseconds of simulated time.
    *
@@ -1,11 +1,11 @@
 package simblock.task;
 import simblock.node.Node;
 import simblock.block.Block;
-import static simblock.settings.NetworkConfiguration.T;
 /**
  * Task for NetworkTimeouts when waiting to long for blocks
  */
 public class TimeoutTask implements Task {
+  private static final long serialVersionUID = 1L;
 
   Node node;
   Block block;
@@ -25,6 +25,6 @@ public class TimeoutTask implements Task {
 
   @Override
   public long getInterval() {
-    return T;
+    return this.node.getContext().getNetworkConfig().T;
   }
 }
\ No newline at end of file
@@ -3,39 +3,55 @@ package simblock.task;
 import simblock.block.Transaction;
 import simblock.node.Node;
 
-import static simblock.simulator.Network.getLatency;
-import static simblock.settings.SimulationConfiguration.TRANSACTION_SIZE;
-import static simblock.simulator.Network.getBandwidth;
+import simblock.simulator.Network;
 /*
  * Task that models  the sending of a Transaction
  */
 public class TransactionTask extends AbstractMessageTask{
+  private static final long serialVersionUID = 1L;
+
   private Transaction transaction;
   private final long interval;
-  private final long size =TRANSACTION_SIZE;
+  private final long size;
 
   /**
    * creator used for sending transactions
    */
   public TransactionTask(Node from ,Node to,Transaction transaction){
-    super(from, to);
-    this.transaction = transaction;
-    this.interval = getLatency(this.getFrom().getRegion(), this.getTo().getRegion())+(
-      this.size / getBandwidth(this.getFrom().getRegion(), this.getTo().getRegion()) );
+    this(from, to, transaction, getTransmissionTime(from, to),
+        from.getContext().getNetwork().getLatency(from, to));
   }
   /**
    *
    * creator used for crating new transactions after a delay
    */
   public TransactionTask(Node from ,Node to,Transaction transaction, long delay){
+    this(from, to, transaction, from == null ? delay : getTransmissionTime(from, to) + delay,
+        from == null ? 0 : from.getContext().getNetwork().getLatency(from, to));
+  }
+  /**
+   * creator used for a transaction whose latency is already drawn, the transmission time
+   * includes any further delay
+   */
+  public TransactionTask(Node from ,Node to,Transaction transaction, long transmission, long latency){
     super(from, to);
     this.transaction = transaction;
-    if(from == null){
-      this.interval = 0 + delay;
-    }else{
-      this.interval = getLatency(this.getFrom().getRegion(), this.getTo().getRegion())+(
-      this.size / getBandwidth(this.getFrom().getRegion(), this.getTo().getRegion()) )+ delay;
-    }
+    this.size = getContext().getConfig().TRANSACTION_SIZE;
+    this.interval = latency + transmission;
+  }
+
+  /**
+   * the time to transmit a transaction from one node to another without the latency
+   */
+  public static long getTransmissionTime(Node from, Node to){
+    Network network = from.getContext().getNetwork();
+    return from.getContext().getConfig().TRANSACTION_SIZE
+        / network.getBandwidth(from.getRegion(), to.getRegion());
+  }
+
+  @Override
+  public int getType() {
+    return TRANSACTION;
   }
 
   @Override
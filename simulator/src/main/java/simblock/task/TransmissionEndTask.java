@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import simblock.node.Node;
+
+/**
+ * Task that signals the end of a block transmission to the sender. It replaces the call of a
+ * {@link BlockMessageTask} or {@link CmpctBlockMessageTask} at the receiver if sender and
+ * receiver are simulated by different partitions.
+ */
+public class TransmissionEndTask implements Task {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The sending node.
+   */
+  private final Node node;
+
+  /**
+   * The time until the block is received.
+   */
+  private final long interval;
+
+  /**
+   * Instantiates a new Transmission end task.
+   *
+   * @param node     the sending node
+   * @param interval the time until the block is received
+   */
+  public TransmissionEndTask(Node node, long interval) {
+    this.node = node;
+    this.interval = interval;
+  }
+
+  @Override
+  public long getInterval() {
+    return this.interval;
+  }
+
+  @Override
+  public void run() {
+    this.node.getPropagationProtocol().endBlockTransmission();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import simblock.node.Node;
+import simblock.settings.NetworkConfiguration;
+import simblock.settings.SimulationConfiguration;
+
+/**
+ * The type Construction benchmark measures how long {@link Main#constructNetwork} takes to
+ * construct networks of growing size. Every size is constructed several times with the same
+ * seed and the fastest construction is reported, so the first constructions warm up the JVM.
+ *
+ * <p>Run it with <code>gradle benchmarkConstruction -PbenchmarkArgs="1000,10000,100000
+ * --shuffled-peer-selection=false"</code>. The first argument lists the numbers of nodes, the
+ * others are options of the simulator, e.g. <code>--construction-threads=4</code>.
+ */
+public class ConstructionBenchmark {
+  private static final int REPETITIONS = 3;
+
+  private static final long SEED = 7;
+
+  /**
+   * The entry point of the benchmark.
+   *
+   * @param args the comma separated numbers of nodes, followed by options of the simulator
+   */
+  public static void main(String[] args) {
+    String sizes = args.length > 0 ? args[0] : "1000,10000,100000";
+    SimulationConfiguration template = new SimulationConfiguration();
+    NetworkConfiguration networkTemplate = new NetworkConfiguration();
+    List<String> options = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      if (!Main.applyOption(args[i], template, networkTemplate)) {
+        System.exit(1);
+      }
+      options.add(args[i]);
+    }
+    System.out.println("options " + options);
+    System.out.printf("%10s %12s %14s%n", "nodes", "time [ms]", "avg neighbors");
+    for (String size : sizes.split(",")) {
+      int nodes = Integer.parseInt(size.trim());
+      long best = Long.MAX_VALUE;
+      double neighbors = 0;
+      for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+        SimulationConfiguration config = new SimulationConfiguration();
+        NetworkConfiguration networkConfig = new NetworkConfiguration();
+        for (String option : options) {
+          Main.applyOption(option, config, networkConfig);
+        }
+        if (config.Propagation.isEmpty()) {
+          config.Propagation = "simblock.node.propagation.Cbr";
+        }
+        SimulationContext context = new SimulationContext(config, networkConfig, SEED);
+        long start = System.nanoTime();
+        Main.constructNetwork(context, nodes, 0, false);
+        best = Math.min(best, System.nanoTime() - start);
+        neighbors = averageNeighbors(context.getSimulator().getSimulatedNodes());
+      }
+      System.out.printf("%10d %12d %14.2f%n", nodes, best / 1000000, neighbors);
+    }
+  }
+
+  /**
+   * Gets the average number of neighbors of the nodes of a network.
+   *
+   * @param nodes the nodes
+   * @return the average number of neighbors
+   */
+  private static double averageNeighbors(List<Node> nodes) {
+    long sum = 0;
+    for (Node node : nodes) {
+      sum += node.getNeighborCount();
+    }
+    return (double) sum / nodes.size();
+  }
+}
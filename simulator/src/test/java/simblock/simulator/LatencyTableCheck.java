@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The type Latency table check tests that a {@link ParetoLatencyTable} samples the same
+ * distribution as the closed form. For every combination of mean latency and resolution it
+ * draws samples from the table and compares them with the Pareto distribution by a
+ * Kolmogorov-Smirnov test. The check exits with status 1 if a test rejects at the 0.1% level.
+ *
+ * <p>Run it with <code>gradle checkLatencyTable</code>, it is part of <code>gradle check</code>.
+ */
+public class LatencyTableCheck {
+  /**
+   * Mean latencies in milliseconds, from the shortest to the longest of the compiled regions.
+   */
+  private static final long[] MEANS = {32, 124, 255};
+
+  private static final int[] RESOLUTIONS = {1024, 4096, 16384};
+
+  private static final int SAMPLES = 1000000;
+
+  /**
+   * Critical value of the Kolmogorov-Smirnov statistic at the 0.1% level times the square root
+   * of the number of samples.
+   */
+  private static final double CRITICAL_VALUE = 1.95;
+
+  /**
+   * The entry point of the check.
+   *
+   * @param args the seed of the random number generator, 1 if not given
+   */
+  public static void main(String[] args) {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+    double critical = CRITICAL_VALUE / Math.sqrt(SAMPLES);
+    boolean passed = true;
+    for (long mean : MEANS) {
+      for (int resolution : RESOLUTIONS) {
+        double scale = mean - 5;
+        double shape = 0.2 * mean;
+        ParetoLatencyTable table = new ParetoLatencyTable(scale, shape, resolution);
+        double statistic = kolmogorovSmirnov(table, scale, shape, new Random(seed));
+        boolean accepted = statistic < critical;
+        passed &= accepted;
+        System.out.printf("mean %4d ms, resolution %5d: D = %.5f, critical %.5f, %s%n", mean,
+            resolution, statistic, critical, accepted ? "ok" : "FAILED");
+      }
+    }
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Gets the Kolmogorov-Smirnov statistic of the samples of a table, the largest distance
+   * between their empirical distribution and the distribution
+   * <code>1 - (scale / x)^shape</code> of the closed form.
+   *
+   * @param table  the table
+   * @param scale  the scale of the distribution
+   * @param shape  the shape of the distribution
+   * @param random the random number generator
+   * @return the statistic
+   */
+  private static double kolmogorovSmirnov(
+      ParetoLatencyTable table, double scale, double shape, Random random
+  ) {
+    double[] samples = new double[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      samples[i] = table.lookup(random.nextDouble());
+    }
+    Arrays.sort(samples);
+    double statistic = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      double cdf = 1 - Math.pow(scale / samples[i], shape);
+      statistic = Math.max(statistic, Math.max(
+          cdf - (double) i / SAMPLES, (double) (i + 1) / SAMPLES - cdf));
+    }
+    return statistic;
+  }
+}